@@ -0,0 +1,9 @@
+#!/bin/sh
+#
+
+set -xe
+
+mkdir -p bin/
+javac src/*.java -d bin/
+javac -cp ./bin bench/*.java -d bin/
+java -Djava.awt.headless=true -cp ./bin:. RendererBenchmark "$@"
@@ -0,0 +1,159 @@
+/* RendererBenchmark.java
+* Description: Compares the Java2D and software tile renderer backends by drawing
+* res/map.wmap into an offscreen image. Run with ./bench.sh [width] [height] [KB/frame budget]
+* When a budget is given the run fails (exit code 1) if any backend allocates more than it per frame.
+* The run also fails if the CHUNKED backend doesn't draw the same pixels as JAVA2D with objects on the map.
+*/
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+public class RendererBenchmark {
+    static final int WARMUP_FRAMES = 50;
+    static final int FRAMES = 200;
+    static final int BAKE_WAIT_MS = 5000; // Longest CheckChunked waits for the chunk images
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        double allocationBudgetKB = args.length > 2 ? Double.parseDouble(args[2]) : -1;
+
+        boolean trackAllocations = Profiler.SetTrackAllocations(true);
+        boolean overBudget = false;
+
+        TileMap map = new TileMap(100, 100);
+        map.LoadFromFile("./res/map.wmap");
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        // Look at the middle of the map, like the camera does in game
+        AffineTransform camera = new AffineTransform();
+        camera.translate(width / 2.0 - map.width * TileMap.RENDERSCALE / 2.0, height / 2.0 - map.height * TileMap.RENDERSCALE / 2.0);
+
+        System.out.println("Drawing `res/map.wmap` into " + width + "x" + height + ", " + FRAMES + " frames per backend.");
+
+        boolean chunkedDiffers = !CheckChunked(map, target, camera);
+
+        for (RenderBackend backend : RenderBackend.values()) {
+            TileMap.renderBackend = backend;
+
+            double msPerFrame = Run(map, target, camera, WARMUP_FRAMES, FRAMES);
+            double kbPerFrame = Profiler.AverageBytes(FramePhase.MAP_DRAW) / 1024.0;
+            System.out.printf("%-10s %8.3f ms/frame %8.1f FPS %10.1f KB/frame allocated%n", backend, msPerFrame, 1000.0 / msPerFrame, kbPerFrame);
+
+            if (trackAllocations && allocationBudgetKB >= 0 && kbPerFrame > allocationBudgetKB) {
+                System.out.printf("FAIL: %s allocates %.1f KB/frame, budget is %.1f KB/frame%n", backend, kbPerFrame, allocationBudgetKB);
+                overBudget = true;
+            }
+        }
+
+        if (overBudget || chunkedDiffers) {
+            System.exit(1);
+        }
+    }
+
+    // Object standing on the map that's drawn twice as tall as it is, so it reaches into the rows in front of it
+    static class Marker extends GameObject {
+        Color color;
+
+        Marker(Vector2 position, Color color) {
+            this.position = position;
+            this.size = new Vector2(TileMap.RENDERSCALE * 1.5, TileMap.RENDERSCALE * 2.0);
+            this.color = color;
+        }
+
+        @Override
+        public void Draw(Graphics2D g) {
+            g.setColor(this.color);
+            GG.fillRect(this.position.x, this.position.y, this.size.x, this.size.y * 2.0);
+        }
+    }
+
+    // Draws the map with objects on it with JAVA2D and CHUNKED, returns whether every pixel is the same.
+    // Baked chunks are drawn row by row, so objects have to end up between the same rows of tiles either way
+    static boolean CheckChunked(TileMap map, BufferedImage target, AffineTransform camera) {
+        Graphics2D g = target.createGraphics();
+        g.setClip(0, 0, target.getWidth(), target.getHeight());
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setTransform(camera);
+        GG.g = g;
+
+        // A grid of objects over the middle of the map, at offsets that don't line up with the cells
+        Color[] colors = { Color.MAGENTA, Color.CYAN, Color.ORANGE, Color.PINK };
+        Vector2 centre = map.LocalToWorldVectorPositional(new Vector2(map.width / 2.0, map.height / 2.0));
+        for (int i = 0; i < 16; i++) {
+            Vector2 offset = new Vector2((i % 4 - 2) * 3.3 * TileMap.RENDERSCALE, (i / 4 - 2) * 2.7 * TileMap.RENDERSCALE);
+            map.RenderResponsibly(new Marker(centre.add(offset), colors[i % colors.length]));
+        }
+
+        TileMap.renderBackend = RenderBackend.JAVA2D;
+        map.Draw(g);
+        int[] expected = Pixels(target).clone();
+
+        // Until the workers have baked every chunk on screen some tiles are still drawn one by one, keep drawing
+        // until the image stops changing
+        TileMap.renderBackend = RenderBackend.CHUNKED;
+        int[] actual = null;
+        long deadline = System.currentTimeMillis() + BAKE_WAIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            map.Draw(g);
+            int[] frame = Pixels(target).clone();
+            if (actual != null && java.util.Arrays.equals(actual, frame)) break;
+            actual = frame;
+
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        map.ResetResponsiblities();
+        g.dispose();
+
+        int different = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (actual == null || expected[i] != actual[i]) different++;
+        }
+
+        if (different > 0) {
+            System.out.printf("FAIL: CHUNKED draws %d pixels differently from JAVA2D with objects on the map%n", different);
+            return false;
+        }
+        System.out.println("CHUNKED draws the same pixels as JAVA2D with objects on the map.");
+        return true;
+    }
+
+    static int[] Pixels(BufferedImage image) {
+        return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    }
+
+    // Draws the map `frames` times after `warmup` untimed frames, returns the average milliseconds per frame
+    static double Run(TileMap map, BufferedImage target, AffineTransform camera, int warmup, int frames) {
+        Graphics2D g = target.createGraphics();
+        g.setClip(0, 0, target.getWidth(), target.getHeight());
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g.setTransform(camera);
+
+        for (int i = 0; i < warmup; i++) {
+            map.Draw(g);
+        }
+
+        Profiler.Reset();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            Profiler.Begin(FramePhase.MAP_DRAW);
+            map.Draw(g);
+            Profiler.End(FramePhase.MAP_DRAW);
+            Profiler.EndFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        g.dispose();
+        return elapsed / 1e6 / frames;
+    }
+}
@@ -0,0 +1,227 @@
+/* ScenarioRunner.java
+* Description: Plays a scripted, seeded game headless and checks the frame phase timings against
+* bench/scenario-baseline.properties. Exits with 1 when a phase got slower than the baseline allows.
+* Run with ./scenario.sh [ticks] [--update-baseline]
+*/
+
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+public class ScenarioRunner {
+    static final long SEED = 1234;
+    static final double TICK = 1.0 / 60.0; // Fixed step, the clock is simulated so every run sees the same times
+    static final int WARMUP_TICKS = 300; // Run but not recorded, lets the JIT settle
+    static final int DEFAULT_TICKS = 1200;
+
+    static final String BASELINE_PATH = "./bench/scenario-baseline.properties";
+    static final double DEFAULT_TOLERANCE = 0.25; // Allowed slowdown, fraction of the baseline
+    static final double DEFAULT_SLACK_MS = 0.5; // Allowed slowdown on top, so tiny phases don't fail on noise
+
+    // Wave spawned at the start, spread over the map's spawn tiles
+    static final int WAVE_HAR = 200;
+    static final int WAVE_RAT = 50;
+    static final int WAVE_BOMBER = 50;
+
+    // Percentiles compared against the baseline
+    static final double[] PERCENTILES = { 50, 95 };
+
+    public static void main(String[] args) throws IOException {
+        int ticks = DEFAULT_TICKS;
+        boolean updateBaseline = false;
+        for (String arg : args) {
+            if (arg.equals("--update-baseline")) {
+                updateBaseline = true;
+            } else {
+                ticks = Integer.parseInt(arg);
+            }
+        }
+
+        Setup();
+
+        BufferedImage target = new BufferedImage(Game.WINDOW_WIDTH, Game.WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        g.setClip(0, 0, target.getWidth(), target.getHeight());
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        GG.g = g;
+
+        System.out.println("Running scenario: " + WAVE_HAR + " HAR, " + WAVE_RAT + " Rat, " + WAVE_BOMBER + " Bomber, seed " + SEED
+                           + ", " + WARMUP_TICKS + " warmup + " + ticks + " ticks.");
+
+        Profiler.SetHistorySize(ticks);
+        Profiler.enabled = true;
+
+        for (int tick = 0; tick < WARMUP_TICKS + ticks; tick++) {
+            if (tick == WARMUP_TICKS) {
+                Profiler.Reset();
+            }
+
+            Profiler.Begin(FramePhase.FRAME);
+            ScriptInput(tick);
+
+            Game.UpdateWorld(TICK, false);
+            Game.StepPhysics(TICK);
+
+            g.setTransform(Game.worldTransform);
+            Game.DrawWorld(g);
+            Game.QueueHumanoids();
+            g.setTransform(new AffineTransform());
+
+            EndTick();
+            Profiler.End(FramePhase.FRAME);
+            Profiler.EndFrame();
+        }
+
+        g.dispose();
+
+        System.out.printf("%-20s %9s %9s %9s%n", "Phase", "p50 ms", "p95 ms", "p99 ms");
+        for (FramePhase phase : FramePhase.values()) {
+            System.out.printf(Locale.ROOT, "%-20s %9.3f %9.3f %9.3f%n", phase.label,
+                              Profiler.Percentile(phase, 50), Profiler.Percentile(phase, 95), Profiler.Percentile(phase, 99));
+        }
+        System.out.println("Humanoids alive at the end: " + Game.humanoids.Size());
+        for (Pool<?> pool : Profiler.GamePools()) {
+            System.out.println("Pool " + pool);
+        }
+
+        if (updateBaseline) {
+            WriteBaseline();
+            System.out.println("Wrote baseline to `" + BASELINE_PATH + "`.");
+            return;
+        }
+
+        if (!CheckBaseline()) {
+            System.exit(1);
+        }
+    }
+
+    // Seeds everything random, loads the map and spawns the wave
+    static void Setup() {
+        Game.fixedNow = 1000.0;
+        Game.random = new Random(SEED);
+        Game.ng = new NoiseGenerator((double)SEED);
+
+        Game.LoadGame();
+
+        // The player has to survive the whole run so every tick does the same kind of work
+        Game.player.SetMaxHealth(Integer.MAX_VALUE);
+
+        ArrayList<Tile> spawnTiles = Game.currentMap.GetMapTilesByTag("spawn", Game.currentMap.GetGroundLayer());
+        if (spawnTiles.size() == 0) {
+            System.err.println("[ERROR]: Map has no `spawn` tiles, can't place the wave.");
+            System.exit(2);
+        }
+
+        int spawned = 0;
+        for (int i = 0; i < WAVE_HAR + WAVE_RAT + WAVE_BOMBER; i++) {
+            Enemy enemy;
+            if (i < WAVE_HAR) {
+                enemy = Game.em.Spawn(HumanoidType.HAR);
+            } else if (i < WAVE_HAR + WAVE_RAT) {
+                enemy = Game.em.Spawn(HumanoidType.RAT);
+            } else {
+                enemy = Game.em.Spawn(HumanoidType.BOMBER);
+            }
+
+            Tile t = spawnTiles.get(spawned++ % spawnTiles.size());
+            Vector2 jitter = new Vector2(Game.random.nextDouble() * 40 - 20, Game.random.nextDouble() * 40 - 20);
+            enemy.position = Game.currentMap.LocalToWorldVectorPositional(new Vector2(t.x, t.y)).add(jitter);
+            Game.humanoids.Add(enemy);
+        }
+    }
+
+    // Walks the player around a square, keeps shooting while sweeping the aim around and dashes now and then
+    static void ScriptInput(int tick) {
+        int[] walk = { KeyEvent.VK_W, KeyEvent.VK_D, KeyEvent.VK_S, KeyEvent.VK_A };
+        int direction = (tick / 90) % walk.length;
+
+        for (int key : walk) {
+            Game.keysDown[key] = false;
+        }
+        Game.keysDown[walk[direction]] = true;
+        Game.keysDown[KeyEvent.VK_SPACE] = tick % 120 == 0;
+        Game.keysDown[KeyEvent.VK_R] = tick % 600 == 300;
+
+        double angle = tick * 0.05;
+        Game.mousePos = new Vector2(Game.WINDOW_WIDTH / 2.0 + Math.cos(angle) * 300, Game.WINDOW_HEIGHT / 2.0 + Math.sin(angle) * 300);
+        Game.mouseButtonsDown[MouseEvent.BUTTON1] = true;
+    }
+
+    // What Game.paint does after a frame: advance the clock and remember this tick's input
+    static void EndTick() {
+        Game.fixedNow += TICK;
+        Game.deltaTime = TICK;
+
+        for (int i = 0; i < Game.mouseButtonsDown.length; i++) {
+            Game.mouseButtonsDownLastFrame[i] = Game.mouseButtonsDown[i];
+        }
+        for (int i = 0; i < Game.keysDown.length; i++) {
+            Game.keysDownLastFrame[i] = Game.keysDown[i];
+        }
+    }
+
+    static String Key(FramePhase phase, double percentile) {
+        return phase.label + ".p" + (int)percentile;
+    }
+
+    static void WriteBaseline() throws IOException {
+        Properties baseline = new Properties();
+        baseline.setProperty("tolerance", Double.toString(DEFAULT_TOLERANCE));
+        baseline.setProperty("slack_ms", Double.toString(DEFAULT_SLACK_MS));
+
+        for (FramePhase phase : FramePhase.values()) {
+            for (double p : PERCENTILES) {
+                baseline.setProperty(Key(phase, p), String.format(Locale.ROOT, "%.3f", Profiler.Percentile(phase, p)));
+            }
+        }
+
+        try (FileWriter fw = new FileWriter(BASELINE_PATH)) {
+            baseline.store(fw, "ScenarioRunner baseline, milliseconds. A phase regresses when it is slower than value * (1 + tolerance) + slack_ms.");
+        }
+    }
+
+    // Returns whether every phase is within the baseline's tolerance
+    static boolean CheckBaseline() throws IOException {
+        File f = new File(BASELINE_PATH);
+        if (!f.exists()) {
+            System.out.println("No baseline at `" + BASELINE_PATH + "`, run with --update-baseline to create one.");
+            return true;
+        }
+
+        Properties baseline = new Properties();
+        try (FileReader fr = new FileReader(f)) {
+            baseline.load(fr);
+        }
+
+        double tolerance = Double.parseDouble(baseline.getProperty("tolerance", Double.toString(DEFAULT_TOLERANCE)));
+        double slack = Double.parseDouble(baseline.getProperty("slack_ms", Double.toString(DEFAULT_SLACK_MS)));
+
+        boolean passed = true;
+        for (FramePhase phase : FramePhase.values()) {
+            for (double p : PERCENTILES) {
+                String value = baseline.getProperty(Key(phase, p));
+                if (value == null) continue;
+
+                double expected = Double.parseDouble(value);
+                double limit = expected * (1.0 + tolerance) + slack;
+                double measured = Profiler.Percentile(phase, p);
+
+                if (measured > limit) {
+                    System.out.printf(Locale.ROOT, "REGRESSION: %s %.3f ms, baseline %.3f ms, limit %.3f ms%n", Key(phase, p), measured, expected, limit);
+                    passed = false;
+                }
+            }
+        }
+
+        System.out.println(passed ? "PASS: within baseline." : "FAIL: slower than baseline.");
+        return passed;
+    }
+}
@@ -0,0 +1,26 @@
+@echo off
+
+@REM Builds and runs the JMH benchmarks in jmh/, results go to jmh-result.json.
+@REM The game's classes are copied into a `wendigo` package for this build since JMH doesn't allow the default package.
+
+set JMH_VERSION=1.37
+set LIB=lib\jmh
+set MAVEN=https://repo1.maven.org/maven2
+
+if not exist "%LIB%" mkdir "%LIB%"
+if not exist "%LIB%\jmh-core-%JMH_VERSION%.jar" curl.exe -sSfL -o "%LIB%\jmh-core-%JMH_VERSION%.jar" %MAVEN%/org/openjdk/jmh/jmh-core/%JMH_VERSION%/jmh-core-%JMH_VERSION%.jar
+if not exist "%LIB%\jmh-generator-annprocess-%JMH_VERSION%.jar" curl.exe -sSfL -o "%LIB%\jmh-generator-annprocess-%JMH_VERSION%.jar" %MAVEN%/org/openjdk/jmh/jmh-generator-annprocess/%JMH_VERSION%/jmh-generator-annprocess-%JMH_VERSION%.jar
+if not exist "%LIB%\jopt-simple-5.0.4.jar" curl.exe -sSfL -o "%LIB%\jopt-simple-5.0.4.jar" %MAVEN%/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+if not exist "%LIB%\commons-math3-3.6.1.jar" curl.exe -sSfL -o "%LIB%\commons-math3-3.6.1.jar" %MAVEN%/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+
+if exist jmh-build rmdir /s /q jmh-build
+mkdir jmh-build\src
+mkdir jmh-build\classes
+for %%f in (src\*.java) do (
+    echo package wendigo;> "jmh-build\src\%%~nxf"
+    type "%%f" >> "jmh-build\src\%%~nxf"
+)
+
+echo Building JMH benchmarks..
+javac.exe -encoding UTF-8 -cp "%LIB%\*" -d jmh-build\classes jmh-build\src\*.java jmh\*.java
+java.exe -Djava.awt.headless=true -cp "jmh-build\classes;%LIB%\*" org.openjdk.jmh.Main -rf json -rff jmh-result.json %*
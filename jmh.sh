@@ -0,0 +1,28 @@
+#!/bin/sh
+#
+# Builds and runs the JMH benchmarks in jmh/, results go to jmh-result.json.
+# Extra arguments are passed to JMH, e.g. `./jmh.sh PhysicsBenchmark -p bodies=100`
+#
+# The game's classes live in the default package, which JMH doesn't allow benchmarks in,
+# so they are copied into a `wendigo` package for this build only.
+
+set -xe
+
+JMH_VERSION=1.37
+LIB=lib/jmh
+MAVEN=https://repo1.maven.org/maven2
+
+mkdir -p $LIB
+[ -f $LIB/jmh-core-$JMH_VERSION.jar ] || curl -sSfL -o $LIB/jmh-core-$JMH_VERSION.jar $MAVEN/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+[ -f $LIB/jmh-generator-annprocess-$JMH_VERSION.jar ] || curl -sSfL -o $LIB/jmh-generator-annprocess-$JMH_VERSION.jar $MAVEN/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+[ -f $LIB/jopt-simple-5.0.4.jar ] || curl -sSfL -o $LIB/jopt-simple-5.0.4.jar $MAVEN/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+[ -f $LIB/commons-math3-3.6.1.jar ] || curl -sSfL -o $LIB/commons-math3-3.6.1.jar $MAVEN/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+
+rm -rf jmh-build/
+mkdir -p jmh-build/src jmh-build/classes
+for f in src/*.java; do
+    { echo "package wendigo;"; cat "$f"; } > jmh-build/src/$(basename "$f")
+done
+
+javac -encoding UTF-8 -cp "$LIB/*" -d jmh-build/classes jmh-build/src/*.java jmh/*.java
+java -Djava.awt.headless=true -cp "jmh-build/classes:$LIB/*" org.openjdk.jmh.Main -rf json -rff jmh-result.json "$@"
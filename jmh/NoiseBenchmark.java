@@ -0,0 +1,46 @@
+/* NoiseBenchmark.java
+* Description: JMH benchmark for NoiseGenerator.smoothNoise.
+*/
+
+package wendigo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NoiseBenchmark {
+    static final int GRID = 32; // Samples per side, one call fills a GRID x GRID patch
+
+    NoiseGenerator noise;
+
+    @Setup
+    public void Setup() {
+        this.noise = new NoiseGenerator(42.0);
+    }
+
+    @Benchmark
+    public double SmoothNoise() {
+        double sum = 0;
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                sum += this.noise.smoothNoise(x * 0.1, y * 0.1, 0.5);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,107 @@
+/* PhysicsBenchmark.java
+* Description: JMH benchmarks for Physics.Update at different body counts and Physics.RayCast, on res/map.wmap.
+*/
+
+package wendigo;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PhysicsBenchmark {
+    static final int NUM_RAYS = 64; // Ray casts per RayCast benchmark call
+
+    @Param({"10", "100", "500"})
+    int bodies;
+
+    Physics physics;
+    GameObject[] objects;
+    Vector2[] startPositions; // Where the bodies are before each Step, it moves them
+    Vector2[] startVelocities;
+    Vector2[] rayOrigins = new Vector2[NUM_RAYS];
+    Vector2[] rayDirections = new Vector2[NUM_RAYS];
+
+    @Setup
+    public void Setup() {
+        TileMap map = new TileMap(100, 100);
+        map.LoadFromFile("./res/map.wmap");
+
+        this.physics = new Physics();
+        this.physics.currentMap = map;
+
+        // Same bodies every run
+        Random random = new Random(1234);
+        double worldSize = 100 * TileMap.RENDERSCALE;
+
+        this.objects = new GameObject[this.bodies];
+        this.startPositions = new Vector2[this.bodies];
+        this.startVelocities = new Vector2[this.bodies];
+        for (int i = 0; i < this.bodies; i++) {
+            GameObject o = new GameObject();
+            o.size = new Vector2(40, 60);
+            this.objects[i] = o;
+
+            this.startPositions[i] = new Vector2(random.nextDouble() * worldSize, random.nextDouble() * worldSize);
+            this.startVelocities[i] = new Vector2(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100);
+        }
+        this.ResetBodies();
+
+        for (int i = 0; i < NUM_RAYS; i++) {
+            this.rayOrigins[i] = new Vector2(random.nextDouble() * worldSize, random.nextDouble() * worldSize);
+            double angle = random.nextDouble() * Math.PI * 2;
+            this.rayDirections[i] = new Vector2(Math.cos(angle), Math.sin(angle)).scale(800);
+        }
+
+        // RayCast tests against the colliders built by the last update
+        this.Step();
+    }
+
+    // Puts the bodies back where Setup placed them, so every Step measures the same scene
+    @Setup(Level.Invocation)
+    public void ResetBodies() {
+        for (int i = 0; i < this.bodies; i++) {
+            this.objects[i].position = new Vector2(this.startPositions[i].x, this.startPositions[i].y);
+            this.objects[i].velocity = new Vector2(this.startVelocities[i].x, this.startVelocities[i].y);
+        }
+    }
+
+    // One frame of physics the way Game.Update runs it
+    @Benchmark
+    public Physics Step() {
+        this.physics.PreUpdate();
+        for (GameObject o : this.objects) {
+            this.physics.physicsObjects.add(o);
+        }
+        this.physics.Update(1.0 / 60.0);
+        return this.physics;
+    }
+
+    @Benchmark
+    public int RayCast() {
+        int hits = 0;
+        for (int i = 0; i < NUM_RAYS; i++) {
+            if (this.physics.RayCast(this.rayOrigins[i], this.rayDirections[i]) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,125 @@
+/* TileMapBenchmark.java
+* Description: JMH benchmarks for drawing, loading (with and without the AssetCache) and saving res/map.wmap and
+* for Tile.IsBlank.
+*/
+
+package wendigo;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TileMapBenchmark {
+    // Only Draw depends on the backend, keeping it in its own state stops the other benchmarks running once per backend
+    @State(Scope.Thread)
+    public static class Renderer {
+        @Param({"JAVA2D", "SOFTWARE", "CHUNKED"})
+        String backend;
+    }
+
+    TileMap map;
+    BufferedImage target;
+    Graphics2D g;
+    File saveFile;
+
+    @Setup
+    public void Setup() throws IOException {
+        // Save writes the whole map every time, with a journal it would only append the (no) edits since the last one
+        TileMap.journalSaves = false;
+
+        this.map = new TileMap(100, 100);
+        this.map.LoadFromFile("./res/map.wmap");
+
+        // Same 1080p view RendererBenchmark uses, looking at the middle of the map
+        this.target = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        this.g = this.target.createGraphics();
+        this.g.setClip(0, 0, this.target.getWidth(), this.target.getHeight());
+        this.g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        this.g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+
+        AffineTransform camera = new AffineTransform();
+        camera.translate(1920 / 2.0 - this.map.width * TileMap.RENDERSCALE / 2.0, 1080 / 2.0 - this.map.height * TileMap.RENDERSCALE / 2.0);
+        this.g.setTransform(camera);
+
+        this.saveFile = File.createTempFile("wendigo-bench", ".wmap");
+    }
+
+    @TearDown
+    public void TearDown() {
+        this.g.dispose();
+        this.saveFile.delete();
+    }
+
+    @Benchmark
+    public BufferedImage Draw(Renderer renderer) {
+        TileMap.renderBackend = RenderBackend.valueOf(renderer.backend);
+        this.map.Draw(this.g);
+        return this.target;
+    }
+
+    // A reload, every sheet image is still in the AssetCache
+    @Benchmark
+    public TileMap LoadFromFile() {
+        TileMap loaded = new TileMap(100, 100);
+        loaded.LoadFromFile("./res/map.wmap");
+        loaded.ReleaseSheets();
+        return loaded;
+    }
+
+    // A first load, every sheet image is decoded
+    @Benchmark
+    public TileMap LoadFromFileUncached() {
+        AssetCache.enabled = false;
+        try {
+            TileMap loaded = new TileMap(100, 100);
+            loaded.LoadFromFile("./res/map.wmap");
+            return loaded;
+        } finally {
+            AssetCache.enabled = true;
+        }
+    }
+
+    @Benchmark
+    public File Save() {
+        this.map.Save(this.saveFile.getPath());
+        return this.saveFile;
+    }
+
+    // Every tile of every sheet, what PurgeBlankTiles does
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int IsBlank() {
+        int blank = 0;
+        for (SpriteSheet sheet : this.map.ownedSheets) {
+            for (Tile t : sheet.tiles) {
+                if (t != null && t.IsBlank()) {
+                    blank++;
+                }
+            }
+        }
+        return blank;
+    }
+}
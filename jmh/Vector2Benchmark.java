@@ -0,0 +1,61 @@
+/* Vector2Benchmark.java
+* Description: JMH benchmarks for Vector2 arithmetic. Run with ./jmh.sh
+*/
+
+package wendigo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Vector2Benchmark {
+    Vector2 a, b;
+
+    @Setup
+    public void Setup() {
+        this.a = new Vector2(12.5, -3.25);
+        this.b = new Vector2(-7.0, 41.0);
+    }
+
+    @Benchmark
+    public Vector2 Add() {
+        return this.a.add(this.b);
+    }
+
+    @Benchmark
+    public Vector2 Scale() {
+        return this.a.scale(1.5);
+    }
+
+    @Benchmark
+    public Vector2 Normalize() {
+        return this.a.normalize();
+    }
+
+    @Benchmark
+    public double Distance() {
+        return this.a.distance(this.b);
+    }
+
+    // What a physics step does to every body: move by velocity, then damp it
+    @Benchmark
+    public Vector2 Integrate() {
+        Vector2 position = this.a.add(this.b.scale(1.0 / 60.0));
+        return position.sub(this.b.normalize().scale(0.3)).lerp(this.a, 0.5);
+    }
+}
@@ -0,0 +1,7 @@
+@echo off
+
+if not exist "%bin/%" mkdir "%bin/%"
+echo Building scenario..
+javac.exe src/*.java -d bin/
+javac.exe -cp bin/ bench/*.java -d bin/
+java.exe -Djava.awt.headless=true -cp bin/ ScenarioRunner %*
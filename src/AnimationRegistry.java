@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+ * Animation tiles of each humanoid, behind Humanoid.LoadAnimations. Every enemy (and every rat child) used to
+ * look up all of its animation tags in the map's sheets when it was made, print each one, and keep its own map
+ * of them.
+ *
+ * Now each prefix ("rat", "dino", ...) gets one EnumMap from state to sheet tile, filled the first time it's
+ * asked for and shared by every humanoid with that prefix, so a spawn is a hash lookup. The maps are refilled in
+ * place when a sheet is added, removed or reloaded, so humanoids already alive see reloaded sheets too. Editing
+ * tiles or cells doesn't refill them. Missing animations are reported once per prefix instead of once per spawn.
+ */
+class AnimationRegistry {
+    // Shared by humanoids that have no animations yet, never filled
+    static final EnumMap<AnimationState, Tile> NONE = new EnumMap<>(AnimationState.class);
+
+    protected TileMap map; // Map whose sheets the animations come from
+
+    private final HashMap<String, EnumMap<AnimationState, Tile>> byPrefix = new HashMap<>();
+    private final HashSet<String> reportedMissing = new HashSet<>(); // Tags already reported as missing
+
+    private ArrayList<SpriteSheet> builtSheets = new ArrayList<>(); // Sheets the maps were filled from
+    private int[] builtReloads = new int[0]; // Their SpriteSheet.reloads then
+
+    public AnimationRegistry(TileMap map) {
+        this.map = map;
+    }
+
+    // Animations of prefix, shared by every caller: don't put anything in it
+    public EnumMap<AnimationState, Tile> Get(String prefix) {
+        prefix = prefix.toLowerCase();
+        this.Update();
+
+        EnumMap<AnimationState, Tile> animations = this.byPrefix.get(prefix);
+        if (animations == null) {
+            animations = new EnumMap<>(AnimationState.class);
+            this.Fill(prefix, animations);
+            this.byPrefix.put(prefix, animations);
+        }
+        return animations;
+    }
+
+    // Refills the maps if a sheet was added, removed or reloaded since they were filled
+    private void Update() {
+        boolean current = this.builtSheets.equals(this.map.ownedSheets);
+        for (int i = 0; current && i < this.builtReloads.length; i++) {
+            current = this.builtReloads[i] == this.builtSheets.get(i).reloads;
+        }
+        if (current) return;
+
+        // Different sheets (a new map loaded), report what's missing from them again
+        if (!this.builtSheets.equals(this.map.ownedSheets)) {
+            this.reportedMissing.clear();
+        }
+
+        for (HashMap.Entry<String, EnumMap<AnimationState, Tile>> e : this.byPrefix.entrySet()) {
+            this.Fill(e.getKey(), e.getValue());
+        }
+
+        this.builtSheets = new ArrayList<>(this.map.ownedSheets);
+        this.builtReloads = new int[this.builtSheets.size()];
+        for (int i = 0; i < this.builtReloads.length; i++) {
+            this.builtReloads[i] = this.builtSheets.get(i).reloads;
+        }
+    }
+
+    private void Fill(String prefix, EnumMap<AnimationState, Tile> animations) {
+        animations.clear();
+
+        for (AnimationState state : AnimationState.values()) {
+            String tag = prefix + "_" + state.name().toLowerCase();
+
+            Tile t = this.map.GetSheetTileByTag(tag);
+            if (t != null) {
+                animations.put(state, t);
+            } else if (this.reportedMissing.add(tag)) {
+                System.out.println("Missing animation: `" + tag + "`");
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/*
+ * Process wide cache of decoded images, so reloading a map (leaving a game, editor Ctrl+Z) doesn't decode every
+ * sprite sheet PNG again.
+ *
+ * Entries are keyed by canonical path and modification time, an image edited on disk gets a new entry and the
+ * old one is dropped once nothing uses it. Every Acquire has to be paired with a Release of the returned
+ * image. Released entries stay cached while the cache is under its memory budget, the longest idle ones are
+ * evicted first. An entry also keeps the VolatileImages made from its image so sheets sharing it share the
+ * GPU copy too.
+ *
+ * Acquire can be called from any thread (sheets decode on loader threads), two threads asking for the same
+ * image wait on one decode. GPU images are only handled on the game thread.
+ */
+class AssetCache {
+    static long budgetBytes = 256L * 1024 * 1024; // Idle entries are evicted while the cache is bigger than this
+    static boolean enabled = true; // When off every Acquire decodes the file again and nothing is kept, for benchmarks
+
+    // Counters for logging and benchmarks
+    static int hits = 0;
+    static int misses = 0;
+
+    private static final HashMap<Key, Entry> entries = new HashMap<>();
+    private static final IdentityHashMap<BufferedImage, Entry> byImage = new IdentityHashMap<>();
+    private static long totalBytes = 0;
+    private static long useCounter = 0; // Orders releases for eviction
+
+    // Identifies one version of a file, decoded one way
+    static class Key {
+        final String path; // Canonical
+        final long modified;
+        final boolean sheet; // Display compatible copy made for sprite sheets, rather than ImageIO's image as is
+
+        Key(String path, long modified, boolean sheet) {
+            this.path = path;
+            this.modified = modified;
+            this.sheet = sheet;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return this.modified == k.modified && this.sheet == k.sheet && this.path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.path.hashCode() * 31 + Long.hashCode(this.modified)) * 31 + (this.sheet ? 1 : 0);
+        }
+    }
+
+    static class Entry {
+        final Key key;
+        final FutureTask<BufferedImage> decode; // Run by the first thread to ask for the image
+        BufferedImage image; // Set once decoded
+        VolatileImage[] gpuImages = new VolatileImage[4]; // Indexed by Transparency.OPAQUE/BITMASK/TRANSLUCENT
+        int refCount = 0;
+        long lastUsed = 0;
+        long bytes = 0;
+
+        Entry(Key key, FutureTask<BufferedImage> decode) {
+            this.key = key;
+            this.decode = decode;
+        }
+    }
+
+    // Returns the image at path as ImageIO decodes it. Release it when done
+    public static BufferedImage AcquireImage(String path) throws IOException {
+        return Acquire(path, false);
+    }
+
+    // Returns the image at path as a display compatible image for a sprite sheet, see SpriteSheet.DecodeImage.
+    // Release it when done
+    public static BufferedImage AcquireSheetImage(String path) throws IOException {
+        return Acquire(path, true);
+    }
+
+    private static BufferedImage Acquire(String path, boolean sheet) throws IOException {
+        if (!enabled) {
+            synchronized (AssetCache.class) {
+                misses++;
+            }
+            return sheet ? SpriteSheet.DecodeImage(path) : ReadImage(path); // Not an entry, Release ignores it
+        }
+
+        File f = new File(path);
+        Key key = new Key(f.getCanonicalPath(), f.lastModified(), sheet);
+
+        Entry entry;
+        boolean decodeHere = false;
+        synchronized (AssetCache.class) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, new FutureTask<>(() -> sheet ? SpriteSheet.DecodeImage(path) : ReadImage(path)));
+                entries.put(key, entry);
+                DropStaleVersions(key);
+                decodeHere = true;
+                misses++;
+            } else {
+                hits++;
+            }
+            entry.refCount++;
+        }
+
+        if (decodeHere) {
+            entry.decode.run();
+        }
+
+        BufferedImage image;
+        try {
+            image = entry.decode.get();
+        } catch (ExecutionException | InterruptedException e) {
+            synchronized (AssetCache.class) {
+                entry.refCount--;
+                if (entries.get(key) == entry) entries.remove(key); // Try again next time
+            }
+
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading `" + path + "`.", e);
+            }
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException("Failed to load `" + path + "`: " + e.getCause(), e.getCause());
+        }
+
+        synchronized (AssetCache.class) {
+            if (entry.image == null && entries.get(key) == entry) {
+                entry.image = image;
+                entry.bytes = (long)image.getWidth() * image.getHeight() * 4;
+                byImage.put(image, entry);
+                totalBytes += entry.bytes;
+                Trim();
+            }
+        }
+
+        return image;
+    }
+
+    private static BufferedImage ReadImage(String path) throws IOException {
+        BufferedImage image = ImageIO.read(new File(path));
+        if (image == null) {
+            throw new IOException("Unsupported or missing image: `" + path + "`");
+        }
+        return image;
+    }
+
+    // Gives back an image returned by an Acquire. Images that didn't come from the cache are ignored
+    public static synchronized void Release(BufferedImage image) {
+        Entry entry = byImage.get(image);
+        if (entry == null || entry.refCount == 0) return;
+
+        entry.refCount--;
+        entry.lastUsed = ++useCounter;
+        Trim();
+    }
+
+    // Returns the GPU copy of a cached image with the given transparency, created and rendered on first use.
+    // Returns null for images that didn't come from the cache, or when headless. Game thread only
+    public static synchronized VolatileImage GetGPUImage(BufferedImage image, int transparency) {
+        Entry entry = byImage.get(image);
+        if (entry == null) return null;
+
+        GraphicsConfiguration gc = SpriteSheet.GetGraphicsConfiguration();
+        if (gc == null) return null;
+
+        VolatileImage gpuImage = entry.gpuImages[transparency];
+        if (gpuImage == null) {
+            gpuImage = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight(), transparency);
+            if (gpuImage == null) return null;
+
+            entry.gpuImages[transparency] = gpuImage;
+            entry.bytes += (long)image.getWidth() * image.getHeight() * 4;
+            totalBytes += (long)image.getWidth() * image.getHeight() * 4;
+        } else if (!gpuImage.contentsLost()) {
+            return gpuImage; // Already uploaded
+        }
+
+        Graphics2D vg = gpuImage.createGraphics();
+        vg.setComposite(AlphaComposite.Src);
+        vg.drawImage(image, 0, 0, null);
+        vg.dispose();
+
+        return gpuImage;
+    }
+
+    // Unused entries for older versions of the same file can't be asked for again
+    private static void DropStaleVersions(Key key) {
+        Entry[] all = entries.values().toArray(new Entry[0]);
+        for (Entry e : all) {
+            if (e.key != key && e.refCount == 0 && e.image != null && e.key.sheet == key.sheet && e.key.path.equals(key.path)) {
+                Evict(e);
+            }
+        }
+    }
+
+    // Evicts the longest idle entries until the cache fits its budget
+    private static void Trim() {
+        while (totalBytes > budgetBytes) {
+            Entry oldest = null;
+            for (Entry e : entries.values()) {
+                if (e.refCount > 0 || e.image == null) continue;
+                if (oldest == null || e.lastUsed < oldest.lastUsed) oldest = e;
+            }
+            if (oldest == null) return; // Everything is in use
+
+            Evict(oldest);
+        }
+    }
+
+    private static void Evict(Entry e) {
+        entries.remove(e.key);
+        byImage.remove(e.image);
+        totalBytes -= e.bytes;
+
+        for (VolatileImage gpuImage : e.gpuImages) {
+            if (gpuImage != null) gpuImage.flush();
+        }
+        System.out.println("[LOG]: Evicted `" + e.key.path + "` from the asset cache.");
+    }
+}
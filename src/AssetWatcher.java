@@ -0,0 +1,112 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Hot reload of the asset folder. A WatchService thread records which files changed, and once a frame the game
+ * thread applies the ones that settled to the current map:
+ *
+ *   a sprite sheet image  only the sheets drawn from it decode it again (SpriteSheet.ReloadImage)
+ *   the map file          its differences to the live map are applied in place (TileMap.HotReload)
+ *
+ * Image editors and our own saver write a file in several steps (a temporary file renamed over it, or a few
+ * writes in a row), so a change is only applied once the file had no events for SETTLE_NANOS.
+ * Our own saves don't reload anything, see TileMap.HotReload.
+ */
+class AssetWatcher {
+    static final long SETTLE_NANOS = 250_000_000L;
+
+    private static Thread thread = null;
+    private static final HashMap<String, Long> changed = new HashMap<>(); // Path key of each changed file, nanoTime of its last event
+
+    // Starts watching folder, once. Does nothing when the platform can't watch it
+    public static synchronized void Start(String folder) {
+        if (thread != null) return;
+
+        Path path = new File(folder).getAbsoluteFile().toPath().normalize();
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("[ERROR]: Can't watch `" + folder + "` for changes, hot reload is off: " + e);
+            return;
+        }
+
+        thread = new Thread(() -> Watch(watcher, path), "Asset Watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("[LOG]: Watching `" + path + "` for changes.");
+    }
+
+    private static void Watch(WatchService watcher, Path folder) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue; // Lost events, the next ones still come
+
+                String changedKey = PathKey(folder.resolve((Path)event.context()).toString());
+                synchronized (AssetWatcher.class) {
+                    changed.put(changedKey, System.nanoTime());
+                }
+            }
+
+            if (!key.reset()) {
+                System.err.println("[ERROR]: `" + folder + "` can't be watched anymore, hot reload is off.");
+                return;
+            }
+        }
+    }
+
+    // Same key for every way of writing a path
+    private static String PathKey(String path) {
+        return new File(path).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    // Applies the changes that settled since the last call to map and its sheets. Called by the game thread every frame
+    public static void Apply(TileMap map) {
+        ArrayList<String> settled = null;
+        synchronized (AssetWatcher.class) {
+            if (changed.isEmpty()) return;
+
+            long now = System.nanoTime();
+            Iterator<Map.Entry<String, Long>> it = changed.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (now - e.getValue() < SETTLE_NANOS) continue;
+
+                if (settled == null) settled = new ArrayList<>();
+                settled.add(e.getKey());
+                it.remove();
+            }
+        }
+        if (settled == null || map == null) return;
+
+        for (String path : settled) {
+            if (map.filePath != null && path.equals(PathKey(map.filePath))) {
+                map.HotReload();
+                continue;
+            }
+
+            for (SpriteSheet sheet : map.ownedSheets) {
+                if (sheet.imagePath == null || !path.equals(PathKey(sheet.imagePath))) continue;
+
+                try {
+                    sheet.ReloadImage();
+                    new Message("Reloaded `" + sheet.name + "` sprite sheet.", 3.0);
+                } catch (IOException e) {
+                    new Message("[ERROR] Couldn't reload `" + sheet.imagePath + "`: " + e.getLocalizedMessage(), true);
+                }
+            }
+        }
+    }
+}
@@ -1,30 +1,35 @@
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Properties;
 
 class EnemyManager {
     Tile crackingGFXTile; // Graphic tile used to show cracking animation on spawn points
 
     ArrayList<Tile> allSpawnTiles = new ArrayList<>(); // List of all potential spawn tiles on the map
     ArrayList<Spawn> openedSpawns = new ArrayList<>(); // List of active spawn points
+    EnumMap<HumanoidType, Pool<Enemy>> pools = new EnumMap<>(HumanoidType.class); // Dead enemies of each type, reused by Spawn
 
     // Nested class representing an active spawn point
     class Spawn {
         public final double spawnSpawnTime = 5; // Time before spawn point finishes "charging"
         protected double openedTimestamp; // Timestamp when the spawn was activated
         protected Tile tile; // Tile associated with this spawn point
+        protected GFX crack; // Cracking animation drawn over the tile
 
         public double nextMobSpawn = 0; // Timestamp for the next mob spawn
 
         Spawn(Tile t) {
             this.openedTimestamp = Game.now(); // Record the time the spawn was opened
             this.tile = t;
-            this.nextMobSpawn = Game.now() + this.spawnSpawnTime + Math.random() * 10.0; // Randomize first spawn time
+            this.crack = new GFX(crackingGFXTile.Clone(), new Vector2(), false);
+            this.nextMobSpawn = Game.now() + this.spawnSpawnTime + Game.random.nextDouble() * 10.0; // Randomize first spawn time
         }
 
         // Update the next spawn timestamp when a mob is spawned
         public void Spawned() {
-            this.nextMobSpawn = Game.now() + 2.0 + Math.random() * 10.0;
+            this.nextMobSpawn = Game.now() + 2.0 + Game.random.nextDouble() * 10.0;
         }
     }
 
@@ -36,17 +41,47 @@ class EnemyManager {
 
         allSpawnTiles = Game.currentMap.GetMapTilesByTag("spawn", Game.currentMap.GetGroundLayer()); // Retrieve spawn tiles by tag
 
-        nextSpawn = Game.now() + Math.random() * 5.0; // Randomize initial spawn opening time
+        nextSpawn = Game.now() + Game.random.nextDouble() * 5.0; // Randomize initial spawn opening time
+    }
+
+    // Pool of type's enemies, made the first time it's needed
+    private Pool<Enemy> Pool(HumanoidType type) {
+        Pool<Enemy> pool = this.pools.get(type);
+        if (pool == null) {
+            pool = new Pool<>("Enemy/" + type, () -> Enemy.Make(type));
+            this.pools.put(type, pool);
+        }
+        return pool;
+    }
+
+    // A new enemy of type, at (0, 0). Add it to Game.humanoids, it's released once it's dead (see Game.UpdateWorld)
+    public Enemy Spawn(HumanoidType type) {
+        return this.Pool(type).Obtain();
+    }
+
+    // Gives a dead enemy back to its pool
+    public void Release(Enemy e) {
+        this.Pool(e.type).Release(e);
+    }
+
+    // Makes the enemies the map's `.pools` file asks for, keys are `enemy.<type>` (see Pool.ReadCounts)
+    public void Prewarm(Properties counts) {
+        for (HumanoidType type : HumanoidType.values()) {
+            int count = Pool.Count(counts, "enemy." + type.name().toLowerCase());
+            if (count > 0) {
+                this.Pool(type).Prewarm(count);
+            }
+        }
     }
     
     // Update method for managing spawn activation and spawning enemies
     public void Update(double deltaTime) {
         if (Game.now() >= this.nextSpawn) { // Check if it's time to open a new spawn
             if (this.allSpawnTiles.size() > 0) {
-                int randomIndex = (int)(Math.random() * this.allSpawnTiles.size()); // Select a random spawn tile
+                int randomIndex = (int)(Game.random.nextDouble() * this.allSpawnTiles.size()); // Select a random spawn tile
                 this.openedSpawns.add(new Spawn(this.allSpawnTiles.remove(randomIndex))); // Move it to active spawns
             }
-            nextSpawn = 30.0 + Game.now() + Math.random() * 25.0; // Randomize the next spawn activation time
+            nextSpawn = 30.0 + Game.now() + Game.random.nextDouble() * 25.0; // Randomize the next spawn activation time
         }
     }
 
@@ -60,7 +95,7 @@ class EnemyManager {
             Vector2 tileSize = Game.currentMap.LocalToWorldVectorScalar(new Vector2(t.w, t.h)).sub(new Vector2(1));
             
             // Prepare cracking animation graphic
-            GFX crack = new GFX(crackingGFXTile.Clone(), tilePosition, false);
+            GFX crack = s.crack;
             crack.position = tilePosition;
             crack.size = tileSize;
 
@@ -76,21 +111,30 @@ class EnemyManager {
                     Enemy enemyToSpawn;
 
                     // Randomly select which type of enemy to spawn
-                    double random = Math.random() * 100;
+                    double random = Game.random.nextDouble() * 100;
                     if (random > 90) {
-                        enemyToSpawn = new Rat();
+                        enemyToSpawn = this.Spawn(HumanoidType.RAT);
                     } else if (random > 80) {
-                        enemyToSpawn = new Enemy(HumanoidType.OGRE);
+                        enemyToSpawn = this.Spawn(HumanoidType.OGRE);
                     } else if (random > 70) {
-                        enemyToSpawn = new Bomber();
+                        enemyToSpawn = this.Spawn(HumanoidType.BOMBER);
                     } else {
-                        enemyToSpawn = new HAR();
+                        enemyToSpawn = this.Spawn(HumanoidType.HAR);
                     }
 
                     // Set enemy spawn position
                     enemyToSpawn.position = tilePosition.add(tileSize.scale(0.5)).sub(new Vector2(-20, -50));
 
-                    Game.humanoids.add(enemyToSpawn); // Add enemy to the game's humanoid list
+                    Game.humanoids.Add(enemyToSpawn); // Add enemy to the game's humanoid list
+
+                    EnemySpawnEvent spawnEvent = new EnemySpawnEvent();
+                    if (spawnEvent.shouldCommit()) {
+                        spawnEvent.enemyType = enemyToSpawn.getClass().getSimpleName() + "/" + enemyToSpawn.type;
+                        spawnEvent.x = enemyToSpawn.position.x;
+                        spawnEvent.y = enemyToSpawn.position.y;
+                        spawnEvent.humanoidCount = Game.humanoids.Size();
+                        spawnEvent.commit();
+                    }
 
                     s.Spawned(); // Update spawn point for the next spawn
                 }
@@ -110,7 +154,7 @@ public class Enemy extends Humanoid {
     public boolean canShoot = false; // Whether the enemy can shoot projectiles
 
     public Enemy(HumanoidType type) {
-        super(type.name().toLowerCase(), 100, 100); // Call base class constructor with type name and default size
+        super(type.name().toLowerCase(), 100, 100, 0); // Call base class constructor with type name and default size, Reset draws the seed
         
         this.type = type;
         this.collisionLayers.add("enemy"); // Add the enemy to collision layers
@@ -155,6 +199,25 @@ public class Enemy extends Humanoid {
 
         LoadAnimations(); // Load animations specific to this enemy
     }
+
+    // Makes an enemy of type, of the subclass that plays it. Pooled by EnemyManager, use EnemyManager.Spawn
+    static Enemy Make(HumanoidType type) {
+        switch (type) {
+            case RAT: return new Rat();
+            case BOMBER: return new Bomber();
+            case HAR: return new HAR();
+            default: return new Enemy(type);
+        }
+    }
+
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.state = State.ROAMING;
+        this.lookAtVectorAssignedTime = 0;
+        this.roamingStoodStillTill = 0;
+        this.roamingStartPosition = this.position.scale(1.0);
+    }
     
     public void Update(double deltaTime) {          
         boolean inRange = Game.player.position.distance(this.position) < this.eyeSight; // Check if the player is within eyesight range
@@ -169,11 +232,11 @@ public class Enemy extends Humanoid {
             }
     
             // Generate a new roaming target if the current one is reached or timed out
-            Vector2 newLookAtPoint = this.roamingStartPosition.add(new Vector2(Math.random() * 700, Math.random() * 700));
+            Vector2 newLookAtPoint = this.roamingStartPosition.add(new Vector2(Game.random.nextDouble() * 700, Game.random.nextDouble() * 700));
     
             if (this.position.distance(this.lookAtPoint) < 5 || (Game.now() - this.lookAtVectorAssignedTime) >= this.lookAtGoToTimeout) {
                 this.lookAtPoint = newLookAtPoint;
-                this.roamingStoodStillTill = Game.now() + Math.random() * 2.5; // Random wait time before moving again
+                this.roamingStoodStillTill = Game.now() + Game.random.nextDouble() * 2.5; // Random wait time before moving again
                 this.lookAtVectorAssignedTime = Game.now();
             }
     
@@ -228,6 +291,12 @@ class HAR extends Enemy {
         super(HumanoidType.HAR); // Initialize HAR with the specific humanoid type
     }
 
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.runAwayStartTime = 0;
+    }
+
     @Override
     public void Update(double deltaTime) {
         super.Update(deltaTime); // Call the base class update logic
@@ -235,7 +304,7 @@ class HAR extends Enemy {
         if (this.state == State.CHASING) {
             // Switch to running away if too close to the player or after a recent melee attack
             if (Game.player.position.distance(this.position) < 30 || (Game.now() - lastMelee) < 0.1) {
-                this.lookAtPoint = this.position.add(new Vector2(Math.random() * 1000 - 500, Math.random() * 1000 - 500)); // Randomize escape direction
+                this.lookAtPoint = this.position.add(new Vector2(Game.random.nextDouble() * 1000 - 500, Game.random.nextDouble() * 1000 - 500)); // Randomize escape direction
                 this.state = State.HAR_RUNNING_AWAY; // Change state to running away
                 this.MeleeAttack(); // Perform melee attack
                 this.runAwayStartTime = Game.now(); // Record the time HAR starts running away
@@ -274,6 +343,12 @@ class Bomber extends Enemy {
         super(HumanoidType.BOMBER); // Initialize the Bomber as a specific humanoid type
     }
 
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.explodingStartTime = 0;
+    }
+
     @Override
     public void Update(double deltaTime) {
         super.Update(deltaTime); // Call base class update logic
@@ -317,7 +392,8 @@ class Bomber extends Enemy {
 class Rat extends Enemy {
     private final double birthCooldown = 20; // Time interval between births
     private double lastBirthTime = 0; // Timestamp of the last birth
-    protected ArrayList<Enemy> children = new ArrayList<>(); // List of Rat's spawned children
+    protected long[] children = new long[8]; // Handles in Game.humanoids of the Rat's spawned children
+    protected int numChildren = 0;
     private int childrenThisBirth = 0; // Number of children born in the current birthing session
     private final int maxChildren = 6; // Maximum children per birthing session
 
@@ -325,6 +401,14 @@ class Rat extends Enemy {
         super(HumanoidType.RAT); // Initialize Rat as a specific humanoid type
     }
 
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.numChildren = 0;
+        this.lastBirthTime = 0;
+        this.childrenThisBirth = 0;
+    }
+
     private void Birth() {
         this.lastBirthTime = Game.now(); // Record the birth start time
         this.state = State.RAT_BIRTHING; // Change state to birthing
@@ -336,16 +420,17 @@ class Rat extends Enemy {
         super.Update(deltaTime); // Call base class update logic
 
         // Iterate through children to update their behavior or remove them if necessary
-        Iterator<Enemy> iterator = this.children.iterator();
-        while (iterator.hasNext()) {
-            Enemy child = iterator.next();
-            
-            // Remove child if dead
-            if (child.state == State.DEAD) {
-                iterator.remove();
-            } 
+        for (int i = 0; i < this.numChildren; ) {
+            Enemy child = (Enemy)Game.humanoids.Get(this.children[i]);
+
+            // Remove child if dead, or if it already left the game (its handle went stale)
+            if (child == null || child.state == State.DEAD) {
+                this.children[i] = this.children[--this.numChildren];
+                continue;
+            }
+
             // Handle roaming children
-            else if (child.state == State.ROAMING) {
+            if (child.state == State.ROAMING) {
                 if (this.state == State.ROAMING) {
                     Vector2 center = this.position.add(this.size.scale(0.5)); // Center point for children
 
@@ -365,6 +450,7 @@ class Rat extends Enemy {
             if ((Game.now() - child.spawnTime > 15) || (child.position.distance(this.position) > 1920)) {
                 child.health = Integer.MIN_VALUE;
             }
+            i++;
         }
 
         // Handle Rat behavior based on its state
@@ -382,14 +468,16 @@ class Rat extends Enemy {
             }
 
             // Spawn children periodically during the birthing state
-            if (Game.now() - this.lastBirthTime > 1.0 && Math.random() < 0.1 && childrenThisBirth < maxChildren) {
+            if (Game.now() - this.lastBirthTime > 1.0 && Game.random.nextDouble() < 0.1 && childrenThisBirth < maxChildren) {
                 this.childrenThisBirth++; // Increment children count
 
-                Enemy child = new Enemy(HumanoidType.RAT_CHILD); // Create a new child
-                child.position = this.position.add(new Vector2(Math.random() * this.size.x, Math.random() * this.size.y)); // Randomize child position
+                Enemy child = Game.em.Spawn(HumanoidType.RAT_CHILD); // Create a new child
+                child.position = this.position.add(new Vector2(Game.random.nextDouble() * this.size.x, Game.random.nextDouble() * this.size.y)); // Randomize child position
 
-                this.children.add(child); // Add child to the list
-                Game.humanoids.add(child); // Add child to the game
+                if (this.numChildren == this.children.length) {
+                    this.children = Arrays.copyOf(this.children, this.numChildren * 2);
+                }
+                this.children[this.numChildren++] = Game.humanoids.Add(child); // Add child to the game, keep its handle
             }
         }
     }
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/*
+ * Live entities of one kind (humanoids, bullets), behind Game.humanoids and BulletManager.bullets.
+ *
+ * The entities are kept packed in one array, so iterating is a walk over it. Removal is deferred: Destroy only
+ * marks an entity, Flush removes the marked ones at the end of the tick in one pass that slides the rest down,
+ * instead of shifting everything after each one. Indicies stay valid while the tick walks the array, entities
+ * added meanwhile are simply appended, and the entities stay in the order they were added, which is the order
+ * they update in (the seeded scenario's outcome depends on it).
+ *
+ * Add gives each entity a handle, a slot number and that slot's generation packed in a long. The generation
+ * goes up every time the slot is freed, so a handle kept after its entity left (and its object went back to a
+ * Pool and came out as another entity) no longer resolves, Get returns null for it.
+ */
+class EntityStore<T extends GameObject> implements Iterable<T> {
+    private GameObject[] dense = new GameObject[64]; // Live entities, packed
+    private int[] denseSlot = new int[64]; // Slot of each entity in dense
+    private int size = 0;
+
+    private int[] slotIndex = new int[64]; // Index in dense of each slot's entity
+    private int[] slotGeneration = new int[64]; // Generation of each slot, handles with another one are stale
+    private int numSlots = 0;
+    private int[] freeSlots = new int[64];
+    private int numFree = 0;
+
+    private int[] pending = new int[16]; // Slots of the entities Destroy marked
+    private int numPending = 0;
+
+    // Adds e, returns its handle (also kept in e.handle)
+    public long Add(T e) {
+        if (e.handle != 0) {
+            throw new IllegalArgumentException("Entity is already in a store: " + e);
+        }
+
+        int slot;
+        if (this.numFree > 0) {
+            slot = this.freeSlots[--this.numFree];
+        } else {
+            if (this.numSlots == this.slotIndex.length) {
+                this.slotIndex = Arrays.copyOf(this.slotIndex, this.numSlots * 2);
+                this.slotGeneration = Arrays.copyOf(this.slotGeneration, this.numSlots * 2);
+            }
+            slot = this.numSlots++;
+            this.slotGeneration[slot] = 1; // Handle 0 is never valid
+        }
+
+        if (this.size == this.dense.length) {
+            this.dense = Arrays.copyOf(this.dense, this.size * 2);
+            this.denseSlot = Arrays.copyOf(this.denseSlot, this.size * 2);
+        }
+        this.dense[this.size] = e;
+        this.denseSlot[this.size] = slot;
+        this.slotIndex[slot] = this.size;
+        this.size++;
+
+        e.handle = ((long)this.slotGeneration[slot] << 32) | slot;
+        e.pendingDestroy = false;
+        return e.handle;
+    }
+
+    // Entity of handle, null if it left the store
+    @SuppressWarnings("unchecked")
+    public T Get(long handle) {
+        int slot = (int)handle;
+        if (handle == 0 || slot < 0 || slot >= this.numSlots || this.slotGeneration[slot] != (int)(handle >>> 32)) {
+            return null;
+        }
+        return (T)this.dense[this.slotIndex[slot]];
+    }
+
+    // index-th live entity, 0 <= index < Size()
+    @SuppressWarnings("unchecked")
+    public T At(int index) {
+        return (T)this.dense[index];
+    }
+
+    public int Size() {
+        return this.size;
+    }
+
+    // Marks e to be removed by the next Flush. It stays in the store, and Get still finds it, until then
+    public void Destroy(T e) {
+        if (e.pendingDestroy || this.Get(e.handle) != e) return;
+
+        e.pendingDestroy = true;
+        if (this.numPending == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.numPending * 2);
+        }
+        this.pending[this.numPending++] = (int)e.handle;
+    }
+
+    // Removes the entities Destroy marked, handing each to removed (may be null), keeping the others in order.
+    // Called at the end of the tick
+    @SuppressWarnings("unchecked")
+    public void Flush(Consumer<T> removed) {
+        if (this.numPending == 0) return;
+
+        // From the first marked entity on, slide the ones staying down over the gaps
+        int first = this.size;
+        for (int p = 0; p < this.numPending; p++) {
+            first = Math.min(first, this.slotIndex[this.pending[p]]);
+        }
+
+        int kept = first;
+        for (int i = first; i < this.size; i++) {
+            T e = (T)this.dense[i];
+            int slot = this.denseSlot[i];
+
+            if (e.pendingDestroy) {
+                this.FreeSlot(slot);
+                e.handle = 0;
+                if (removed != null) removed.accept(e);
+            } else {
+                this.dense[kept] = e;
+                this.denseSlot[kept] = slot;
+                this.slotIndex[slot] = kept;
+                kept++;
+            }
+        }
+        Arrays.fill(this.dense, kept, this.size, null);
+        this.size = kept;
+        this.numPending = 0;
+    }
+
+    // Removes every entity straight away, their handles all go stale
+    public void Clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.dense[i].handle = 0;
+            this.dense[i] = null;
+            this.FreeSlot(this.denseSlot[i]);
+        }
+        this.size = 0;
+        this.numPending = 0;
+    }
+
+    private void FreeSlot(int slot) {
+        this.slotGeneration[slot]++;
+        if (this.numFree == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.numFree * 2);
+        }
+        this.freeSlots[this.numFree++] = slot;
+    }
+
+    // Live entities in store order. Entities added while iterating are visited too
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < EntityStore.this.size;
+            }
+
+            @Override
+            public T next() {
+                if (this.next >= EntityStore.this.size) throw new NoSuchElementException();
+                return EntityStore.this.At(this.next++);
+            }
+        };
+    }
+}
@@ -2,11 +2,13 @@ import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Properties;
 
 // Manages and handles the loading, drawing, and playback of graphical effects (GFX) in the game.
 class GFXManager {
     protected HashMap<String, Tile> loadedGFXS = null;
     private ArrayList<GFX> activeGFXS = new ArrayList<>();
+    private HashMap<String, Pool<GFX>> pools = new HashMap<>(); // Finished GFX of each name, reused by PlayGFXOnce
 
     public GFXManager() {
         String[] essentialGfxsNames = {"smoke_cloud", "gfx_slash", "gfx_eye_of_rah", "real_rah", "gfx_explode", "gfx_star_spin", "gfx_crack"};
@@ -29,8 +31,10 @@ class GFXManager {
         Iterator<GFX> iterator = this.activeGFXS.iterator();
         while (iterator.hasNext()) {
             GFX gfx = iterator.next();
-            if (gfx.tile.animPlayedCount >= 1) {
+            // Done once it played, or once what it follows has left Game.humanoids (its handle finds something else)
+            if (gfx.tile.animPlayedCount >= 1 || (gfx.attachedHandle != 0 && Game.humanoids.Get(gfx.attachedHandle) != gfx.attachedTo)) {
                 iterator.remove();
+                gfx.pool.Release(gfx);
                 continue;
             }
 
@@ -43,6 +47,11 @@ class GFXManager {
         }
     }
 
+    // Finished GFX are given back to these
+    public Iterable<Pool<GFX>> Pools() {
+        return this.pools.values();
+    }
+
     // Retrieve a specific GFX by name
     public Tile GetGFX(String gfx) {
         return this.loadedGFXS != null ? this.loadedGFXS.get(gfx) : null;
@@ -68,17 +77,40 @@ class GFXManager {
             return;
         }
 
-        gfx = gfx.Clone();
-        gfx.animFPS *= speed;
         position = position.sub(gfxSize.scale(0.5));
 
-        GFX fx = new GFX(gfx, position);
+        Pool<GFX> pool = this.Pool(gfxName, gfx);
+        GFX fx = pool.Obtain();
+        fx.pool = pool;
+        fx.tile.animFPS = (int)(gfx.animFPS * speed);
+        fx.offsetPosition = position;
         fx.flipped = flip;
         fx.attachedTo = attachTo;
+        fx.attachedHandle = attachTo != null ? attachTo.handle : 0;
 
         activeGFXS.add(fx);
     }
 
+    // Pool of gfxName's GFX, each with its own clone of gfx so it animates on its own
+    private Pool<GFX> Pool(String gfxName, Tile gfx) {
+        Pool<GFX> pool = this.pools.get(gfxName);
+        if (pool == null) {
+            pool = new Pool<>("GFX/" + gfxName, () -> new GFX(gfx.Clone(), new Vector2()));
+            this.pools.put(gfxName, pool);
+        }
+        return pool;
+    }
+
+    // Makes the GFX the map's `.pools` file asks for, keys are `gfx.<name>` (see Pool.ReadCounts)
+    public void Prewarm(Properties counts) {
+        for (String gfxName : this.loadedGFXS.keySet()) {
+            int count = Pool.Count(counts, "gfx." + gfxName);
+            if (count > 0) {
+                this.Pool(gfxName, this.loadedGFXS.get(gfxName)).Prewarm(count);
+            }
+        }
+    }
+
     public void PlayGFXOnce(String gfxName, Vector2 position) {
         PlayGFXOnce(gfxName, position, 1.0, false, null);
     }
@@ -98,7 +130,9 @@ public class GFX extends GameObject {
     protected Tile tile;
     public boolean flipped = false;
     public GameObject attachedTo = null;
+    protected long attachedHandle = 0; // attachedTo's handle in Game.humanoids when it was attached, 0 if it wasn't in it
     public Vector2 offsetPosition = new Vector2();
+    protected Pool<GFX> pool = null; // Pool it goes back to once it played, see GFXManager.PlayGFXOnce
 
     public GFX(Tile gfxTile, Vector2 position, boolean reset) {
         super();
@@ -118,6 +152,19 @@ public class GFX extends GameObject {
         gfxTile.ResetAnimation();
     }
 
+    // Ready to play again from the start, PlayGFXOnce sets the rest
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.flipped = false;
+        this.attachedTo = null;
+        this.attachedHandle = 0;
+        this.offsetPosition = new Vector2();
+        this.size = Game.gfxManager.GetGFXSize(this.tile);
+        this.tile.animPlayedCount = 0;
+        this.tile.ResetAnimation();
+    }
+
     // Draw the GFX object, considering its position and any attachment.
     public void Draw(Graphics2D g) {
         if (Game.currentMap == null) return;
@@ -15,9 +15,13 @@ import javax.swing.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.image.VolatileImage;
 import java.awt.*;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
 
 public class Game extends JPanel implements Runnable, KeyListener {
     private Thread gameThread; // Thread game is ran on
@@ -82,10 +86,15 @@ public class Game extends JPanel implements Runnable, KeyListener {
 
     // Time stuff
     public static double gameStart = System.currentTimeMillis()/1000.0;
+    public static double fixedNow = -1; // When not negative now() returns this instead, scripted runs step it themselves
     public static double now() {
+        if (Game.fixedNow >= 0) return Game.fixedNow;
         return (double)System.nanoTime() / (double)1e9;
     }
 
+    // Gameplay randomness goes through here so a run can be repeated by seeding it
+    public static Random random = new Random();
+
     // Load default map
     static TileMap currentMap = new TileMap(100, 100);
 
@@ -97,8 +106,13 @@ public class Game extends JPanel implements Runnable, KeyListener {
 
     public static AffineTransform worldTransform = new AffineTransform();
 
+    // The world is drawn at 1/renderDivisor of the window size and upscaled, UI is always drawn at native size
+    public static int renderDivisor = 1;
+    public static final int MAX_RENDER_DIVISOR = 3;
+    private VolatileImage worldImage; // Low resolution world render target, used when renderDivisor > 1
+
     //create an array list of humans
-    public static ArrayList<Humanoid> humanoids = new ArrayList<>();
+    public static EntityStore<Humanoid> humanoids = new EntityStore<>();
 
     public static EnemyManager em;
     public static BulletManager bm;
@@ -188,6 +202,7 @@ public class Game extends JPanel implements Runnable, KeyListener {
         
         // Load map
         Game.currentMap.LoadFromFile("./res/map.wmap");
+        AssetWatcher.Start("./res"); // Sheets and the map reload when they change on disk
 
         // Setup editor
         this.editor = new TileMapEditor(currentMap);
@@ -213,6 +228,13 @@ public class Game extends JPanel implements Runnable, KeyListener {
         
         player.LoadAnimations();
         player.collisionLayers.add("player");
+
+        // Make the enemies, bullets and GFX the map expects to need up front, see Pool. They draw from
+        // Game.random when they're used, so the pool sizes don't change a seeded game
+        Properties poolCounts = Pool.ReadCounts(Game.currentMap.filePath);
+        em.Prewarm(poolCounts);
+        bm.Prewarm(poolCounts);
+        gfxManager.Prewarm(poolCounts);
         gameStart = Game.now();
     
         // Set the player's starting position from the first spawn tile, if available
@@ -222,7 +244,7 @@ public class Game extends JPanel implements Runnable, KeyListener {
             player.position = Game.currentMap.LocalToWorldVectorPositional(new Vector2(spawnTile.x, spawnTile.y));
         }
     
-        humanoids.add(player); // Add the player to the humanoids list
+        humanoids.Add(player); // Add the player to the humanoids list
     
         Game.physics.SetCollidable("humanoid", "humanoid", false); // Disable collisions between humanoids
     }
@@ -233,28 +255,32 @@ public class Game extends JPanel implements Runnable, KeyListener {
             Game.currentMap.highScore = Game.score; // Update high score if needed
         }
 
-        Game.currentMap.Save("./res/map.wmap"); // Save the map data
+        Game.currentMap.SaveAsync("./res/map.wmap"); // Save the map data, written on the saver thread
 
-        Game.currentMap = new TileMap(100, 100); // Reset the map
-
-        Game.currentMap.LoadFromFile("./res/map.wmap"); // Reload the map file
+        // A game doesn't change the map's tiles, so it already holds what was just saved. It's kept for the next
+        // game rather than loaded again, which would wait for the save to be written first
+        Game.currentMap.ResetResponsiblities();
         
         player = null;
         gfxManager = null;
         
         em = null;
         bm = null;
+        if (hud != null) hud.Dispose();
         hud = null;
         
         physics = null;
 
-        humanoids.clear(); // Clear all humanoids
+        humanoids.Clear(); // Clear all humanoids
 
         Game.menu = new MainMenu(); // Set the menu to the main menu
     }
 
     // Updates the game state, including player, menu, physics, and editor (if enabled).
     public void Update(double deltaTime) {
+        TileMap.ShowSaveMessages(); // Report map saves that finished in the background
+        AssetWatcher.Apply(Game.currentMap); // Hot reload files changed on disk
+
         if (Game.player != null && Game.player.health > 0) {
             score = (int)(Game.now() - Game.gameStart) * 20; // Update score based on game time
         }
@@ -272,7 +298,59 @@ public class Game extends JPanel implements Runnable, KeyListener {
             return;
         }
 
+        Game.UpdateWorld(deltaTime, this.editorEnabled);
+
+        // Update editor if enabled
+        if (this.editorEnabled) {
+            Profiler.Begin(FramePhase.EDITOR_UPDATE);
+            editor.Update(deltaTime);
+            Profiler.End(FramePhase.EDITOR_UPDATE);
+        }
+
+        // Toggle editor mode with 'E' key
+        if (Game.IsKeyPressed(KeyEvent.VK_E)) {
+            this.editorEnabled = !this.editorEnabled;
+            new Message("Editor " + (this.editorEnabled ? "enabled" : "disabled.") + " press E.", 5.0);
+            if (this.editorEnabled && Game.IsKeyDown(KeyEvent.VK_SHIFT)) {
+                this.editor = new TileMapEditor(Game.currentMap);
+            }
+        }
+
+        // Switch tile renderer backend with 'F2'
+        if (Game.IsKeyPressed(KeyEvent.VK_F2)) {
+            RenderBackend[] backends = RenderBackend.values();
+            TileMap.renderBackend = backends[(TileMap.renderBackend.ordinal() + 1) % backends.length];
+            new Message("Tile renderer: " + TileMap.renderBackend + ", press F2 to cycle.", 5.0);
+        }
+
+        // Cycle world render scale with 'F3'
+        if (Game.IsKeyPressed(KeyEvent.VK_F3)) {
+            Game.renderDivisor = Game.renderDivisor % MAX_RENDER_DIVISOR + 1;
+            new Message("World render scale: 1/" + Game.renderDivisor + ", press F3 to cycle.", 5.0);
+        }
+
+        // Toggle the profiler overlay with 'F4', dump its samples with 'F5'
+        if (Game.IsKeyPressed(KeyEvent.VK_F4)) {
+            Profiler.Toggle();
+        }
+        if (Game.IsKeyPressed(KeyEvent.VK_F5)) {
+            Profiler.DumpCSV("./profile_" + System.currentTimeMillis() + ".csv");
+        }
+
+        // Toggle per phase allocation tracking with 'F6'
+        if (Game.IsKeyPressed(KeyEvent.VK_F6)) {
+            Profiler.ToggleAllocations();
+        }
+
+        Game.StepPhysics(deltaTime);
+    }
+
+    // Runs everything in the world up to the physics step: camera, humanoids, enemies and bullets.
+    // Split from Update so headless runs (ScenarioRunner) tick the game the same way.
+    public static void UpdateWorld(double deltaTime, boolean editorEnabled) {
+        Profiler.Begin(FramePhase.PHYSICS_PRE_UPDATE);
         Game.physics.PreUpdate(); // Run physics pre-update
+        Profiler.End(FramePhase.PHYSICS_PRE_UPDATE);
 
         // Camera transformation logic
         worldTransform = new AffineTransform();
@@ -292,49 +370,67 @@ public class Game extends JPanel implements Runnable, KeyListener {
         }
         Game.worldMousePos = new Vector2(worldMousePoint.x, worldMousePoint.y);
 
+        // Stream in the parts of a large map around the camera and humanoids
+        if (currentMap.streamer != null) {
+            Point2D cameraCentre = new Point2D.Double();
+            try {
+                worldTransform.inverseTransform(new Point2D.Double(Game.WINDOW_WIDTH / 2.0, Game.WINDOW_HEIGHT / 2.0), cameraCentre);
+            } catch (NoninvertibleTransformException e) {
+            }
+            Profiler.Begin(FramePhase.STREAMING);
+            currentMap.streamer.Update(new Vector2(cameraCentre.getX(), cameraCentre.getY()), Game.humanoids);
+            Profiler.End(FramePhase.STREAMING);
+        }
+
         Game.physics.currentMap = currentMap;
 
-        // Update all humanoids, remove dead ones
-        ArrayList<Integer> humansToRemove = new ArrayList<>();
-        for (int i = 0; i < Game.humanoids.size(); i++) {
-            Humanoid e = Game.humanoids.get(i);
+        // Update all humanoids, dead ones are removed at the end of the tick
+        Profiler.Begin(FramePhase.HUMANOIDS);
+        for (int i = 0; i < Game.humanoids.Size(); i++) {
+            Humanoid e = Game.humanoids.At(i);
 
             if (e.state == State.DEAD) {
-                humansToRemove.add(i);
+                Game.humanoids.Destroy(e);
             } else {
-                if (e.type == HumanoidType.HUMAN || !this.editorEnabled) {
+                if (e.type == HumanoidType.HUMAN || !editorEnabled) {
                     e.Update(deltaTime);
                 }
                 Game.physics.physicsObjects.add(e);
             }
         }
-        for (int i : humansToRemove) {
-            Game.humanoids.remove(i);
-        }
+        Profiler.End(FramePhase.HUMANOIDS);
 
         // Update game managers
         if (Game.em != null) {
+            Profiler.Begin(FramePhase.ENEMIES);
             em.Update(deltaTime);
+            Profiler.End(FramePhase.ENEMIES);
         }
         if (Game.bm != null) {
+            Profiler.Begin(FramePhase.BULLETS);
             bm.Update(deltaTime);
+            Profiler.End(FramePhase.BULLETS);
         }
 
-        // Update editor if enabled
-        if (this.editorEnabled) {
-            editor.Update(deltaTime);
+        // End of the tick: dead humanoids and destroyed bullets leave their stores, see EntityStore
+        Game.humanoids.Flush(Game::ReleaseHumanoid);
+        if (Game.bm != null) {
+            bm.bullets.Flush(bm.pool::Release);
         }
+    }
 
-        // Toggle editor mode with 'E' key
-        if (Game.IsKeyPressed(KeyEvent.VK_E)) {
-            this.editorEnabled = !this.editorEnabled;
-            new Message("Editor " + (this.editorEnabled ? "enabled" : "disabled.") + " press E.", 5.0);
-            if (this.editorEnabled && Game.IsKeyDown(KeyEvent.VK_SHIFT)) {
-                this.editor = new TileMapEditor(Game.currentMap);
-            }
+    // A dead humanoid left Game.humanoids, enemies are reused by the next spawn of their type
+    private static void ReleaseHumanoid(Humanoid dead) {
+        if (dead instanceof Enemy && Game.em != null) {
+            Game.em.Release((Enemy)dead);
         }
+    }
 
+    // Runs the physics step, after everything else in the frame has moved
+    public static void StepPhysics(double deltaTime) {
+        Profiler.Begin(FramePhase.PHYSICS_UPDATE);
         Game.physics.Update(deltaTime); // Run physics update
+        Profiler.End(FramePhase.PHYSICS_UPDATE);
     }
 
     // Draw FPS
@@ -357,25 +453,44 @@ public class Game extends JPanel implements Runnable, KeyListener {
     public void Draw(Graphics2D g) {
         AffineTransform defaultTransform = g.getTransform();
 
-        g.setTransform(Game.worldTransform);
-        currentMap.Draw(g); // Draw the current map
+        // Pick where the world goes, the window or the low resolution image
+        Graphics2D worldG = g;
+        if (Game.renderDivisor > 1) {
+            worldG = this.BeginWorldImage(g);
+        }
+        if (worldG != g) {
+            AffineTransform scaled = AffineTransform.getScaleInstance(1.0 / Game.renderDivisor, 1.0 / Game.renderDivisor);
+            scaled.concatenate(Game.worldTransform);
+            worldG.setTransform(scaled);
+        } else {
+            g.setTransform(Game.worldTransform);
+        }
+        GG.g = worldG;
 
-        currentMap.ResetResponsiblities();
+        Game.DrawWorld(worldG);
 
-        if (Game.em != null)
-            em.Draw(g); // Draw enemies
-        if (Game.bm != null)
-            bm.Draw(g); // Draw bullets
+        if (worldG != g) {
+            worldG.dispose();
+            GG.g = g;
 
-        if (Game.gfxManager != null)
-            gfxManager.Draw(g); // Draw graphics manager
+            // Upscale the world to the window, leaving g's hints the way the caller set them
+            RenderingHints hints = g.getRenderingHints();
+            g.setTransform(defaultTransform);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(this.worldImage, 0, 0, this.worldImage.getWidth() * Game.renderDivisor, this.worldImage.getHeight() * Game.renderDivisor, null);
+            g.setRenderingHints(hints);
+            g.setTransform(Game.worldTransform);
+        }
 
+        // The editor's panels live in world space, keep them at native resolution too
         if (this.editorEnabled) {
             try {
                 // Temporarily set mouse to world mouse for editor
                 Vector2 origPos = Game.mousePos.scale(1);
                 Game.mousePos = Game.worldMousePos; 
+                Profiler.Begin(FramePhase.EDITOR_DRAW);
                 this.editor.Draw(g); // Draw editor
+                Profiler.End(FramePhase.EDITOR_DRAW);
                 Game.mousePos = origPos;
             } catch (NoninvertibleTransformException e) {
                 // Exception handling (unreachable)
@@ -383,9 +498,7 @@ public class Game extends JPanel implements Runnable, KeyListener {
         }
 
         // Draw enemies on the map
-        for (Humanoid h : humanoids) {
-            currentMap.RenderResponsibly(h);
-        }
+        Game.QueueHumanoids();
 
         g.setTransform(defaultTransform);
 
@@ -405,7 +518,60 @@ public class Game extends JPanel implements Runnable, KeyListener {
             g.drawString(text, Game.WINDOW_WIDTH / 2 - textWidth / 2, 90); // Draw score
         }
 
+        Profiler.Begin(FramePhase.PANEL_DRAW);
         Panel.Draw(g); // Draw panel
+        Profiler.End(FramePhase.PANEL_DRAW);
+
+        Profiler.Draw(g); // Draw profiler overlay, if enabled
+    }
+
+    // Draws the map and everything on it, g must already have the world transform
+    public static void DrawWorld(Graphics2D g) {
+        Profiler.Begin(FramePhase.MAP_DRAW);
+        currentMap.Draw(g); // Draw the current map
+        Profiler.End(FramePhase.MAP_DRAW);
+
+        currentMap.ResetResponsiblities();
+
+        if (Game.em != null)
+            em.Draw(g); // Draw enemies
+        if (Game.bm != null)
+            bm.Draw(g); // Draw bullets
+
+        if (Game.gfxManager != null)
+            gfxManager.Draw(g); // Draw graphics manager
+    }
+
+    // Hands the humanoids to the map, it draws them with its next Draw. Called after DrawWorld and the editor
+    public static void QueueHumanoids() {
+        for (Humanoid h : humanoids) {
+            currentMap.RenderResponsibly(h);
+        }
+    }
+
+    // Makes sure the low resolution world image matches the window and returns a cleared graphics for it.
+    // Returns g itself when no volatile image can be made (headless), the world is then drawn at native size.
+    private Graphics2D BeginWorldImage(Graphics2D g) {
+        GraphicsConfiguration gc = this.getGraphicsConfiguration();
+        if (gc == null) return g;
+
+        int width = (Game.WINDOW_WIDTH + Game.renderDivisor - 1) / Game.renderDivisor;
+        int height = (Game.WINDOW_HEIGHT + Game.renderDivisor - 1) / Game.renderDivisor;
+
+        if (this.worldImage == null || this.worldImage.getWidth() != width || this.worldImage.getHeight() != height
+                || this.worldImage.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+            this.worldImage = gc.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+        }
+
+        Graphics2D worldG = this.worldImage.createGraphics();
+        worldG.setRenderingHints(g.getRenderingHints());
+        worldG.setClip(0, 0, width, height);
+
+        // Same clear colour as paint
+        worldG.setColor(new Color(28, 115, 255));
+        worldG.fillRect(0, 0, width, height);
+
+        return worldG;
     }
 
     // Resets the mouse state, including scroll and button presses.
@@ -422,6 +588,9 @@ public class Game extends JPanel implements Runnable, KeyListener {
     // Custom paint method for updating and rendering the game.
     @Override
     public void paint(Graphics gAbs) { 
+        Profiler.Begin(FramePhase.FRAME);
+        FrameEvent frameEvent = FrameEvent.TYPE.isEnabled() ? new FrameEvent() : null;
+        if (frameEvent != null) frameEvent.begin();
         double now = Game.now();
         double deltaTime = now - this.lastDraw;
 
@@ -473,6 +642,18 @@ public class Game extends JPanel implements Runnable, KeyListener {
         }
 
         g.dispose();
+
+        Profiler.End(FramePhase.FRAME);
+        Profiler.EndFrame();
+
+        if (frameEvent != null) frameEvent.end();
+        if (frameEvent != null && frameEvent.shouldCommit()) {
+            frameEvent.deltaTime = (long)(deltaTime * 1e9);
+            frameEvent.humanoidCount = Game.humanoids.Size();
+            frameEvent.renderBackend = TileMap.renderBackend.name();
+            frameEvent.renderDivisor = Game.renderDivisor;
+            frameEvent.commit();
+        }
     }
 
 
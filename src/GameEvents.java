@@ -0,0 +1,161 @@
+import jdk.jfr.*;
+
+/*
+ * Java Flight Recorder events for the game's own phases, so a recording shows what the game was doing
+ * around a GC pause or a slow frame. JFR events cost next to nothing unless a recording has them enabled,
+ * fields that are expensive to fill in are only set after shouldCommit() says the event will be kept. Events
+ * made every frame are only made, timed and counted for when their TYPE is enabled, checked once a frame.
+ *
+ * Start a recording with: java -XX:StartFlightRecording=filename=wendigo.jfr ... Wendigo
+ */
+
+@Name("wendigo.Frame")
+@Label("Frame")
+@Category({"Wendigo", "Frame"})
+@Description("One call of Game.paint, update and draw")
+class FrameEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(FrameEvent.class); // Whether a recording wants it
+
+    @Label("Delta Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long deltaTime;
+
+    @Label("Humanoids")
+    int humanoidCount;
+
+    @Label("Tile Renderer")
+    String renderBackend;
+
+    @Label("Render Divisor")
+    int renderDivisor;
+}
+
+@Name("wendigo.PhysicsStep")
+@Label("Physics Step")
+@Category({"Wendigo", "Physics"})
+@Description("Physics.Update, static collider rebuild and collision checks")
+class PhysicsStepEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(PhysicsStepEvent.class); // Whether a recording wants it
+
+    @Label("Bodies")
+    int bodyCount;
+
+    @Label("Static Colliders")
+    int staticColliderCount;
+}
+
+@Name("wendigo.RayCastBatch")
+@Label("Ray Cast Batch")
+@Category({"Wendigo", "Physics"})
+@Description("Every Physics.RayCast made during one frame")
+class RayCastBatchEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(RayCastBatchEvent.class); // Whether a recording wants it
+
+    @Label("Rays")
+    int rayCount;
+
+    @Label("Hits")
+    int hitCount;
+
+    @Label("Rectangles Tested")
+    long rectanglesTested;
+
+    @Label("Time In Ray Casts")
+    @Timespan(Timespan.NANOSECONDS)
+    long rayTime;
+}
+
+@Name("wendigo.MapDraw")
+@Label("Map Draw")
+@Category({"Wendigo", "Rendering"})
+@Description("TileMap.Draw")
+class MapDrawEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(MapDrawEvent.class); // Whether a recording wants it
+
+    @Label("Tiles Drawn")
+    int tilesDrawn;
+
+    @Label("Tiles Occluded")
+    int tilesOccluded;
+
+    @Label("Layers")
+    int layerCount;
+
+    @Label("Tile Renderer")
+    String renderBackend;
+}
+
+@Name("wendigo.MapLoad")
+@Label("Map Load")
+@Category({"Wendigo", "IO"})
+@Description("TileMap.LoadFromFile")
+class MapLoadEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Sprite Sheets")
+    int sheetCount;
+
+    @Label("Layers")
+    int layerCount;
+}
+
+@Name("wendigo.MapSave")
+@Label("Map Save")
+@Category({"Wendigo", "IO"})
+@Description("TileMap.Save")
+class MapSaveEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Sprite Sheets")
+    int sheetCount;
+
+    @Label("Layers")
+    int layerCount;
+}
+
+@Name("wendigo.SheetDecode")
+@Label("Sprite Sheet Decode")
+@Category({"Wendigo", "IO"})
+@Description("Reading and decoding a sprite sheet image")
+class SheetDecodeEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+}
+
+@Name("wendigo.EnemySpawn")
+@Label("Enemy Spawn")
+@Category({"Wendigo", "Gameplay"})
+@Description("An enemy coming out of a spawn")
+class EnemySpawnEvent extends Event {
+    @Label("Enemy Type")
+    String enemyType;
+
+    @Label("X")
+    double x;
+
+    @Label("Y")
+    double y;
+
+    @Label("Humanoids")
+    int humanoidCount;
+}
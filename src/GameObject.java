@@ -14,6 +14,18 @@ public class GameObject {
 
     public ArrayList<String> collisionLayers = new ArrayList<>();
 
+    protected boolean pooled = false; // Sitting in a Pool's free list
+    protected Pool<?> owner = null; // Pool that made it, null if it was made with new
+    protected long handle = 0; // Handle in the EntityStore holding it, 0 when it isn't in one
+    protected boolean pendingDestroy = false; // Marked by EntityStore.Destroy, leaves the store at the end of the tick
+
+    // Reset hook of pooled objects: puts a released object back the way its constructor left it, see Pool
+    protected void Reset() {
+        this.position = new Vector2(); // New vectors, others may still hold the old ones (lookAtPoint = player.position)
+        this.velocity = new Vector2();
+        this.size = new Vector2();
+    }
+
     // Method to draw the object
     public void Draw(Graphics2D g) { }
 
@@ -4,9 +4,6 @@ import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.io.File;
-
-import javax.imageio.ImageIO;
 
 // HUD for when in game
 public class HUD {
@@ -24,10 +21,10 @@ public class HUD {
     public HUD() {
         try {
             // Load UI elements
-            dash = ImageIO.read(new File("res/dashUI.png"));
-            // bullet = ImageIO.read(new File("res/Bullet.png"));
-            health = ImageIO.read(new File("res/health.png"));
-            gameOver = ImageIO.read(new File("res/deathSkull.png"));
+            dash = AssetCache.AcquireImage("res/dashUI.png");
+            // bullet = AssetCache.AcquireImage("res/Bullet.png");
+            health = AssetCache.AcquireImage("res/health.png");
+            gameOver = AssetCache.AcquireImage("res/deathSkull.png");
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -35,6 +32,13 @@ public class HUD {
         this.bulletImage = Game.currentMap.GetSheetTileByTag("bullet");
     }
 
+    // Gives the UI images back to the AssetCache, they stay cached for the next game
+    public void Dispose() {
+        AssetCache.Release(dash);
+        AssetCache.Release(health);
+        AssetCache.Release(gameOver);
+    }
+
     public void Update(double deltaTime) {
         // Update the UI
         // elapsedTime += deltaTime;
@@ -1,8 +1,8 @@
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Properties;
 
 // Represents different animation states of a humanoid.
 enum AnimationState {
@@ -52,8 +52,12 @@ class Bullet extends GameObject {
     private Vector2 initialPosition;  // Initial position of the bullet
     private String shooter;           // The shooter of the bullet
 
-    // Constructor for Bullet.
-    public Bullet(Vector2 position, Vector2 velocity, String shooter) {
+    // Made by BulletManager's pool, Fire sets it off
+    public Bullet() {
+    }
+
+    // Sets off a bullet from position, what the constructor used to do.
+    public Bullet Fire(Vector2 position, Vector2 velocity, String shooter) {
         Vector2 spriteSize = Game.currentMap.LocalToWorldVectorScalar(new Vector2(1,1));
 
         this.position = position.sub(spriteSize.scale(0.5));
@@ -63,7 +67,14 @@ class Bullet extends GameObject {
 
         this.animatedSprite = Game.currentMap.GetSheetTileByTag("bullet");
 
-        Game.bm.bullets.add(this);
+        Game.bm.bullets.Add(this);
+        return this;
+    }
+
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.destroyed = false;
     }
 
     // Updates the bullet's position and checks for collisions.
@@ -108,25 +119,32 @@ class Bullet extends GameObject {
 
 // Manages the bullets in the game.
 class BulletManager {
-    ArrayList<Bullet> bullets = new ArrayList<>(); // List of active bullets
+    EntityStore<Bullet> bullets = new EntityStore<>(); // Active bullets
+    Pool<Bullet> pool = new Pool<>("Bullet", Bullet::new); // Destroyed bullets, reused by Fire
+
+    // Sets off a bullet, see Bullet.Fire
+    public Bullet Fire(Vector2 position, Vector2 velocity, String shooter) {
+        return this.pool.Obtain().Fire(position, velocity, shooter);
+    }
     
     // Updates all active bullets and removes destroyed ones.
     public void Update(double deltaTime) {
-        ArrayList<Integer> deleteIndicies = new ArrayList<>();
-        for (int i = 0; i < this.bullets.size(); i++) {
-            Bullet b = this.bullets.get(i);
+        for (int i = 0; i < this.bullets.Size(); i++) {
+            Bullet b = this.bullets.At(i);
 
+            // Twice, like when Fire and ShootBullet both put it in the list: it moves and hits twice a tick
+            b.Update(deltaTime);
             b.Update(deltaTime);
 
             if (b.destroyed) {
-                deleteIndicies.add(i); // Mark bullets for removal when destroyed
+                this.bullets.Destroy(b); // Removed and released at the end of the tick, see Game.UpdateWorld
             }
         }
+    }
 
-        // Remove destroyed bullets from the list
-        for (int i : deleteIndicies) {
-            this.bullets.remove(i);
-        }
+    // Makes the bullets the map's `.pools` file asks for, see Pool.ReadCounts
+    public void Prewarm(Properties counts) {
+        this.pool.Prewarm(Pool.Count(counts, "bullet"));
     }
 
     // Draws all active bullets to the screen.
@@ -145,7 +163,7 @@ public class Humanoid extends GameObject {
     protected int maxHealth; // Maximum health of the humanoid
     
     protected AnimationState animState = AnimationState.IDLE; // Current animation state
-    protected HashMap<AnimationState, Tile> animations = new HashMap<>(); // Animation states mapped to tiles
+    protected EnumMap<AnimationState, Tile> animations = AnimationRegistry.NONE; // Animation states mapped to tiles, shared by every humanoid with the same name
     
     public Vector2 lookAtPoint = new Vector2(); // Point the humanoid is looking at
 
@@ -179,6 +197,11 @@ public class Humanoid extends GameObject {
 
     // Constructor for humanoid initialization.
     public Humanoid(String name, int health, int maxHealth) {
+        this(name, health, maxHealth, (int)(Game.random.nextDouble() * 1_000_000)); // Random seed for uniqueness
+    }
+
+    // Draws nothing from Game.random, for pooled enemies whose Reset draws the seed when they're obtained
+    protected Humanoid(String name, int health, int maxHealth, int randomSeed) {
         this.health = health;
         this.name = name;
         this.sizeFix = this.name == "dino"; // Special case for "dino" humanoid
@@ -186,7 +209,24 @@ public class Humanoid extends GameObject {
         this.collisionLayers.add("humanoid");
         this.type = HumanoidType.HUMAN;
         this.state = State.PLAYER;
-        this.randomSeed = (int)(Math.random() * 1_000_000); // Random seed for uniqueness
+        this.randomSeed = randomSeed;
+        this.spawnTime = Game.now();
+    }
+
+    // Back to full health and a fresh life, for pooled enemies. Type specific attributes never change so they're kept
+    @Override
+    protected void Reset() {
+        super.Reset();
+        this.health = this.maxHealth;
+        this.animState = AnimationState.IDLE;
+        this.lookAtPoint = new Vector2();
+        this.lastTimeDashed = 0;
+        this.dyingAnimationCurrentScale = 1.0;
+        this.lastBulletShot = 0;
+        this.lastMelee = 0;
+        this.bulletMagazine = this.bulletFullMagazine;
+        this.reloadTill = null;
+        this.randomSeed = (int)(Game.random.nextDouble() * 1_000_000);
         this.spawnTime = Game.now();
     }
 
@@ -199,19 +239,7 @@ public class Humanoid extends GameObject {
     public void LoadAnimations(String prefix) {
         if (Game.currentMap == null) return;
 
-        // Load animations for each possible state
-        for (AnimationState state : AnimationState.values()) {
-            String stateString = state.name().toLowerCase();
-            String tag = prefix.toLowerCase() + "_" + stateString;
-
-            Tile t = Game.currentMap.GetSheetTileByTag(tag);
-            if (t == null) {
-                System.out.println("Missing animation: `" + tag + "` for: `" + this.name + "`");
-            } else {
-                System.out.println("[LOG] Loaded animation: " + tag);
-                this.animations.put(state, t);
-            }
-        }
+        this.animations = Game.currentMap.animations.Get(prefix); // Looked up once per map, see AnimationRegistry
     }
 
     // Draws the humanoid with the appropriate animation based on its state.
@@ -299,7 +327,7 @@ public class Humanoid extends GameObject {
         if (bulletMagazine > 0) {
             if ((Game.now() - this.lastBulletShot) > 1.0/this.maxBulletsPerSecond) {
                 this.bulletMagazine -= 1;
-                Game.bm.bullets.add(new Bullet(this.position.add(this.size.scale(0.5)), direction, this.type == HumanoidType.HUMAN ? "player" : "enemy"));
+                Game.bm.Fire(this.position.add(this.size.scale(0.5)), direction, this.type == HumanoidType.HUMAN ? "player" : "enemy");
                 this.lastBulletShot = Game.now();
             }
         } else if (this.reloadTill == null) {
@@ -108,19 +108,32 @@ public class Physics {
 
     private ArrayList<Rectangle> mapStaticCollidors = new ArrayList<>();
 
+    // Ray casts made since the last PreUpdate, reported as one RayCastBatchEvent. Only timed and counted when a
+    // recording has it enabled, checked by PreUpdate
+    private boolean recordRays = false;
+    private int frameRayCount = 0;
+    private int frameRayHits = 0;
+    private long frameRayRectsTested = 0;
+    private long frameRayTime = 0;
+
     // Updates the physics simulation for the game world
     // Handles the movement, friction, and collision detection of game objects
     public void Update(double dt) {
+        PhysicsStepEvent stepEvent = PhysicsStepEvent.TYPE.isEnabled() ? new PhysicsStepEvent() : null;
+        if (stepEvent != null) stepEvent.begin();
+
         // Reset the static colliders list
         mapStaticCollidors = new ArrayList<>();
     
         // If there is a current map, iterate through its layers and tiles
         if (this.currentMap != null) {
             for (TileMapLayer l : this.currentMap.layers) {
-                for (Tile t : l.tiles) {
+                for (TileMapLayer.Cells cell = l.LoadedCells(); cell.Next(); ) {
+                    Tile t = cell.tile;
+
                     // If the tile is collidable, create a collision rectangle
                     if (t.collidable == true) {
-                        Vector2 tilePosition = currentMap.LocalToWorldVectorPositional(new Vector2(t.x, t.y));
+                        Vector2 tilePosition = currentMap.LocalToWorldVectorPositional(new Vector2(cell.x, cell.y));
                         Vector2 tileSize = currentMap.LocalToWorldVectorScalar(new Vector2(t.w, t.h));
                         
                         Rectangle collisionRect = new Rectangle();
@@ -180,6 +193,13 @@ public class Physics {
                 CheckCollision(rect, staticCollidor, o, null);
             }
         }
+
+        if (stepEvent != null) stepEvent.end();
+        if (stepEvent != null && stepEvent.shouldCommit()) {
+            stepEvent.bodyCount = this.physicsObjects.size();
+            stepEvent.staticColliderCount = this.mapStaticCollidors.size();
+            stepEvent.commit();
+        }
     }
 
     private ArrayList<Vector2> getLineRectangleIntersection(Vector2 p1, Vector2 p2, Rectangle rect) {
@@ -243,6 +263,8 @@ public class Physics {
     // Performs a raycast from a given position in a specific direction, checking for collisions with static objects and physics objects.
     // If a collision occurs, the method returns the closest hit point and the corresponding object hit.
     public RaycastResult RayCast(Vector2 position, Vector2 direction, String[] ignoreCollisionLayers) {
+        long rayStart = this.recordRays ? System.nanoTime() : 0;
+        int rectsTested = mapStaticCollidors.size();
         RaycastResult closestResult = new RaycastResult();
 
         // Check for collisions with static objects (e.g., tiles)
@@ -280,6 +302,7 @@ public class Physics {
             if (skip) continue;
 
             Rectangle or = o.GetRect();  // Get the rectangle representing the object
+            rectsTested++;
 
             // Get all intersections between the ray and the object's bounding rectangle
             ArrayList<Vector2> intersections = getLineRectangleIntersection(position, position.add(direction), or);
@@ -297,9 +320,17 @@ public class Physics {
             }
         }
 
+        if (this.recordRays) {
+            this.frameRayCount++;
+            this.frameRayRectsTested += rectsTested;
+            this.frameRayTime += System.nanoTime() - rayStart;
+            if (closestResult.position != null) this.frameRayHits++;
+        }
+
         // Return the closest result if a hit occurred
-        if (closestResult.position != null)
+        if (closestResult.position != null) {
             return closestResult;
+        }
 
         // If no hit occurred, return null
         return null;
@@ -314,6 +345,23 @@ public class Physics {
     // This is typically called at the start of each update to prepare for the next set of physics calculations.
     public void PreUpdate() {
         this.physicsObjects.clear();  // Clears the list of physics objects
+
+        // Report last frame's ray casts
+        if (this.frameRayCount > 0) {
+            RayCastBatchEvent rayEvent = new RayCastBatchEvent();
+            if (rayEvent.shouldCommit()) {
+                rayEvent.rayCount = this.frameRayCount;
+                rayEvent.hitCount = this.frameRayHits;
+                rayEvent.rectanglesTested = this.frameRayRectsTested;
+                rayEvent.rayTime = this.frameRayTime;
+                rayEvent.commit();
+            }
+        }
+        this.frameRayCount = 0;
+        this.frameRayHits = 0;
+        this.frameRayRectsTested = 0;
+        this.frameRayTime = 0;
+        this.recordRays = RayCastBatchEvent.TYPE.isEnabled();
     }
 
     public void Draw(Graphics2D g) {
@@ -0,0 +1,115 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/*
+ * Free list of one kind of game object that's made and dropped all the time: enemies, bullets and GFX.
+ * A combat heavy wave used to make hundreds of them a second (each GFX with its own Tile clone) and leave the
+ * dead ones to the GC.
+ *
+ * Obtain hands back a released object, or makes a new one when the free list is empty, after calling its Reset
+ * hook (GameObject.Reset), which puts it back the way its constructor left it. Objects draw their randomness in
+ * Reset, not their constructors, so making them ahead of time (Prewarm) doesn't change a seeded game. Whoever obtained an object
+ * releases it once nothing refers to it anymore. Releasing it again, or releasing an object this pool didn't
+ * make (one made with new), does nothing, so the counters only count the pool's own objects.
+ *
+ * Each map can prewarm the pools with a `.pools` properties file next to it (see ReadCounts), so the first wave
+ * doesn't make them either.
+ */
+class Pool<T extends GameObject> {
+    public final String name; // Shown with the counters
+    private final Supplier<T> factory; // Makes a new object when the free list is empty
+    private final ArrayList<T> free = new ArrayList<>();
+
+    private int inUse = 0; // Obtained and not released yet
+    private int highWater = 0; // Most objects in use at once
+
+    public Pool(String name, Supplier<T> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    // A reset released object, or a new one
+    public T Obtain() {
+        T o;
+        if (this.free.isEmpty()) {
+            o = this.factory.get();
+            o.owner = this;
+        } else {
+            o = this.free.remove(this.free.size() - 1);
+            o.pooled = false;
+        }
+        o.Reset();
+
+        this.inUse++;
+        this.highWater = Math.max(this.highWater, this.inUse);
+        return o;
+    }
+
+    // Gives o back, nothing may use it after this
+    public void Release(T o) {
+        if (o.pooled || o.owner != this) return;
+
+        o.pooled = true;
+        this.free.add(o);
+        this.inUse--;
+    }
+
+    // Makes objects until count of them exist
+    public void Prewarm(int count) {
+        while (this.free.size() + this.inUse < count) {
+            T o = this.factory.get();
+            o.owner = this;
+            o.pooled = true;
+            this.free.add(o);
+        }
+    }
+
+    public int InUse() {
+        return this.inUse;
+    }
+
+    public int Free() {
+        return this.free.size();
+    }
+
+    public int HighWater() {
+        return this.highWater;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + " " + this.inUse + " in use, " + this.free.size() + " free, peak " + this.highWater;
+    }
+
+    // Prewarm counts of a map's pools, from `<map path without extension>.pools`. Empty if it has none
+    public static Properties ReadCounts(String mapPath) {
+        Properties counts = new Properties();
+        if (mapPath == null) return counts;
+
+        int dot = mapPath.lastIndexOf('.');
+        File file = new File((dot > mapPath.lastIndexOf('/') ? mapPath.substring(0, dot) : mapPath) + ".pools");
+        if (!file.exists()) return counts;
+
+        try (Reader r = new BufferedReader(new FileReader(file))) {
+            counts.load(r);
+        } catch (IOException e) {
+            System.err.println("[ERROR]: Couldn't read pool sizes from `" + file + "`: " + e.getLocalizedMessage());
+        }
+        return counts;
+    }
+
+    // Prewarm count of key in counts, 0 if it's missing or not a number
+    public static int Count(Properties counts, String key) {
+        String value = counts.getProperty(key);
+        if (value == null) return 0;
+
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("[ERROR]: Pool size `" + key + "=" + value + "` isn't a number.");
+            return 0;
+        }
+    }
+}
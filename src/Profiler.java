@@ -0,0 +1,363 @@
+import java.awt.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Parts of a frame that get timed. FRAME covers the whole of Game.paint.
+enum FramePhase {
+    PHYSICS_PRE_UPDATE("Physics.PreUpdate"),
+    HUMANOIDS("Humanoids"),
+    ENEMIES("EnemyManager"),
+    BULLETS("BulletManager"),
+    STREAMING("TileMapStreamer"),
+    EDITOR_UPDATE("Editor.Update"),
+    PHYSICS_UPDATE("Physics.Update"),
+    MAP_DRAW("TileMap.Draw"),
+    EDITOR_DRAW("Editor.Draw"),
+    PANEL_DRAW("Panel.Draw"),
+    FRAME("Frame");
+
+    public final String label;
+
+    FramePhase(String label) {
+        this.label = label;
+    }
+}
+
+/*
+ * Every phase gets a ring buffer of its last HISTORY frame times, percentiles are taken over that window.
+ * Nothing is recorded while the profiler is disabled, Begin and End return straight away so the
+ * instrumentation left in the game loop costs a branch per phase.
+ *
+ * With allocation tracking on, each phase also records the bytes the game thread allocated inside it
+ * (ThreadMXBean.getCurrentThreadAllocatedBytes), which is reported per frame on the overlay and console.
+ */
+class Profiler {
+    static final int HISTORY = 240; // Frames kept per phase by default, 4 seconds at 60 FPS
+    private static int historySize = HISTORY; // Frames kept per phase
+
+    public static boolean enabled = false; // Record and draw the overlay, toggled with F4
+    public static boolean trackAllocations = Boolean.getBoolean("wendigo.trackAllocations"); // Toggled with F6
+
+    private static final int NUM_PHASES = FramePhase.values().length;
+
+    private static long[] phaseStart = new long[NUM_PHASES]; // System.nanoTime() of the open Begin
+    private static long[] phaseTime = new long[NUM_PHASES]; // Time spent in each phase this frame, a phase can run more than once
+    private static long[][] history = new long[NUM_PHASES][HISTORY]; // Ring buffers of phase times, nanoseconds
+    private static int head = 0; // Next slot to write in the ring buffers
+    private static int count = 0; // Number of valid frames in the ring buffers
+    private static boolean toggleRequested = false; // Applied between frames so no phase is left half timed
+    private static boolean allocationToggleRequested = false;
+
+    private static com.sun.management.ThreadMXBean threadBean = null; // Set up the first time allocations are tracked
+    private static long[] phaseStartBytes = new long[NUM_PHASES]; // Allocated bytes counter at the open Begin
+    private static long[] phaseBytes = new long[NUM_PHASES]; // Bytes allocated in each phase this frame
+    private static long[][] bytesHistory = new long[NUM_PHASES][HISTORY]; // Ring buffers of allocated bytes
+
+    private static long[] sortScratch = new long[HISTORY]; // Reused for percentiles so drawing doesn't allocate per phase
+
+    // Starts timing a phase
+    public static void Begin(FramePhase phase) {
+        if (!Profiler.enabled && !Profiler.trackAllocations) return;
+
+        int i = phase.ordinal();
+        if (Profiler.trackAllocations) {
+            Profiler.phaseStartBytes[i] = Profiler.AllocatedBytes();
+        }
+        Profiler.phaseStart[i] = System.nanoTime();
+    }
+
+    // Stops timing a phase, adding to this frame's time for it
+    public static void End(FramePhase phase) {
+        if (!Profiler.enabled && !Profiler.trackAllocations) return;
+
+        int i = phase.ordinal();
+        Profiler.phaseTime[i] += System.nanoTime() - Profiler.phaseStart[i];
+        if (Profiler.trackAllocations) {
+            Profiler.phaseBytes[i] += Profiler.AllocatedBytes() - Profiler.phaseStartBytes[i];
+        }
+    }
+
+    // Pushes this frame's phase times into the ring buffers
+    public static void EndFrame() {
+        if (Profiler.toggleRequested || Profiler.allocationToggleRequested) {
+            if (Profiler.toggleRequested) {
+                Profiler.enabled = !Profiler.enabled;
+            }
+            if (Profiler.allocationToggleRequested) {
+                Profiler.SetTrackAllocations(!Profiler.trackAllocations);
+            }
+            Profiler.toggleRequested = false;
+            Profiler.allocationToggleRequested = false;
+
+            Profiler.Reset();
+            return;
+        }
+
+        if (!Profiler.enabled && !Profiler.trackAllocations) return;
+
+        for (int i = 0; i < NUM_PHASES; i++) {
+            Profiler.history[i][Profiler.head] = Profiler.phaseTime[i];
+            Profiler.bytesHistory[i][Profiler.head] = Profiler.phaseBytes[i];
+            Profiler.phaseTime[i] = 0;
+            Profiler.phaseBytes[i] = 0;
+        }
+
+        Profiler.head = (Profiler.head + 1) % Profiler.historySize;
+        Profiler.count = Math.min(Profiler.count + 1, Profiler.historySize);
+
+        // Print an allocation report every time the window fills up
+        if (Profiler.trackAllocations && Profiler.head == 0) {
+            Profiler.PrintAllocationReport();
+        }
+    }
+
+    // Throws away every sample so old ones don't skew the percentiles
+    public static void Reset() {
+        Arrays.fill(Profiler.phaseTime, 0);
+        Arrays.fill(Profiler.phaseBytes, 0);
+        Profiler.head = 0;
+        Profiler.count = 0;
+    }
+
+    // Changes how many frames are kept per phase, throwing away what was recorded. Headless runs raise it
+    // so their percentiles cover the whole run.
+    public static void SetHistorySize(int frames) {
+        Profiler.historySize = Math.max(1, frames);
+        Profiler.history = new long[NUM_PHASES][Profiler.historySize];
+        Profiler.bytesHistory = new long[NUM_PHASES][Profiler.historySize];
+        Profiler.sortScratch = new long[Profiler.historySize];
+        Profiler.Reset();
+    }
+
+    // Turns recording and the overlay on or off at the end of this frame
+    public static void Toggle() {
+        Profiler.toggleRequested = true;
+    }
+
+    // Turns allocation tracking on or off at the end of this frame
+    public static void ToggleAllocations() {
+        Profiler.allocationToggleRequested = true;
+    }
+
+    // Turns allocation tracking on or off right away, for use outside of the game loop (benchmarks).
+    // Returns whether tracking is on, the JVM might not support it.
+    public static boolean SetTrackAllocations(boolean track) {
+        if (track && Profiler.threadBean == null) {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+                if (bean.isThreadAllocatedMemorySupported()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                    Profiler.threadBean = bean;
+                }
+            }
+
+            if (Profiler.threadBean == null) {
+                new Message("Allocation tracking isn't supported by this JVM.", true);
+                track = false;
+            }
+        }
+
+        Profiler.trackAllocations = track;
+        new Message("Allocation tracking " + (track ? "enabled, press F6 to disable." : "disabled."), 5.0);
+        return track;
+    }
+
+    // Bytes allocated by the current thread since it started
+    private static long AllocatedBytes() {
+        if (Profiler.threadBean == null) {
+            Profiler.SetTrackAllocations(true); // Turned on through the system property
+            if (Profiler.threadBean == null) return 0;
+        }
+        return Profiler.threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    // Average bytes allocated per frame in a phase over the recorded window
+    public static double AverageBytes(FramePhase phase) {
+        if (Profiler.count == 0) return 0.0;
+
+        long total = 0;
+        for (int age = 0; age < Profiler.count; age++) {
+            total += Profiler.bytesHistory[phase.ordinal()][Profiler.Slot(age)];
+        }
+        return total / (double)Profiler.count;
+    }
+
+    // Prints every phase's average allocation per frame to the console
+    public static void PrintAllocationReport() {
+        StringBuilder sb = new StringBuilder("[ALLOC]: KB/frame over " + Profiler.count + " frames:");
+        for (FramePhase phase : FramePhase.values()) {
+            sb.append(String.format(Locale.ROOT, " %s=%.1f", phase.label, Profiler.AverageBytes(phase) / 1024.0));
+        }
+        System.out.println(sb);
+    }
+
+    // p-th percentile (0-100) of a phase's recorded times, in milliseconds
+    public static double Percentile(FramePhase phase, double p) {
+        if (Profiler.count == 0) return 0.0;
+
+        System.arraycopy(Profiler.history[phase.ordinal()], 0, Profiler.sortScratch, 0, Profiler.count);
+        Arrays.sort(Profiler.sortScratch, 0, Profiler.count);
+
+        int index = (int)Math.ceil(p / 100.0 * Profiler.count) - 1;
+        index = Math.max(0, Math.min(Profiler.count - 1, index));
+        return Profiler.sortScratch[index] / 1e6;
+    }
+
+    // Time of a phase `age` frames ago (0 = last recorded frame), in milliseconds
+    private static double Sample(FramePhase phase, int age) {
+        return Profiler.history[phase.ordinal()][Profiler.Slot(age)] / 1e6;
+    }
+
+    // Ring buffer slot of the frame `age` frames ago
+    private static int Slot(int age) {
+        return ((Profiler.head - 1 - age) % Profiler.historySize + Profiler.historySize) % Profiler.historySize;
+    }
+
+    // Writes every recorded frame, oldest first, one column per phase in milliseconds
+    public static void DumpCSV(String filePath) {
+        if (Profiler.count == 0) {
+            new Message("Profiler has no samples, enable it with F4 first.", true);
+            return;
+        }
+
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
+            bw.write("frame");
+            for (FramePhase phase : FramePhase.values()) {
+                bw.write("," + phase.label);
+            }
+            if (Profiler.trackAllocations) {
+                for (FramePhase phase : FramePhase.values()) {
+                    bw.write("," + phase.label + " bytes");
+                }
+            }
+            bw.write("\n");
+
+            for (int frame = 0; frame < Profiler.count; frame++) {
+                int age = Profiler.count - 1 - frame;
+                bw.write(Integer.toString(frame));
+                for (FramePhase phase : FramePhase.values()) {
+                    bw.write("," + String.format(Locale.ROOT, "%.4f", Profiler.Sample(phase, age)));
+                }
+                if (Profiler.trackAllocations) {
+                    for (FramePhase phase : FramePhase.values()) {
+                        bw.write("," + Profiler.bytesHistory[phase.ordinal()][Profiler.Slot(age)]);
+                    }
+                }
+                bw.write("\n");
+            }
+        } catch (IOException e) {
+            new Message("Failed to write profile to `" + filePath + "`\n" + e.getLocalizedMessage(), true);
+            return;
+        }
+
+        new Message("Wrote " + Profiler.count + " frames of profile to `" + filePath + "`.", 5.0);
+    }
+
+    // Draws the phase breakdown table and the frame time graph
+    public static void Draw(Graphics2D g) {
+        if (!Profiler.enabled) return;
+
+        if (TileMapEditor.ED_FONT != null) {
+            g.setFont(TileMapEditor.ED_FONT);
+        } else {
+            g.setFont(Game.font16);
+        }
+        FontMetrics fm = g.getFontMetrics();
+        int lineHeight = fm.getHeight();
+
+        int x = 10, y = 120;
+        int width = Profiler.trackAllocations ? 500 : 420;
+        int graphHeight = 80;
+        ArrayList<Pool<?>> pools = Profiler.GamePools();
+        int height = (NUM_PHASES + 2 + (pools.isEmpty() ? 0 : pools.size() + 1)) * lineHeight + graphHeight + 30;
+
+        g.setColor(new Color(0, 0, 0, 170));
+        g.fillRect(x, y, width, height);
+
+        // Table, one row per phase
+        int tx = x + 10, ty = y + lineHeight + 5;
+        g.setColor(Color.WHITE);
+        g.drawString("Phase (" + Profiler.count + " frames)", tx, ty);
+        g.drawString("p50", tx + 220, ty);
+        g.drawString("p95", tx + 285, ty);
+        g.drawString("p99", tx + 350, ty);
+        if (Profiler.trackAllocations) {
+            g.drawString("KB/f", tx + 415, ty);
+        }
+
+        for (FramePhase phase : FramePhase.values()) {
+            ty += lineHeight;
+            g.setColor(phase == FramePhase.FRAME ? Color.YELLOW : Color.LIGHT_GRAY);
+            g.drawString(phase.label, tx, ty);
+            g.drawString(String.format("%.2f", Profiler.Percentile(phase, 50)), tx + 220, ty);
+            g.drawString(String.format("%.2f", Profiler.Percentile(phase, 95)), tx + 285, ty);
+            g.drawString(String.format("%.2f", Profiler.Percentile(phase, 99)), tx + 350, ty);
+            if (Profiler.trackAllocations) {
+                g.drawString(String.format("%.1f", Profiler.AverageBytes(phase) / 1024.0), tx + 415, ty);
+            }
+        }
+
+        // Frame time graph, newest frame on the right. Scaled so 33.3ms (30 FPS) is the top.
+        int gx = x + 10, gy = ty + 15;
+        int gw = width - 20;
+        double maxMs = 1000.0 / 30.0;
+
+        g.setColor(new Color(255, 255, 255, 40));
+        g.fillRect(gx, gy, gw, graphHeight);
+
+        double barWidth = gw / (double)Profiler.historySize;
+        for (int age = 0; age < Profiler.count; age++) {
+            double ms = Profiler.Sample(FramePhase.FRAME, age);
+            int barHeight = (int)Math.min(graphHeight, ms / maxMs * graphHeight);
+            int bx = gx + (int)((Profiler.historySize - 1 - age) * barWidth);
+
+            g.setColor(ms > 1000.0 / 60.0 ? new Color(196, 49, 78) : new Color(49, 196, 103));
+            g.fillRect(bx, gy + graphHeight - barHeight, Math.max(1, (int)Math.ceil(barWidth)), barHeight);
+        }
+
+        // 60 FPS line
+        int line60 = gy + graphHeight - (int)((1000.0 / 60.0) / maxMs * graphHeight);
+        g.setColor(Color.WHITE);
+        g.drawLine(gx, line60, gx + gw, line60);
+        g.drawString("16.7ms", gx + gw - fm.stringWidth("16.7ms"), line60 - 2);
+
+        g.setColor(Color.GRAY);
+        int hy = gy + graphHeight + lineHeight;
+        g.drawString("F4 hide, F5 dump CSV, F6 allocations", gx, hy);
+
+        // Pool counters, one row per pool
+        if (!pools.isEmpty()) {
+            hy += lineHeight;
+            g.setColor(Color.WHITE);
+            g.drawString("Pool", tx, hy);
+            g.drawString("used", tx + 220, hy);
+            g.drawString("free", tx + 285, hy);
+            g.drawString("peak", tx + 350, hy);
+
+            g.setColor(Color.LIGHT_GRAY);
+            for (Pool<?> pool : pools) {
+                hy += lineHeight;
+                g.drawString(pool.name, tx, hy);
+                g.drawString(Integer.toString(pool.InUse()), tx + 220, hy);
+                g.drawString(Integer.toString(pool.Free()), tx + 285, hy);
+                g.drawString(Integer.toString(pool.HighWater()), tx + 350, hy);
+            }
+        }
+    }
+
+    // Enemy, bullet and GFX pools of the running game, see Pool
+    static ArrayList<Pool<?>> GamePools() {
+        ArrayList<Pool<?>> pools = new ArrayList<>();
+        if (Game.em != null) pools.addAll(Game.em.pools.values());
+        if (Game.bm != null) pools.add(Game.bm.pool);
+        if (Game.gfxManager != null) {
+            for (Pool<GFX> pool : Game.gfxManager.Pools()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+}
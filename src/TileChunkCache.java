@@ -0,0 +1,314 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Pre-rasterized images of CHUNK_SIZE x CHUNK_SIZE tile areas of a map, used by the CHUNKED render backend.
+ *
+ * Only static tiles (1x1, not animated) are baked, everything else is still drawn tile by tile. A cell that has
+ * anything else to draw in it (a wide or animated tile) isn't baked at all, so its layers stay in order.
+ * Chunks are baked on a worker pool so a freshly loaded map or a big editor fill doesn't stall the frame:
+ * each frame the visible chunks are checked against a signature of their tiles, changed chunks are
+ * snapshotted and queued, and until a chunk's image is ready its tiles are drawn directly.
+ *
+ * Workers never touch the map, they only get the snapshot, and finished images are published
+ * atomically (newest job wins), so the game thread can keep editing tiles while chunks are baking.
+ *
+ * Ready images are drawn a tile row at a time (DrawRow), in runs between the cells TileMap.Draw draws tile by tile,
+ * so everything ends up in the same order as with the other backends: objects standing on a row cover the rows
+ * above them and are covered by the rows below, and a wide tile covers the baked cells to its right.
+ */
+class TileChunkCache {
+    static final int CHUNK_SIZE = 16; // Tiles per chunk side
+    static final int KEEP_MARGIN = 2; // Chunks further than this outside of the view drop their image
+
+    // Shared by every map, worker threads are daemons so they never keep the game alive
+    private static ExecutorService workers = null;
+
+    protected TileMap map; // Map we are caching
+
+    private Chunk[] chunks = new Chunk[0];
+    private int chunksX, chunksY; // Number of chunks in each direction
+    private boolean[] readyThisFrame = new boolean[0]; // Whether a chunk's image is drawn this frame
+    private ChunkImage[] drawnThisFrame = new ChunkImage[0]; // Image each chunk is drawn from this frame, by DrawRow
+    private int minX, maxX; // Visible range of chunk columns this frame
+    private int texelSize; // Sheet pixels per tile
+
+    // Finished chunk image along with what it was built from
+    static class ChunkImage {
+        final BufferedImage image;
+        final long signature;
+        final long sequence; // Order the job was submitted in, older results never replace newer ones
+        final BitSet unbaked; // Cells (y * CHUNK_SIZE + x in the chunk) left out, drawn tile by tile
+
+        ChunkImage(BufferedImage image, long signature, long sequence, BitSet unbaked) {
+            this.image = image;
+            this.signature = signature;
+            this.sequence = sequence;
+            this.unbaked = unbaked;
+        }
+    }
+
+    // Everything a worker needs to rasterize one tile, captured on the game thread
+    static class TileBlit {
+        int[] src;
+        int srcStride;
+        int sx, sy, size; // Source rectangle in the sheet
+        int dx, dy; // Destination in the chunk image
+        boolean alpha;
+    }
+
+    static class Chunk {
+        AtomicReference<ChunkImage> ready = new AtomicReference<>(); // Written by workers
+        long submittedSignature = 0; // Signature of the last job queued, game thread only
+        long submittedSequence = 0;
+        boolean submitted = false;
+    }
+
+    public TileChunkCache(TileMap map) {
+        this.map = map;
+    }
+
+    private static synchronized ExecutorService GetWorkers() {
+        if (workers == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1); // Leave a core for the game thread
+            workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "Chunk Rasterizer");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        }
+        return workers;
+    }
+
+    // Whether a tile can live in a baked chunk image
+    public static boolean IsBakeable(Tile t) {
+        return !t.IsNull() && t.textureSheet != null && !t.animated && t.w == 1 && t.h == 1;
+    }
+
+    // Whether this tile at cell (x, y) is drawn as part of a chunk image this frame
+    public boolean IsBaked(Tile t, int x, int y) {
+        if (!IsBakeable(t)) return false;
+
+        int index = (y / CHUNK_SIZE) * this.chunksX + (x / CHUNK_SIZE);
+        if (index < 0 || index >= this.readyThisFrame.length || !this.readyThisFrame[index]) return false;
+
+        return !this.drawnThisFrame[index].unbaked.get((y % CHUNK_SIZE) * CHUNK_SIZE + (x % CHUNK_SIZE));
+    }
+
+    // Whether everything TileMap.Draw draws in cell (x, y) is bakeable, so the whole cell can come from the image.
+    // Tall tiles don't count, they're drawn after the rows they cover
+    private boolean IsCellBakeable(int x, int y) {
+        int occluder = this.map.GetOccludingLayer(x, y);
+
+        for (int li = 0; li < this.map.layers.size(); li++) {
+            TileMapLayer l = this.map.layers.get(li);
+            if (l.width != this.map.width || l.height != this.map.height) continue;
+
+            Tile t = l.PeekTile(x, y);
+            if (t == null || t.IsNull() || IsBakeable(t) || t.h > 1) continue;
+            if (li < occluder && !t.IsCompoundTile()) continue; // Hidden, Draw skips it
+
+            return false;
+        }
+        return true;
+    }
+
+    // Queues visible chunks that changed and picks every chunk whose image is up to date to be drawn by DrawRow
+    public void Update(Graphics2D g) {
+        this.texelSize = this.map.ownedSheets.size() > 0 ? this.map.ownedSheets.get(0).tileSize : 16;
+
+        int chunksX = (this.map.width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int chunksY = (this.map.height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunksX != this.chunksX || chunksY != this.chunksY) {
+            this.chunksX = chunksX;
+            this.chunksY = chunksY;
+            this.chunks = new Chunk[chunksX * chunksY];
+            for (int i = 0; i < this.chunks.length; i++) {
+                this.chunks[i] = new Chunk();
+            }
+            this.readyThisFrame = new boolean[this.chunks.length];
+            this.drawnThisFrame = new ChunkImage[this.chunks.length];
+        }
+
+        // Visible range of chunks
+        Rectangle2D visible = this.map.GetVisibleWorldBounds(g);
+        double chunkWorldSize = CHUNK_SIZE * TileMap.RENDERSCALE;
+        int minX = (int)Math.floor((visible.getMinX() - this.map.renderOffset.x) / chunkWorldSize);
+        int minY = (int)Math.floor((visible.getMinY() - this.map.renderOffset.y) / chunkWorldSize);
+        int maxX = (int)Math.floor((visible.getMaxX() - this.map.renderOffset.x) / chunkWorldSize);
+        int maxY = (int)Math.floor((visible.getMaxY() - this.map.renderOffset.y) / chunkWorldSize);
+        this.minX = minX;
+        this.maxX = maxX;
+
+        for (int cy = 0; cy < this.chunksY; cy++) {
+            for (int cx = 0; cx < this.chunksX; cx++) {
+                int index = cy * this.chunksX + cx;
+                Chunk chunk = this.chunks[index];
+                this.readyThisFrame[index] = false;
+                this.drawnThisFrame[index] = null;
+
+                boolean isVisible = cx >= minX && cx <= maxX && cy >= minY && cy <= maxY;
+                if (!isVisible) {
+                    // Far away chunks give their memory back, they get rebuilt when they come into view again
+                    if (cx < minX - KEEP_MARGIN || cx > maxX + KEEP_MARGIN || cy < minY - KEEP_MARGIN || cy > maxY + KEEP_MARGIN) {
+                        chunk.ready.set(null);
+                        chunk.submitted = false;
+                    }
+                    continue;
+                }
+
+                long signature = this.Signature(cx, cy);
+
+                ChunkImage image = chunk.ready.get();
+                if (image != null && image.signature == signature) {
+                    this.drawnThisFrame[index] = image;
+                    this.readyThisFrame[index] = true;
+                } else if (!chunk.submitted || chunk.submittedSignature != signature) {
+                    this.Submit(chunk, cx, cy, signature);
+                }
+            }
+        }
+    }
+
+    // Draws the baked cells x0 <= x < x1 of tile row y from the chunks picked by Update. TileMap.Draw calls it with
+    // the cells left of each one it draws tile by tile, then with the rest of the row before the row's objects
+    public void DrawRow(Graphics2D g, int y, int x0, int x1) {
+        int cy = y / CHUNK_SIZE;
+        if (y < 0 || cy >= this.chunksY || x0 >= x1) return;
+
+        int row = y - cy * CHUNK_SIZE;
+        boolean hinted = false;
+        Object prevInterpolation = null;
+
+        for (int cx = Math.max(Math.max(0, this.minX), x0 / CHUNK_SIZE); cx <= this.maxX && cx < this.chunksX && cx * CHUNK_SIZE < x1; cx++) {
+            ChunkImage image = this.drawnThisFrame[cy * this.chunksX + cx];
+            if (image == null) continue;
+
+            if (!hinted) {
+                prevInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                hinted = true;
+            }
+
+            // Columns of this chunk in the run
+            int first = Math.max(x0 - cx * CHUNK_SIZE, 0);
+            int end = Math.min(x1 - cx * CHUNK_SIZE, image.image.getWidth() / this.texelSize);
+
+            Vector2 position = this.map.LocalToWorldVectorPositional(new Vector2(cx * CHUNK_SIZE + first, y));
+            Vector2 size = this.map.LocalToWorldVectorScalar(new Vector2(end - first, 1));
+
+            g.drawImage(image.image, (int)position.x, (int)position.y, (int)(position.x + size.x), (int)(position.y + size.y),
+                        first * this.texelSize, row * this.texelSize, end * this.texelSize, (row + 1) * this.texelSize, null);
+        }
+
+        if (prevInterpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, prevInterpolation);
+        }
+    }
+
+    // Hash of everything that affects a chunk's pixels, cheap enough to run for every visible chunk every frame
+    private long Signature(int cx, int cy) {
+        long h = 1125899906842597L;
+        h = 31 * h + this.texelSize;
+
+        int x0 = cx * CHUNK_SIZE, y0 = cy * CHUNK_SIZE;
+        int x1 = Math.min(x0 + CHUNK_SIZE, this.map.width), y1 = Math.min(y0 + CHUNK_SIZE, this.map.height);
+
+        for (TileMapLayer l : this.map.layers) {
+            if (l.width != this.map.width || l.height != this.map.height) continue;
+
+            h = 31 * h + System.identityHashCode(l);
+
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    Tile t = l.PeekTile(x, y);
+                    if (t == null || !IsBakeable(t)) { // Null for empty cells and while the chunk is streamed out
+                        // Wide and animated tiles keep their cell out of the image
+                        h = 31 * h + (t != null && !t.IsNull() && t.h == 1 ? 2 + t.w : 1);
+                        continue;
+                    }
+                    h = 31 * h + System.identityHashCode(t.textureSheet.GetRasterPixels());
+                    h = 31 * h + t.textureIndex;
+                }
+            }
+        }
+
+        return h;
+    }
+
+    // Snapshots the chunk's static tiles and queues it to be rasterized
+    private void Submit(Chunk chunk, int cx, int cy, long signature) {
+        int x0 = cx * CHUNK_SIZE, y0 = cy * CHUNK_SIZE;
+        int x1 = Math.min(x0 + CHUNK_SIZE, this.map.width), y1 = Math.min(y0 + CHUNK_SIZE, this.map.height);
+
+        final int imageWidth = (x1 - x0) * this.texelSize;
+        final int imageHeight = (y1 - y0) * this.texelSize;
+        final int texelSize = this.texelSize;
+
+        // Same order as TileMap.Draw: row by row, every layer of a cell before the next cell
+        ArrayList<TileBlit> blits = new ArrayList<>();
+        final BitSet unbaked = new BitSet(CHUNK_SIZE * CHUNK_SIZE);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                if (!this.IsCellBakeable(x, y)) {
+                    unbaked.set((y - y0) * CHUNK_SIZE + (x - x0));
+                    continue;
+                }
+
+                for (int li = 0; li < this.map.layers.size(); li++) {
+                    TileMapLayer l = this.map.layers.get(li);
+                    if (l.width != this.map.width || l.height != this.map.height) continue;
+
+                    Tile t = l.PeekTile(x, y);
+                    if (t == null || !IsBakeable(t)) continue;
+                    if (li < this.map.GetOccludingLayer(x, y)) continue; // Covered by an opaque tile above
+
+                    SpriteSheet sheet = t.textureSheet;
+                    TileBlit b = new TileBlit();
+                    b.src = sheet.GetRasterPixels();
+                    b.srcStride = sheet.GetCPUImage().getWidth();
+                    b.sx = t.GetSourceX();
+                    b.sy = t.GetSourceY();
+                    b.size = sheet.tileSize;
+                    b.dx = (x - x0) * texelSize;
+                    b.dy = (y - y0) * texelSize;
+                    b.alpha = sheet.hasAlpha;
+
+                    if (b.sx < 0 || b.sy < 0 || b.sx + b.size > b.srcStride || (b.sy + b.size) * b.srcStride > b.src.length) continue;
+
+                    blits.add(b);
+                }
+            }
+        }
+
+        chunk.submitted = true;
+        chunk.submittedSignature = signature;
+        final long sequence = ++chunk.submittedSequence;
+
+        GetWorkers().execute(() -> {
+            int[] pixels = new int[imageWidth * imageHeight];
+            for (TileBlit b : blits) {
+                if (b.size == texelSize) {
+                    TileRasterizer.Blit(b.src, b.srcStride, b.sx, b.sy, pixels, imageWidth, b.dx, b.dy, texelSize, texelSize, b.alpha);
+                } else {
+                    TileRasterizer.BlitScaled(b.src, b.srcStride, b.sx, b.sy, b.size, b.size, pixels, imageWidth,
+                                              b.dx, b.dy, texelSize, texelSize, b.dx, b.dy, b.dx + texelSize, b.dy + texelSize, b.alpha);
+                }
+            }
+
+            // setDataElements keeps the image managed so Java2D can cache it in VRAM after a few draws
+            BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+            image.getRaster().setDataElements(0, 0, imageWidth, imageHeight, pixels);
+
+            ChunkImage result = new ChunkImage(image, signature, sequence, unbaked);
+            chunk.ready.updateAndGet(prev -> (prev == null || prev.sequence < sequence) ? result : prev);
+        });
+    }
+}
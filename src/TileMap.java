@@ -2,10 +2,16 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 
 import javax.imageio.ImageIO;
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
 import java.awt.image.*;
 
 // Class for loading and managing SpriteSheet. See: https://en.wikipedia.org/wiki/Texture_atlas
@@ -21,17 +27,109 @@ class SpriteSheet {
     protected BufferedImage image; // The original image
     protected VolatileImage GPUImage; // Optimized image for GPU
 
+    protected BufferedImage flippedImage; // Horizontally mirrored copy of the image, created on first flipped draw
+    protected VolatileImage flippedGPUImage; // GPU copy of the mirrored image
+
     protected boolean hasAlpha = false; // Whether the image has transparency
 
+    protected boolean imageFromCache = false; // Image (and GPU image) belong to the AssetCache, see Release
+
     protected String imagePath; // Path to the image
 
-    ArrayList<Tile> tiles; // List of tiles in the sprite sheet
+    protected int[] rasterPixels; // ARGB pixels used by TileRasterizer, alpha forced opaque when the sheet has no alpha
+
+    protected boolean[] opaqueTiles; // Per texture index, whether every pixel of that tile is fully opaque. Built on first use
+
+    ArrayList<Tile> tiles; // List of tiles in the sprite sheet, null where a tile was deleted
+    protected BitSet deletedTiles = new BitSet(); // Tile indicies deleted or purged, see ClearTileAtIndex
+    protected int version = 0; // Goes up whenever the image or a tile changes, see TileMap.UpdateOcclusion
+    protected int reloads = 0; // Goes up when the image is reloaded or the tiles are reset, see AnimationRegistry
+    protected TileMapSnapshot.Sheet saved = null; // Last snapshot of the sheet, its tiles are reused while version is the same
+
+    // Loading state between StartLoading and FinishLoading
+    private Future<BufferedImage> pendingImage; // Image being decoded on a decoder thread
+    private boolean pendingHasAlpha;
+    protected BitSet pendingDeleted; // Deleted tile indicies read with the sheet
+    protected ArrayList<Tile> pendingTiles; // Modified tiles read with the sheet, placed at their x, y
+
+    private static ExecutorService decoders = null; // Shared by every map load, see GetDecoders
+
+    // Returns the screen's graphics configuration, or null when running headless (benchmarks, tools)
+    public static GraphicsConfiguration GetGraphicsConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) return null;
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                  .getDefaultScreenDevice()
+                                  .getDefaultConfiguration();
+    }
 
     // Returns the original CPU image
     public BufferedImage GetCPUImage() {
         return this.image;
     }
 
+    // Returns the sheet's pixels as a packed ARGB array (row stride = image width) for the software renderer
+    public int[] GetRasterPixels() {
+        if (this.rasterPixels == null) {
+            int width = this.image.getWidth();
+            int height = this.image.getHeight();
+
+            // Copy into our own INT_ARGB image so grabbing its DataBufferInt doesn't unmanage the original
+            BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D ag = argb.createGraphics();
+            ag.setComposite(AlphaComposite.Src);
+            ag.drawImage(this.image, 0, 0, null);
+            ag.dispose();
+
+            int[] pixels = ((DataBufferInt)argb.getRaster().getDataBuffer()).getData();
+
+            // Sheets without alpha are drawn opaque by the GPU path, match that
+            if (!this.hasAlpha) {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] |= 0xFF000000;
+                }
+            }
+
+            this.rasterPixels = pixels;
+        }
+
+        return this.rasterPixels;
+    }
+
+    // Whether every pixel of the tile at textureIndex is fully opaque, so it hides anything drawn under it
+    public boolean IsTileOpaque(int textureIndex) {
+        if (this.opaqueTiles == null) {
+            this.opaqueTiles = new boolean[this.numTilesX * this.numTilesY];
+
+            // Same alpha raster IsBlank reads, no alpha raster means every pixel is opaque
+            WritableRaster alphaRaster = this.image.getAlphaRaster();
+            int[] alphas = new int[this.tileSize * this.tileSize];
+
+            for (int i = 0; i < this.opaqueTiles.length; i++) {
+                if (alphaRaster == null) {
+                    this.opaqueTiles[i] = true;
+                    continue;
+                }
+
+                int startX = (i % this.numTilesX) * this.tileSize;
+                int startY = (i / this.numTilesX) * this.tileSize;
+                alphaRaster.getSamples(startX, startY, this.tileSize, this.tileSize, 0, alphas);
+
+                boolean opaque = true;
+                for (int alpha : alphas) {
+                    if (alpha < 255) {
+                        opaque = false;
+                        break;
+                    }
+                }
+                this.opaqueTiles[i] = opaque;
+            }
+        }
+
+        if (textureIndex < 0 || textureIndex >= this.opaqueTiles.length) return false;
+        return this.opaqueTiles[textureIndex];
+    }
+
     // Returns the image for rendering (either GPU or CPU)
     public Image GetImage(Graphics2D g) {
         if (this.GPUImage != null && this.VolatileImageNeedsCreation(g)) {
@@ -45,6 +143,50 @@ class SpriteSheet {
         return (Image)this.image; // Otherwise, return the original image
     }
 
+    // Returns the horizontally mirrored image for rendering, creating it on first use.
+    // A region (sx, sy, sw, sh) of the original image is found at (width - sx - sw, sy, sw, sh) in the mirrored one.
+    public Image GetFlippedImage(Graphics2D g) {
+        if (this.flippedImage == null) {
+            this.CreateFlippedImage();
+        }
+
+        if (this.flippedGPUImage != null && this.flippedGPUImage.contentsLost()) {
+            this.RenderFlippedGPUImage();
+        }
+
+        if (this.flippedGPUImage != null) {
+            return this.flippedGPUImage;
+        }
+
+        return (Image)this.flippedImage;
+    }
+
+    // Mirrors the whole sheet once so flipped tiles can be drawn with a plain (non-mirroring) blit
+    private void CreateFlippedImage() {
+        int width = this.image.getWidth();
+        int height = this.image.getHeight();
+
+        this.flippedImage = new BufferedImage(width, height, this.image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_ARGB : this.image.getType());
+        Graphics2D fg = this.flippedImage.createGraphics();
+        fg.setComposite(AlphaComposite.Src);
+        fg.drawImage(this.image, width, 0, 0, height, 0, 0, width, height, null); // Mirror horizontally
+        fg.dispose();
+
+        GraphicsConfiguration gc = SpriteSheet.GetGraphicsConfiguration();
+        if (this.GPUImage != null && gc != null) {
+            this.flippedGPUImage = gc.createCompatibleVolatileImage(width, height, this.hasAlpha ? Transparency.BITMASK : Transparency.OPAQUE);
+            this.RenderFlippedGPUImage();
+        }
+    }
+
+    // Renders the mirrored image to its VolatileImage
+    private void RenderFlippedGPUImage() {
+        Graphics2D vg = this.flippedGPUImage.createGraphics();
+        vg.setComposite(AlphaComposite.Src);
+        vg.drawImage(this.flippedImage, 0, 0, null);
+        vg.dispose();
+    }
+
     // Renders the image to the GPU-optimized VolatileImage
     public void RenderGPUImage() {
         Graphics2D vg = (Graphics2D) this.GPUImage.createGraphics();
@@ -61,16 +203,32 @@ class SpriteSheet {
     // Sets whether the sprite sheet has transparency (alpha)
     public void SetHasAlpha(boolean hasAlpha) {
         this.hasAlpha = hasAlpha;
+        this.rasterPixels = null; // Opaque forcing depends on alpha, rebuild on next use
+
         // Create a compatible VolatileImage with or without alpha
-        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
-                                                    .getDefaultScreenDevice()
-                                                    .getDefaultConfiguration();
-        this.GPUImage = gc.createCompatibleVolatileImage(this.image.getWidth(), this.image.getHeight(), hasAlpha ? Transparency.BITMASK : Transparency.OPAQUE);
-        this.RenderGPUImage(); // Render the image to the GPU image
+        GraphicsConfiguration gc = SpriteSheet.GetGraphicsConfiguration();
+        if (gc == null) return; // No GPU copy when headless
+
+        if (this.imageFromCache) {
+            // Shared with every sheet using the same image, only uploaded the first time
+            this.GPUImage = AssetCache.GetGPUImage(this.image, hasAlpha ? Transparency.BITMASK : Transparency.OPAQUE);
+        } else {
+            this.GPUImage = gc.createCompatibleVolatileImage(this.image.getWidth(), this.image.getHeight(), hasAlpha ? Transparency.BITMASK : Transparency.OPAQUE);
+            this.RenderGPUImage(); // Render the image to the GPU image
+        }
+
+        // Mirrored copies are recreated with the new transparency on the next flipped draw
+        this.flippedImage = null;
+        this.flippedGPUImage = null;
     }
 
     // Initializes the sprite sheet with image data, path, and tile size
     private void Init(BufferedImage image, String imagePath, int tileSize) {
+        this.Init(image, imagePath, tileSize, false);
+    }
+
+    // Initializes the sprite sheet, hasAlpha is passed in so the GPU image is only created and uploaded once
+    private void Init(BufferedImage image, String imagePath, int tileSize, boolean hasAlpha) {
         this.tileSize = tileSize;
         this.image = image;
         this.imagePath = imagePath;
@@ -82,12 +240,12 @@ class SpriteSheet {
         this.numTilesY = imageHeight / tileSize; // Calculate number of tiles in Y direction
 
         this.UpdateTilesSize(); // Update the size of tiles
-        this.SetHasAlpha(false); // Set alpha transparency to false
+        this.SetHasAlpha(hasAlpha); // Creates and renders the GPU image
 
         if (this.GPUImage == null) {
-            new Message("[ERROR]: Error creating volatile image (GPU Image) for sprite sheet: `" + this.name + "`. Expect performance degradations.", true);
+            if (!GraphicsEnvironment.isHeadless())
+                new Message("[ERROR]: Error creating volatile image (GPU Image) for sprite sheet: `" + this.name + "`. Expect performance degradations.", true);
         } else {
-            this.RenderGPUImage(); // Render the image to the GPU image
             this.GPUImage.setAccelerationPriority(1.0f); // Set high priority for GPU image acceleration
         }
 
@@ -97,73 +255,205 @@ class SpriteSheet {
         }
     }
 
-    // Loads sprite sheet data from a file
-    public void LoadFromFile(BufferedReader br, TileMap map) throws IOException {
-        String name = TileMap.readString(br, "name");
-        String imagePath = TileMap.readString(br, "image_path");
-        int tileSize = TileMap.readInt(br, "tile_size");
+    private static synchronized ExecutorService GetDecoders() {
+        if (decoders == null) {
+            // Decoding is mostly inflating PNG data, one thread per core. The loading thread is waiting on them anyway
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            decoders = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "Sheet Decoder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return decoders;
+    }
 
-        String deletedIndicies = TileMap.readString(br, "delted_tiles_indicies");
-        int numModifiedTiles = TileMap.readInt(br, "num_modified_tiles");
+    // Decodes the image at imagePath into a display compatible image. Touches no sheet, safe to call from any thread
+    public static BufferedImage DecodeImage(String imagePath) throws IOException {
+        SheetDecodeEvent decodeEvent = new SheetDecodeEvent();
+        decodeEvent.begin();
 
-        // Load and prepare the image
         File f = new File(imagePath);
         BufferedImage loadedImage = ImageIO.read(f);
-        GraphicsConfiguration gc = GraphicsEnvironment
-                                    .getLocalGraphicsEnvironment()
-                                    .getDefaultScreenDevice()
-                                    .getDefaultConfiguration();
+        if (loadedImage == null) {
+            throw new IOException("Unsupported or missing sprite sheet image: `" + imagePath + "`");
+        }
 
-        BufferedImage optimizedImage = gc.createCompatibleImage(
+        GraphicsConfiguration gc = SpriteSheet.GetGraphicsConfiguration();
+
+        BufferedImage optimizedImage = gc != null
+                                        ? gc.createCompatibleImage(
                                             loadedImage.getWidth(),
                                             loadedImage.getHeight(),
                                             Transparency.BITMASK
-                                        );
+                                        )
+                                        : new BufferedImage(loadedImage.getWidth(), loadedImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = optimizedImage.createGraphics();
         g2d.drawImage(loadedImage, 0, 0, null);
         g2d.dispose();
 
-        this.Init(optimizedImage, imagePath, tileSize);
-        this.name = name;
+        decodeEvent.end();
+        if (decodeEvent.shouldCommit()) {
+            decodeEvent.path = imagePath;
+            decodeEvent.bytesRead = f.length();
+            decodeEvent.width = loadedImage.getWidth();
+            decodeEvent.height = loadedImage.getHeight();
+            decodeEvent.commit();
+        }
+
+        return optimizedImage;
+    }
+
+    // Starts decoding the sheet's image on a decoder thread, FinishLoading waits for it and sets the sheet up.
+    // The map loaders start every sheet first and keep parsing while the images decode
+    protected void StartLoading(String imagePath, int tileSize, boolean hasAlpha) {
+        this.imagePath = imagePath;
+        this.tileSize = tileSize;
+        this.pendingHasAlpha = hasAlpha;
+        this.pendingImage = SpriteSheet.GetDecoders().submit(() -> AssetCache.AcquireSheetImage(imagePath)); // Only decodes on a cache miss
+    }
+
+    // Waits for the image started by StartLoading, then builds the tile grid, applies the deleted and modified
+    // tiles read with it and uploads the GPU image. Must be called on the game thread
+    protected void FinishLoading() throws IOException {
+        if (this.pendingImage == null) return; // Not loading, or already finished
+
+        BufferedImage decoded;
+        try {
+            decoded = this.pendingImage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException("Failed to decode `" + this.imagePath + "`: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding `" + this.imagePath + "`.", e);
+        } finally {
+            this.pendingImage = null;
+        }
+
+        this.imageFromCache = true;
+        this.Init(decoded, this.imagePath, this.tileSize, this.pendingHasAlpha);
 
         // Handle deleted tiles
-        if (deletedIndicies != null) {
-            String[] stringIndiciesRaw = deletedIndicies.split(",");
-            String[] stringIndicies = Arrays.copyOfRange(stringIndiciesRaw, 0, stringIndiciesRaw.length - 1);
+        if (this.pendingDeleted != null) {
+            for (int index = this.pendingDeleted.nextSetBit(0); index >= 0; index = this.pendingDeleted.nextSetBit(index + 1)) {
+                this.ClearTileAtIndex(index); // Clear the tile at index
+            }
+        }
 
-            for (String indexStr : stringIndicies) {
-                int index = -1;
-                try {
-                    index = Integer.parseInt(indexStr);
-                } catch (NumberFormatException e) {
-                    System.err.println("[ERROR]: Error in loading tiles, expected index got: " + indexStr);
-                    continue;
+        // Place modified tiles
+        if (this.pendingTiles != null) {
+            for (Tile t : this.pendingTiles) {
+                int index = t.y * this.numTilesX + t.x;
+                if (index < 0 || index >= this.tiles.size()) continue;
+                this.SetTileAtIndex(index, t);
+            }
+        }
+
+        this.pendingDeleted = null;
+        this.pendingTiles = null;
+    }
+
+    // Decodes the sheet's image again after it changed on disk, keeping its tiles. Only this sheet's CPU, raster and
+    // GPU copies are replaced, chunk images using it rebake since their signature has the raster pixels.
+    // Game thread only, see AssetWatcher
+    public void ReloadImage() throws IOException {
+        if (this.imagePath == null) return;
+
+        BufferedImage decoded = AssetCache.AcquireSheetImage(this.imagePath); // A new entry, the file's modification time changed
+        if (this.imageFromCache) {
+            AssetCache.Release(this.image);
+        }
+        this.image = decoded;
+        this.imageFromCache = true;
+
+        this.rasterPixels = null;
+        this.opaqueTiles = null;
+        this.SetHasAlpha(this.hasAlpha); // New GPU image, mirrored copies are made again on the next flipped draw
+        if (this.GPUImage != null) this.GPUImage.setAccelerationPriority(1.0f);
+
+        int numTilesX = this.image.getWidth() / this.tileSize;
+        int numTilesY = this.image.getHeight() / this.tileSize;
+        if (numTilesX != this.numTilesX || numTilesY != this.numTilesY) {
+            // Tile indicies moved, the deleted and modified tiles don't line up anymore
+            new Message("`" + this.name + "` changed size, its tiles were reset.", true);
+            this.numTilesX = numTilesX;
+            this.numTilesY = numTilesY;
+            this.UpdateTilesSize();
+        }
+
+        this.version++; // Which tiles are opaque may have changed
+        this.reloads++;
+    }
+
+    // Gives the image back to the AssetCache once the sheet is no longer used, waiting for a load in progress.
+    // The sheet can't be drawn afterwards
+    protected void Release() {
+        if (this.pendingImage != null) {
+            try {
+                this.image = this.pendingImage.get();
+                this.imageFromCache = true;
+            } catch (ExecutionException | InterruptedException e) {
+                // Nothing was acquired
+            }
+            this.pendingImage = null;
+        }
+
+        if (this.imageFromCache) {
+            AssetCache.Release(this.image);
+            this.imageFromCache = false;
+            this.GPUImage = null;
+        }
+    }
+
+    // Loads sprite sheet data from a file, the image is decoded in the background until FinishLoading is called
+    public void LoadFromFile(TileMapReader reader, TileMap map) throws IOException {
+        String name = reader.ReadString("name");
+        String imagePath = reader.ReadString("image_path");
+        Integer tileSize = reader.ReadInt("tile_size");
+
+        // Deleted tiles are a base64 bitset, maps saved before it have a comma list of every index
+        BitSet deletedTiles;
+        if (reader.NextKeyIs("delted_tiles_indicies")) {
+            deletedTiles = new BitSet();
+            int[] deletedIndicies = reader.ReadIntList("delted_tiles_indicies");
+            if (deletedIndicies != null) {
+                for (int index : deletedIndicies) {
+                    if (index >= 0) deletedTiles.set(index);
                 }
-                this.ClearTileAtIndex(index); // Clear the tile at index
             }
+        } else {
+            deletedTiles = reader.ReadBitSet("deleted_tiles");
+        }
+        Integer numModifiedTiles = reader.ReadInt("num_modified_tiles");
+
+        if (imagePath == null || tileSize == null || numModifiedTiles == null) {
+            reader.GoToEnd();
+            return; // Reader has the error
         }
 
-        // Load modified tiles
+        this.name = name;
+        this.pendingDeleted = deletedTiles;
+
+        // Load modified tiles, they're put in the grid once it exists
+        this.pendingTiles = new ArrayList<>(numModifiedTiles);
         for (int i = 0; i < numModifiedTiles; i++) {
             Tile t = new Tile(0, 0, null, -1);
-            t.LoadFromFile(br, map);
+            t.LoadFromFile(reader, map);
             t.textureSheet = this;
-            this.tiles.set(t.y * this.numTilesX + t.x, t);
+            this.pendingTiles.add(t);
         }
 
         // Set alpha transparency based on the file data
-        String hasAlpha = TileMap.readString(br, "has_alpha");
-        if (hasAlpha.equals("true")) {
-            this.SetHasAlpha(true);
-        } else {
-            this.SetHasAlpha(false);
-        }
+        Boolean hasAlpha = reader.ReadBoolean("has_alpha");
 
-        TileMap.GoToEnd(br); // Skip to the end of the file
+        reader.GoToEnd(); // Skip to the end of the file
+
+        this.StartLoading(imagePath, tileSize, Boolean.TRUE.equals(hasAlpha));
     }
 
-    // Saves sprite sheet data to a file
-    public void SaveToFile(FileWriter fw, TileMap map) throws IOException {
+    // Image path relative to the working directory, which is how maps store it
+    public String GetRelativeImagePath() {
         File resFolder = new File("./");
         File imageFile = new File(this.imagePath);
 
@@ -171,51 +461,16 @@ class SpriteSheet {
         URI path1 = resFolder.toURI();
         URI path2 = imageFile.toURI();
         URI relativePath = path1.relativize(path2);
-        String path = relativePath.getPath();
-
-        fw.write("__SPRITE SHEET__\n");
-        fw.write("name=" + this.name + "\n");
-        fw.write("image_path=" + path + "\n");
-        fw.write("tile_size=" + this.tileSize + "\n");
-
-        // Write deleted tiles
-        fw.write("delted_tiles_indicies=");
-        int modifiedTilesCount = 0;
-
-        // Count modified and deleted tiles
-        for (Tile t : this.tiles) {
-            if (!t.IsNull()) {
-                if (t.isModified()) {
-                    modifiedTilesCount++;
-                }
-            } else {
-                int index = t.y * this.numTilesX + t.x;
-                fw.write(index + ",");
-            }
-        }
-        fw.write("\n");
-
-        // Write the number of modified tiles
-        fw.write("num_modified_tiles=" + modifiedTilesCount + "\n");
-
-        // Save each modified tile
-        for (int y = 0; y < this.numTilesY; y++) {
-            for (int x = 0; x < this.numTilesX; x++) {
-                Tile t = this.tiles.get(y * this.numTilesX + x);
-                if (!t.IsNull() && t.isModified()) {
-                    t.SaveToFile(fw, map);
-                }
-            }
-        }
-
-        // Save alpha transparency setting
-        fw.write("has_alpha=" + this.hasAlpha + "\n");
-        fw.write("END\n");
+        return relativePath.getPath();
     }
 
     // Constructor: Loads sprite sheet data from file
-    public SpriteSheet(BufferedReader br, TileMap map) throws IOException {
-        this.LoadFromFile(br, map);
+    public SpriteSheet(TileMapReader reader, TileMap map) throws IOException {
+        this.LoadFromFile(reader, map);
+    }
+
+    // Constructor: Empty sheet, filled in by TileMapBinary through StartLoading/FinishLoading
+    protected SpriteSheet() {
     }
 
     // Constructor: Initializes sprite sheet with given image, file path, and tile size
@@ -225,30 +480,56 @@ class SpriteSheet {
 
     // Constructor: Loads sprite sheet from file path and initializes with tile size
     public SpriteSheet(String filePath, int tileSize) throws IOException {
+        SheetDecodeEvent decodeEvent = new SheetDecodeEvent();
+        decodeEvent.begin();
+
         File f = new File(filePath);
         BufferedImage loadedImage = ImageIO.read(f);
+
+        decodeEvent.end();
+        if (decodeEvent.shouldCommit() && loadedImage != null) {
+            decodeEvent.path = filePath;
+            decodeEvent.bytesRead = f.length();
+            decodeEvent.width = loadedImage.getWidth();
+            decodeEvent.height = loadedImage.getHeight();
+            decodeEvent.commit();
+        }
+
         this.imagePath = filePath;
         this.name = f.getName();
         Init(loadedImage, filePath, tileSize);
     }
 
-    // Clears a tile at the specified index
+    // Deletes the tile at the specified index, it's only kept as a bit in deletedTiles
     public void ClearTileAtIndex(int index) {
         if (index < 0 || index >= this.tiles.size()) return;
-        Tile t = this.tiles.get(index);
-        t.w = 1;
-        t.h = 1;
-        t.textureIndex = -1;
-        t.textureSheet = null;
+        this.tiles.set(index, null);
+        this.deletedTiles.set(index);
+        this.version++;
+    }
+
+    // Puts t in the grid at index, an empty tile deletes it instead
+    public void SetTileAtIndex(int index, Tile t) {
+        if (index < 0 || index >= this.tiles.size()) return;
+        if (t == null || t.IsNull()) {
+            this.ClearTileAtIndex(index);
+            return;
+        }
+
+        t.ownerSheet = this;
+        this.tiles.set(index, t);
+        this.deletedTiles.clear(index);
+        this.version++;
     }
 
-    // Purges blank tiles by replacing them with empty tiles
+    // Deletes every blank tile
     public void PurgeBlankTiles() {
         int removalCount = 0;
-        for (Tile t : this.tiles) {
+        for (int i = 0; i < this.tiles.size(); i++) {
+            Tile t = this.tiles.get(i);
             if (t != null && t.IsBlank()) {
                 removalCount++;
-                this.tiles.set(this.tiles.indexOf(t), new Tile(t.x, t.y, this, -1));
+                this.ClearTileAtIndex(i);
             }
         }
 
@@ -265,10 +546,16 @@ class SpriteSheet {
         this.numTilesY = imageHeight / tileSize;
 
         System.out.println("[LOG]: Reset blueprint tiles.");
+        this.opaqueTiles = null; // Tile grid changed
+        this.version++;
+        this.reloads++;
         this.tiles = new ArrayList<>();
+        this.deletedTiles.clear();
         for (int y = 0; y < this.numTilesY; y++) {
             for (int x = 0; x < this.numTilesX; x++) {
-                this.tiles.add(new Tile(x, y, this, y * this.numTilesX + x));
+                Tile t = new Tile(x, y, this, y * this.numTilesX + x);
+                t.ownerSheet = this;
+                this.tiles.add(t);
             }
         }
         this.tilesPurged = false;
@@ -288,8 +575,6 @@ class Tile {
 
     public double frictionCoefficient = 1.0; // Friction coefficient of the tile
 
-    protected ArrayList<GameObject> objectsOnTile = new ArrayList<>(); // Objects occupying the tile
-
     public ArrayList<String> tags = new ArrayList<>(); // Tags associated with the tile
 
     public boolean animated = false; // Whether the tile is animated
@@ -303,33 +588,49 @@ class Tile {
     private double animStart = Game.now(); // Timestamp for when the animation started
     protected int animPlayedCount = 0; // Counter for how many times the animation has played
 
+    // Where editing the tile shows up: the layer it's a cell's own tile of (see TileMapLayer.GetTile) or the sheet
+    // it's a tile of. Null for palette entries and tiles that are only copies, editing those changes nothing
+    protected TileMapLayer ownerLayer = null;
+    protected SpriteSheet ownerSheet = null;
+
+    static final ArrayList<String> NO_TAGS = new ArrayList<>(); // Tags of no tile, never added to
+
     // Resets the animation by restarting the timer
     public void ResetAnimation() {
         this.animStart = Game.now();
     }
 
     // Loads tile data from a file
-    public void LoadFromFile(BufferedReader br, TileMap map) throws IOException {
-        int x = TileMap.readInt(br, "x");
-        int y = TileMap.readInt(br, "y");
-        int w = TileMap.readInt(br, "w");
-        int h = TileMap.readInt(br, "h");
-        int textureIndex = TileMap.readInt(br, "texture_index");
-        int spriteSheetIndex = TileMap.readInt(br, "sprite_sheet_index");
+    public void LoadFromFile(TileMapReader reader, TileMap map) throws IOException {
+        Integer x = reader.ReadInt("x");
+        Integer y = reader.ReadInt("y");
+        Integer w = reader.ReadInt("w");
+        Integer h = reader.ReadInt("h");
+        Integer textureIndex = reader.ReadInt("texture_index");
+        Integer spriteSheetIndex = reader.ReadInt("sprite_sheet_index");
+
+        Double cx = reader.ReadNumber("cx");
+        Double cy = reader.ReadNumber("cy");
+        Double cw = reader.ReadNumber("cw");
+        Double ch = reader.ReadNumber("ch");
+
+        Boolean collidable = reader.ReadBoolean("collidable");
+
+        Boolean animated = reader.ReadBoolean("animated");
+        Integer animFPS = reader.ReadInt("anim_fps");
+        Integer animFramesX = reader.ReadInt("anim_frames_x");
+        Integer animFramesY = reader.ReadInt("anim_frames_y");
 
-        Double cx = TileMap.readNumber(br, "cx");
-        Double cy = TileMap.readNumber(br, "cy");
-        Double cw = TileMap.readNumber(br, "cw");
-        Double ch = TileMap.readNumber(br, "ch");
-
-        String collidable = TileMap.readString(br, "collidable");
+        // Parse and add tags
+        this.tags.clear();
+        reader.ReadStringList("tags", this.tags);
 
-        String animated = TileMap.readString(br, "animated");
-        Integer animFPS = TileMap.readInt(br, "anim_fps");
-        Integer animFramesX = TileMap.readInt(br, "anim_frames_x");
-        Integer animFramesY = TileMap.readInt(br, "anim_frames_y");
+        // Go to the end of the file
+        reader.GoToEnd();
 
-        String tags = TileMap.readString(br, "tags");
+        if (x == null || y == null || w == null || h == null || textureIndex == null || spriteSheetIndex == null) {
+            return; // Reader has the error
+        }
 
         // Set collider position and size if specified
         if (cx != null && cy != null && cw != null && ch != null) {
@@ -341,10 +642,10 @@ class Tile {
         }
 
         // Set collidable status
-        this.collidable = collidable != null && collidable.equals("true");
+        this.collidable = Boolean.TRUE.equals(collidable);
 
         // Handle animation settings
-        if (animated != null && animated.equals("true")) {
+        if (Boolean.TRUE.equals(animated)) {
             if (animFPS != null && animFramesX != null && animFramesY != null) {
                 this.animated = true;
                 this.animFPS = animFPS;
@@ -355,18 +656,6 @@ class Tile {
             this.animated = false;
         }
 
-        // Parse and add tags
-        this.tags.clear();
-        if (tags != null && tags.length() > 0) {
-            String[] tagsSplit = tags.split(",");
-            for (String tag : tagsSplit) {
-                this.tags.add(tag);
-            }
-        }
-
-        // Go to the end of the file
-        TileMap.GoToEnd(br);
-        
         // Set tile properties
         this.x = x;
         this.y = y;
@@ -387,6 +676,7 @@ class Tile {
 
     // Set the properties of this tile to match another tile's properties
     public void Set(Tile newTile) {
+        ArrayList<String> before = this.tags;
         this.w = newTile.w;
         this.h = newTile.h;
         this.textureIndex = newTile.textureIndex;
@@ -403,10 +693,11 @@ class Tile {
         this.animStart = newTile.animStart;
         this.animationControl = newTile.animationControl;
         this.tags = new ArrayList<>(newTile.tags); // Copy tags to avoid reference issues
+        this.Changed(before);
     }
 
-    // Save the tile's properties to a file
-    public void SaveToFile(FileWriter fw, TileMap map) throws IOException {
+    // Save the tile's properties to a file, sheetIndex is its sheet's index in the map's owned sheets
+    public void SaveToFile(Writer fw, int sheetIndex) throws IOException {
         fw.write("__TILE__\n");
         fw.write("x=" + this.x + "\n");
         fw.write("y=" + this.y + "\n");
@@ -414,16 +705,8 @@ class Tile {
         fw.write("h=" + this.h + "\n");
         fw.write("texture_index=" + this.textureIndex + "\n");
 
-        // Write sprite sheet index if it exists
-        if (this.textureSheet != null) {
-            int index = map.ownedSheets.indexOf(this.textureSheet);
-            if (index == -1) {
-                System.err.println("[ERRORRRRRRRR]: " + this);
-            }
-            fw.write("sprite_sheet_index=" + index + "\n");
-        } else {
-            fw.write("sprite_sheet_index=-1\n");
-        }
+        // Write sprite sheet index, -1 if there's none
+        fw.write("sprite_sheet_index=" + sheetIndex + "\n");
 
         // Write collider properties
         fw.write("cx=" + this.collidorPos.x + "\n");
@@ -448,6 +731,22 @@ class Tile {
         fw.write("END\n");
     }
 
+    // Tells the layer or sheet the tile belongs to, if any, that it was edited. before is what tags it had
+    private void Changed(ArrayList<String> before) {
+        if (this.ownerLayer != null) this.ownerLayer.CellChanged(this.x, this.y, before, this.tags);
+        if (this.ownerSheet != null) this.ownerSheet.version++;
+    }
+
+    // Tells the layer or sheet the tile belongs to that fields were set directly, for the editor's property panels
+    public void Edited() {
+        this.Changed(this.tags);
+    }
+
+    // Tags before an edit that changes them in place, for Changed. Only copied when a layer has to know
+    private ArrayList<String> TagsBefore() {
+        return this.ownerLayer != null && !this.tags.isEmpty() ? new ArrayList<>(this.tags) : NO_TAGS;
+    }
+
     // Clone the tile by creating a new tile with the same properties
     public Tile Clone() {
         Tile t = new Tile(this.x, this.y, this.textureSheet, this.textureIndex);
@@ -455,6 +754,14 @@ class Tile {
         return t;
     }
 
+    // Like Clone, but with colliders of its own, so editing this tile's colliders in place doesn't change the copy
+    public Tile Copy() {
+        Tile t = this.Clone();
+        t.collidorPos = new Vector2(this.collidorPos.x, this.collidorPos.y);
+        t.collidorSize = new Vector2(this.collidorSize.x, this.collidorSize.y);
+        return t;
+    }
+
     // Constructor initializes the tile with position, sprite sheet, and texture index
     public Tile(int x, int y, SpriteSheet sheet, int textureIndex) {
         this.Clear(); // Reset tile properties
@@ -464,8 +771,23 @@ class Tile {
         this.textureIndex = textureIndex;
     }
 
+    // Adds a tag, for editing a tile that's already on the map or a sheet
+    public void AddTag(String tag) {
+        ArrayList<String> before = this.TagsBefore();
+        this.tags.add(tag);
+        this.Changed(before);
+    }
+
+    // Removes a tag, see AddTag
+    public void RemoveTag(String tag) {
+        ArrayList<String> before = this.TagsBefore();
+        this.tags.remove(tag);
+        this.Changed(before);
+    }
+
     // Clear the tile's properties, resetting them to default values
     public void Clear() {
+        ArrayList<String> before = this.TagsBefore();
         this.textureSheet = null;
         this.textureIndex = -1;
         this.w = 1;
@@ -480,6 +802,7 @@ class Tile {
         this.animPlayedCount = 0;
         this.animStart = Game.now();
         this.tags.clear();
+        this.Changed(before);
     }
 
     // Check if the tile is a "null" tile (i.e., it has no texture)
@@ -492,6 +815,15 @@ class Tile {
         return this.w > 1 || this.h > 1;
     }
 
+    // Check if the tile fully hides whatever is under it. Only plain 1x1 tiles count,
+    // compound tiles are drawn from another row and animated ones change every frame.
+    public boolean IsOpaque() {
+        if (this.textureIndex == -1 || this.textureSheet == null) return false;
+        if (this.IsCompoundTile() || this.animated) return false;
+
+        return this.textureSheet.IsTileOpaque(this.textureIndex);
+    }
+
     // Calculate the index of the tile on its sprite sheet based on its coordinates
     public int GetSheetIndex() {
         return this.y * this.textureSheet.numTilesX + this.x;
@@ -534,36 +866,48 @@ class Tile {
         return true;
     }
 
+    // Update the current animation frame and played count from the elapsed time
+    protected void UpdateAnimation() {
+        if (this.animated) {
+            if (!this.animationControl) {
+                // Update current frame and frame count based on time and FPS
+                this.animCurrentFrame = (int)(((Game.now() - animStart) * this.animFPS) % (this.animNumFramesX * this.animNumFramesY));
+                this.animPlayedCount = ((int)((Game.now() - animStart) * this.animFPS) / (this.animNumFramesX * this.animNumFramesY)) % (this.animNumFramesX * this.animNumFramesY);
+            }
+        }
+    }
+
+    // X of the current frame's source rectangle in the sheet image, in pixels
+    protected int GetSourceX() {
+        int sx = this.textureIndex % this.textureSheet.numTilesX;
+        int frameOffsetX = (this.animCurrentFrame % this.animNumFramesX); // Adjust frame offsets for animation
+
+        return (sx + (frameOffsetX * this.w)) * this.textureSheet.tileSize;
+    }
+
+    // Y of the current frame's source rectangle in the sheet image, in pixels
+    protected int GetSourceY() {
+        int sy = this.textureIndex / this.textureSheet.numTilesX;
+        int frameOffsetY = 0; // Currently no vertical animation frame adjustment
+
+        return (sy + (frameOffsetY * this.h)) * this.textureSheet.tileSize;
+    }
+
     // Draw the tile on the graphics context, with optional flipping and transparency
     public void Draw(Graphics2D g, double x, double y, double w, double h, boolean flip, double transparency) {
         if (this.textureIndex == -1 || this.textureSheet == null) return; // Skip if tile is invalid
 
         int tileSize = this.textureSheet.tileSize;
 
-        // Calculate source rectangle for the tile texture
-        int sx = this.textureIndex % this.textureSheet.numTilesX;
-        int sy = this.textureIndex / this.textureSheet.numTilesX;
-
         int sw = (tileSize * this.w); // Tile width
         int sh = (tileSize * this.h); // Tile height
 
-        int frameOffsetX = 0, frameOffsetY = 0;
-
         // Handle tile animation if enabled
-        if (this.animated) {
-            if (!this.animationControl) {
-                // Update current frame and frame count based on time and FPS
-                this.animCurrentFrame = (int)(((Game.now() - animStart) * this.animFPS) % (this.animNumFramesX * this.animNumFramesY));
-                this.animPlayedCount = ((int)((Game.now() - animStart) * this.animFPS) / (this.animNumFramesX * this.animNumFramesY)) % (this.animNumFramesX * this.animNumFramesY);
-            }
-        }
+        this.UpdateAnimation();
 
-        // Adjust frame offsets for animation
-        frameOffsetX = (this.animCurrentFrame % this.animNumFramesX);
-        frameOffsetY = 0; // Currently no vertical animation frame adjustment
-
-        sx = (sx + (frameOffsetX * this.w)) * tileSize;
-        sy = (sy + (frameOffsetY * this.h)) * tileSize;
+        // Calculate source rectangle for the tile texture
+        int sx = this.GetSourceX();
+        int sy = this.GetSourceY();
 
         // Set transparency if needed
         Composite prevComp = g.getComposite();
@@ -573,10 +917,12 @@ class Tile {
 
         // Draw the image (flip horizontally if necessary)
         if (flip) {
+            // Use the pre-mirrored sheet so the blit isn't reversed, which keeps it on the fast path
+            int fsx = this.textureSheet.GetCPUImage().getWidth() - (sx + sw);
             g.drawImage(
-                this.textureSheet.GetImage(g),
+                this.textureSheet.GetFlippedImage(g),
                 (int) x, (int) y, (int) (x + w), (int) (y + h),  // Destination rectangle
-                sx + sw, sy, sx, sy + sh,                        // Source rectangle (flipped horizontally)
+                fsx, sy, fsx + sw, sy + sh,                      // Source rectangle in the mirrored sheet
                 GG.COLOR_OPAQUE, null      // Transparency and observer
             );
         } else {
@@ -610,139 +956,517 @@ class Tile {
 }
 
 class TileMapLayer {
+    static final int CHUNK_SIZE = 32; // Tiles per chunk side
+    static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    // Chunks with fewer tiles than this are packed, the rest are dense (see cells)
+    static final int PACKED_LIMIT = CHUNK_CELLS / 4;
+
+    // A packed entry is cell << PALETTE_BITS | palette index, so entries sort by cell. Chunks using palette
+    // indicies too big for that are dense
+    private static final int PALETTE_BITS = 21;
+    private static final int PALETTE_MASK = (1 << PALETTE_BITS) - 1;
+
+    static final int[] EMPTY_CELLS = new int[0];
+    static final Tile[] NO_TILES = new Tile[0];
+
     public String name = "Layer 1";
     protected TileMap parentMap;
+    protected TilePalette palette; // Shared by every layer of the map
     protected int width, height;
-    protected ArrayList<Tile> tiles;
+
+    // Cells are kept in CHUNK_SIZE x CHUNK_SIZE chunks as indicies into the palette (0 = empty), in one of two
+    // forms picked by how full the chunk is:
+    //  - dense: CHUNK_CELLS long, an index for every cell row by row
+    //  - packed: shorter, only the cells that aren't empty, sorted by cell and found by binary search. The chunk
+    //    turns dense once PACKED_LIMIT is reached
+    // Decorative layers are mostly empty chunks and packed ones, so most empty cells cost nothing.
+    // A streamed layer only has the chunks near the camera and entities, the others are null (see TileMapStreamer)
+    protected int chunksX, chunksY;
+    protected int[][] cells;
+
+    // Tiles GetTile handed out, per chunk and sorted by cell. They take the place of the cell's palette entry
+    // from then on, so callers can edit them
+    protected Tile[][] tiles;
+    protected boolean streamed = false;
+
+    // Chunks a TileMapSnapshot still shares with the layer, SetCell copies one before changing it in place
+    private final BitSet shared = new BitSet();
+
+    // Goes up whenever what's in a loaded cell changes (also when chunks are streamed in or out), see
+    // TileTagIndex and TileMap.UpdateOcclusion
+    protected int version = 0;
 
     public boolean isGroundLayer = false;
     public boolean visualizeCollidors = false;
 
     // Load layer data from a file, including tile information and properties
-    public void LoadFromFile(BufferedReader br, TileMap map) throws IOException {
-        String name = TileMap.readString(br, "name");
-        int width = TileMap.readInt(br, "width");
-        int height = TileMap.readInt(br, "height");
+    public void LoadFromFile(TileMapReader reader, TileMap map) throws IOException {
+        String name = reader.ReadString("name");
+        Integer width = reader.ReadInt("width");
+        Integer height = reader.ReadInt("height");
 
-        int num_tiles = TileMap.readInt(br, "num_tiles");
+        Integer num_tiles = reader.ReadInt("num_tiles");
 
-        this.width = width;
-        this.height = height;
-        this.name = name;
+        if (width == null || height == null || num_tiles == null) {
+            reader.GoToEnd();
+            return; // Reader has the error
+        }
 
-        // Initialize all tiles as blank
-        this.tiles.clear();
-        for (int y = 0; y < width; y++) {
-            for (int x = 0; x < height; x++) {
-                this.tiles.add(new Tile(x, y, null, -1)); // Add all blank tiles
-            }
+        // Initialize all tiles as blank, the constructor already did if the size matches
+        if (width != this.width || height != this.height) {
+            this.Allocate(width, height);
         }
+        this.name = name;
 
-        // Load non-blank tiles from file
+        // Load non-blank tiles from file, one scratch tile is enough since SetTile copies it
+        Tile t = new Tile(0, 0, null, -1);
         for (int i = 0; i < num_tiles; i++) {
-            Tile t = new Tile(0, 0, null, -1);
-            t.LoadFromFile(br, map);
+            t.Clear();
+            t.LoadFromFile(reader, map);
             this.SetTile(t.x, t.y, t);
         }
 
         // Set ground layer flag if present in the file
-        String isGroundLayer = TileMap.readString(br, "is_ground_layer");
-        if (isGroundLayer != null && isGroundLayer.equals("true")) {
-            this.isGroundLayer = true;
-        } else {
-            this.isGroundLayer = false;
+        Boolean isGroundLayer = reader.ReadBoolean("is_ground_layer");
+        this.isGroundLayer = Boolean.TRUE.equals(isGroundLayer);
+
+        reader.GoToEnd(); // Skip any remaining data in the file
+    }
+
+    // Constructor to initialize the layer with dimensions and blank tiles
+    public TileMapLayer(TileMap map, int width, int height) {
+        this.parentMap = map;
+        this.palette = map.palette;
+        this.Allocate(width, height);
+    }
+
+    // Constructor: Streamed layer, chunks are put in by the map's TileMapStreamer as they're needed
+    public TileMapLayer(TileMap map, int width, int height, boolean streamed) {
+        this.parentMap = map;
+        this.palette = map.palette;
+        this.streamed = streamed;
+
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.cells = new int[this.chunksX * this.chunksY][];
+        this.tiles = new Tile[this.chunksX * this.chunksY][];
+        Arrays.fill(this.tiles, NO_TILES);
+
+        if (!streamed) {
+            Arrays.fill(this.cells, EMPTY_CELLS);
         }
+    }
+
+    // Resizes the layer to width x height blank tiles
+    private void Allocate(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.streamed = false;
+        this.chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.cells = new int[this.chunksX * this.chunksY][];
+        this.tiles = new Tile[this.chunksX * this.chunksY][];
+        Arrays.fill(this.cells, EMPTY_CELLS);
+        Arrays.fill(this.tiles, NO_TILES);
+        this.shared.clear();
+        this.version++;
+    }
 
-        TileMap.GoToEnd(br); // Skip any remaining data in the file
+    // The chunks as they are now, for TileMapSnapshot. They're shared with the snapshot instead of copied, until
+    // SetCell changes one of them
+    int[][] ShareCells() {
+        this.shared.set(0, this.cells.length);
+        return this.cells.clone();
     }
 
-    // Save the layer's data to a file, including tiles and properties
-    public void SaveToFile(FileWriter fw, TileMap map) throws IOException {
-        fw.write("__LAYER__\n");
-        fw.write("name=" + this.name + "\n");
-        fw.write("width=" + this.width + "\n");
-        fw.write("height=" + this.height + "\n");
+    // Chunk c for changing in place, copied first when a snapshot still has it
+    private int[] OwnCells(int c) {
+        if (this.shared.get(c)) {
+            this.cells[c] = this.cells[c].clone();
+            this.shared.clear(c);
+        }
+        return this.cells[c];
+    }
 
-        int numNonNullTiles = 0;
+    // Cell of a tile within its chunk
+    static int CellOf(Tile t) {
+        return (t.y % CHUNK_SIZE) * CHUNK_SIZE + (t.x % CHUNK_SIZE);
+    }
 
-        // Count non-null tiles
-        for (Tile t : this.tiles) {
-            if (!t.IsNull()) {
-                numNonNullTiles++;
+    // Index of the first of a chunk's tiles at or after cell
+    private static int LowerBound(Tile[] tiles, int cell) {
+        int lo = 0, hi = tiles.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (CellOf(tiles[mid]) < cell) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
+        return lo;
+    }
 
-        fw.write("num_tiles=" + numNonNullTiles + "\n");
-
-        // Save non-null tiles to file
-        for (Tile t : this.tiles) {
-            if (!t.IsNull()) {
-                t.SaveToFile(fw, map);
+    // Index of the first entry of a packed chunk at or after cell
+    private static int LowerBound(int[] packed, int cell) {
+        int lo = 0, hi = packed.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((packed[mid] >>> PALETTE_BITS) < cell) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
+        return lo;
+    }
 
-        fw.write("is_ground_layer=" + this.isGroundLayer + "\n");
+    // Palette index at cell of a chunk in either form
+    static int PaletteIndex(int[] chunk, int cell) {
+        if (chunk.length == CHUNK_CELLS) return chunk[cell];
 
-        fw.write("END\n");
+        int i = LowerBound(chunk, cell);
+        return i < chunk.length && (chunk[i] >>> PALETTE_BITS) == cell ? chunk[i] & PALETTE_MASK : 0;
     }
 
-    // Constructor to initialize the layer with dimensions and blank tiles
-    public TileMapLayer(TileMap map, int width, int height) {
-        this.parentMap = map;
-        this.tiles = new ArrayList<>();
+    // Chunk holding the palette indicies of indicies (laid out like a dense chunk), packed or dense by how many
+    // cells aren't empty
+    static int[] MakeCells(int[] indicies) {
+        int count = 0, max = 0;
+        for (int p : indicies) {
+            if (p == 0) continue;
+            count++;
+            max = Math.max(max, p);
+        }
 
-        this.width = width;
-        this.height = height;
+        if (count == 0) return EMPTY_CELLS;
+        if (count >= PACKED_LIMIT || max > PALETTE_MASK) return indicies.clone();
 
-        // Initialize all tiles as blank
-        for (int y = 0; y < width; y++) {
-            for (int x = 0; x < height; x++) {
-                this.tiles.add(new Tile(x, y, null, -1)); // Add all blank tiles
+        int[] packed = new int[count];
+        int n = 0;
+        for (int cell = 0; cell < indicies.length; cell++) {
+            if (indicies[cell] != 0) {
+                packed[n++] = (cell << PALETTE_BITS) | indicies[cell];
             }
         }
+        return packed;
     }
 
-    // Set a tile at specified coordinates by assigning its properties
-    public void SetTile(int x, int y, Tile t) {
-        int tileIndex = y * this.parentMap.width + x;
-
-        if (tileIndex < 0 || tileIndex > this.tiles.size()-1) return;
+    // Sets the palette index of a cell of chunk c, which has to be loaded. A tile of its own the cell had is
+    // dropped, so it shares the entry again
+    private void SetCell(int c, int cell, int p) {
+        Tile own = this.RemoveOwnTile(c, cell);
+        int was = PaletteIndex(this.cells[c], cell);
+        if (was == p && own == null) return; // Same tile it already had
 
-        try {
-            Tile current = this.tiles.get(tileIndex);
-            current.Set(t);  // Copy tile properties
-        } catch (IndexOutOfBoundsException e) {
-            new Message("Attempt to set a tile out of bounds. @(" + x + ", " + y +")", true);
-        }
+        if (was != p) this.WriteCell(c, cell, p);
+        this.CellChanged((c % this.chunksX) * CHUNK_SIZE + cell % CHUNK_SIZE, (c / this.chunksX) * CHUNK_SIZE + cell / CHUNK_SIZE,
+                own != null ? own.tags : TagsOf(this.palette.Get(was)), TagsOf(this.palette.Get(p)));
     }
 
-    // Set a tile at specified coordinates with a texture from the sprite sheet
-    public void SetTile(int x, int y, SpriteSheet sheet, int textureIndex) {
-        int tileIndex = y * this.parentMap.width + x;
+    // Takes the tile GetTile handed out for cell of chunk c out of the layer and returns it, null if it has none.
+    // Editing it doesn't change the layer anymore, like when its chunk is streamed out
+    private Tile RemoveOwnTile(int c, int cell) {
+        Tile[] own = this.tiles[c];
+        int i = LowerBound(own, cell);
+        if (i >= own.length || CellOf(own[i]) != cell) return null;
 
-        if (tileIndex < 0 || tileIndex > this.tiles.size()) return;
+        Tile t = own[i];
+        t.ownerLayer = null;
 
-        try {
-            Tile current = this.tiles.get(tileIndex);
-            current.Clear();  // Reset the tile before setting new texture
-            current.textureSheet = sheet;
-            current.textureIndex = textureIndex;
-        } catch (IndexOutOfBoundsException e) {
-            new Message("Attempt to set a tile out of bounds. @(" + x + ", " + y +")", true);
-        }
+        Tile[] shrunk = own.length == 1 ? NO_TILES : new Tile[own.length - 1];
+        System.arraycopy(own, 0, shrunk, 0, i);
+        System.arraycopy(own, i + 1, shrunk, i, own.length - i - 1);
+        this.tiles[c] = shrunk;
+        return t;
     }
 
-    // Retrieve the tile at specified coordinates
-    public Tile GetTile(int x, int y) {
-        int tileIndex = y * this.parentMap.width + x;
+    // Puts palette index p in cell of chunk c, packing or unpacking the chunk as needed
+    private void WriteCell(int c, int cell, int p) {
+        int[] chunk = this.cells[c];
+        if (chunk.length == CHUNK_CELLS) {
+            this.OwnCells(c)[cell] = p;
+            return;
+        }
 
-        if (tileIndex < 0 || tileIndex > this.tiles.size()) return null;
+        int i = LowerBound(chunk, cell);
+        boolean present = i < chunk.length && (chunk[i] >>> PALETTE_BITS) == cell;
 
-        try {
-            return this.tiles.get(tileIndex);  // Return the tile at the given position
-        } catch (IndexOutOfBoundsException e) {
-            new Message("[ERROR]: Attempt to get a tile out of bounds. @(" + x + ", " + y +")", true);
-            return null;
+        if (p == 0) {
+            if (present) {
+                int[] shrunk = new int[chunk.length - 1];
+                System.arraycopy(chunk, 0, shrunk, 0, i);
+                System.arraycopy(chunk, i + 1, shrunk, i, chunk.length - i - 1);
+                this.cells[c] = shrunk;
+            }
+        } else if (p > PALETTE_MASK || (!present && chunk.length + 1 >= PACKED_LIMIT)) {
+            int[] dense = new int[CHUNK_CELLS];
+            for (int entry : chunk) {
+                dense[entry >>> PALETTE_BITS] = entry & PALETTE_MASK;
+            }
+            dense[cell] = p;
+            this.cells[c] = dense;
+        } else if (present) {
+            this.OwnCells(c)[i] = (cell << PALETTE_BITS) | p;
+        } else {
+            int[] grown = new int[chunk.length + 1];
+            System.arraycopy(chunk, 0, grown, 0, i);
+            grown[i] = (cell << PALETTE_BITS) | p;
+            System.arraycopy(chunk, i, grown, i + 1, chunk.length - i);
+            this.cells[c] = grown;
+        }
+    }
+
+    // Bumps the version and tells the map's tag and occlusion indicies the cell at (x, y) changed, from tags before
+    // to tags after. Called once the cell has its new tile
+    void CellChanged(int x, int y, ArrayList<String> before, ArrayList<String> after) {
+        this.version++;
+        this.parentMap.tagIndex.CellChanged(this, x, y, before, after);
+        this.parentMap.OcclusionCellChanged(this, x, y);
+    }
+
+    // Bumps the version and tells the map's tag and occlusion indicies chunk c was streamed in (loaded), or is
+    // about to be streamed out
+    void ChunkChanged(int c, boolean loaded) {
+        this.version++;
+        this.parentMap.tagIndex.ChunkChanged(this, c, loaded);
+        this.parentMap.OcclusionChunkChanged(this, c, loaded);
+    }
+
+    private static ArrayList<String> TagsOf(Tile t) {
+        return t != null ? t.tags : Tile.NO_TAGS;
+    }
+
+    // The tile GetTile handed out for cell of chunk c, or null
+    private Tile OwnTile(int c, int cell) {
+        Tile[] own = this.tiles[c];
+        if (own.length == 0) return null;
+
+        int i = LowerBound(own, cell);
+        return i < own.length && CellOf(own[i]) == cell ? own[i] : null;
+    }
+
+    // What's at cell of loaded chunk c: its own tile, otherwise its palette entry (null when empty)
+    Tile CellTile(int c, int cell) {
+        Tile t = this.OwnTile(c, cell);
+        return t != null ? t : this.palette.Get(PaletteIndex(this.cells[c], cell));
+    }
+
+    // Chunk index of (x, y) after wrapping like GetTile, -1 when it's out of bounds or not loaded
+    private int ChunkOf(int x, int y) {
+        int index = y * this.width + x;
+        if (index < 0 || index >= this.width * this.height) return -1;
+        x = index % this.width;
+        y = index / this.width;
+
+        int c = (y / CHUNK_SIZE) * this.chunksX + (x / CHUNK_SIZE);
+        return this.cells[c] != null ? c : -1;
+    }
+
+    // Cell within its chunk of (x, y) after wrapping like GetTile, which has to be in bounds
+    private int CellAt(int x, int y) {
+        int index = y * this.width + x;
+        return ((index / this.width) % CHUNK_SIZE) * CHUNK_SIZE + ((index % this.width) % CHUNK_SIZE);
+    }
+
+    // Set a tile at specified coordinates by assigning its properties
+    public void SetTile(int x, int y, Tile t) {
+        int c = this.ChunkOf(x, y);
+        if (c < 0) return; // Out of bounds, or not streamed in
+
+        this.SetCell(c, this.CellAt(x, y), this.palette.IndexOf(t));
+    }
+
+    // Set a tile at specified coordinates with a texture from the sprite sheet
+    public void SetTile(int x, int y, SpriteSheet sheet, int textureIndex) {
+        this.SetTile(x, y, new Tile(x, y, sheet, textureIndex));
+    }
+
+    // Sets a cell to a palette entry, for loaders that already have the index
+    void SetPaletteIndex(int x, int y, int p) {
+        int c = this.ChunkOf(x, y);
+        if (c < 0) return;
+
+        this.SetCell(c, this.CellAt(x, y), p);
+    }
+
+    // Retrieve the tile at specified coordinates, null when it's out of bounds or its chunk isn't loaded. The
+    // cell gets a tile of its own the first time, made from its palette entry, which callers can edit until the
+    // cell is set again (SetTile puts it back on the palette). Code that only reads should use PeekTile or ReadTile.
+    // Like the flat tile list this used to be, an x just past either edge lands on the neighbouring row
+    public Tile GetTile(int x, int y) {
+        int c = this.ChunkOf(x, y);
+        if (c < 0) return null;
+
+        int index = y * this.width + x;
+        x = index % this.width;
+        y = index / this.width;
+
+        int cell = (y % CHUNK_SIZE) * CHUNK_SIZE + (x % CHUNK_SIZE);
+        Tile[] own = this.tiles[c];
+        int i = LowerBound(own, cell);
+        if (i < own.length && CellOf(own[i]) == cell) return own[i];  // Return the tile at the given position
+
+        // The same tile the cell already had, so this isn't a modification
+        Tile t = CopyAt(this.palette.Get(PaletteIndex(this.cells[c], cell)), x, y);
+
+        t.ownerLayer = this;
+
+        Tile[] grown = new Tile[own.length + 1];
+        System.arraycopy(own, 0, grown, 0, i);
+        grown[i] = t;
+        System.arraycopy(own, i, grown, i + 1, own.length - i);
+        this.tiles[c] = grown;
+        return t;
+    }
+
+    // Like GetTile, but without giving the cell a tile of its own: the palette entry is returned when it has none.
+    // For code that only reads, an entry is shared between cells so its x and y aren't the cell's.
+    // Null for empty cells and chunks that aren't loaded
+    public Tile PeekTile(int x, int y) {
+        int c = this.ChunkOf(x, y);
+        if (c < 0) return null;
+
+        return this.CellTile(c, this.CellAt(x, y));
+    }
+
+    // Like PeekTile, but a copy with the cell's x and y that isn't part of the layer, for code that keeps tiles it
+    // only reads (like spawn points). Null for empty cells and chunks that aren't loaded
+    public Tile ReadTile(int x, int y) {
+        int c = this.ChunkOf(x, y);
+        if (c < 0) return null;
+
+        int index = y * this.width + x;
+        Tile t = this.CellTile(c, this.CellAt(x, y));
+        return t != null ? CopyAt(t, index % this.width, index / this.width) : null;
+    }
+
+    // New tile at (x, y) with everything else from t (empty when t is null)
+    private static Tile CopyAt(Tile t, int x, int y) {
+        Tile copy = new Tile(x, y, null, -1);
+        if (t != null) {
+            copy.Set(t);
+            copy.collidorPos = new Vector2(t.collidorPos.x, t.collidorPos.y);
+            copy.collidorSize = new Vector2(t.collidorSize.x, t.collidorSize.y);
+        }
+        return copy;
+    }
+
+    // Whether (x, y) is in bounds and its chunk is loaded, so GetTile wouldn't return null
+    public boolean IsLoaded(int x, int y) {
+        return this.ChunkOf(x, y) >= 0;
+    }
+
+    // Tile at index y * width + x, see GetTile
+    public Tile GetTileAtIndex(int index) {
+        return this.GetTile(index % this.width, index / this.width);
+    }
+
+    // Streams the chunk of (x, y) in right away when it isn't loaded yet, for code that has to set it. Whether it's
+    // loaded now
+    public boolean LoadCell(int x, int y) {
+        if (!this.IsLoaded(x, y) && this.streamed && this.parentMap.streamer != null && x >= 0 && y >= 0 && x < this.width && y < this.height) {
+            this.parentMap.streamer.LoadNow(this, x / CHUNK_SIZE, y / CHUNK_SIZE);
+        }
+        return this.IsLoaded(x, y);
+    }
+
+    // What's in each cell of a chunk for saving, like PeekTile: the cell's own tile, otherwise its palette entry
+    // in palette (null when empty). Null for a chunk that has nothing
+    static Tile[] ChunkView(int[] chunk, Tile[] own, Tile[] palette) {
+        if (chunk == null || (chunk.length == 0 && own.length == 0)) return null;
+
+        Tile[] view = new Tile[CHUNK_CELLS];
+        if (chunk.length == CHUNK_CELLS) {
+            for (int cell = 0; cell < CHUNK_CELLS; cell++) {
+                view[cell] = palette[chunk[cell]];
+            }
+        } else {
+            for (int entry : chunk) {
+                view[entry >>> PALETTE_BITS] = palette[entry & PALETTE_MASK];
+            }
+        }
+        for (Tile t : own) {
+            view[CellOf(t)] = t;
+        }
+        return view;
+    }
+
+    // Walks every non-empty cell of the loaded chunks in layer order (row by row), like the tiles were before
+    // they were chunked. A row only looks at its chunks, so a mostly streamed out layer is cheap to walk
+    public Cells LoadedCells() {
+        return new Cells();
+    }
+
+    // Cursor for LoadedCells: while Next returns true, tile is the tile at (x, y). That's the cell's own tile if
+    // GetTile made one, otherwise its palette entry, which is only for reading (see PeekTile)
+    class Cells {
+        int x, y;
+        Tile tile;
+
+        private int row = 0, cx = -1;
+        private int[] chunk = EMPTY_CELLS;
+        private Tile[] own = NO_TILES;
+        private int position = 0, end = 0; // Range of chunk holding the current row, by cell when it's dense
+        private int ownPosition = 0, ownEnd = 0; // Same for own
+
+        public boolean Next() {
+            while (true) {
+                int cell = this.NextCell();
+                int ownCell = this.ownPosition < this.ownEnd ? CellOf(this.own[this.ownPosition]) : CHUNK_CELLS;
+
+                if (cell < CHUNK_CELLS || ownCell < CHUNK_CELLS) {
+                    if (ownCell <= cell) {
+                        this.tile = this.own[this.ownPosition++];
+                        if (ownCell == cell) this.position++; // Its own tile takes the entry's place
+                        cell = ownCell;
+                    } else {
+                        int entry = this.chunk[this.position++];
+                        this.tile = palette.Get(this.chunk.length == CHUNK_CELLS ? entry : entry & PALETTE_MASK);
+                    }
+
+                    this.x = this.cx * CHUNK_SIZE + cell % CHUNK_SIZE;
+                    this.y = this.row;
+                    return true;
+                }
+
+                // Next chunk along the row, or the start of the next row
+                this.cx++;
+                if (this.cx >= chunksX) {
+                    this.cx = 0;
+                    this.row++;
+                }
+                if (this.row >= height) return false;
+
+                int c = (this.row / CHUNK_SIZE) * chunksX + this.cx;
+                int rowStart = (this.row % CHUNK_SIZE) * CHUNK_SIZE;
+                this.chunk = cells[c] != null ? cells[c] : EMPTY_CELLS;
+                this.own = cells[c] != null ? tiles[c] : NO_TILES;
+
+                if (this.chunk.length == CHUNK_CELLS) {
+                    this.position = rowStart;
+                    this.end = rowStart + CHUNK_SIZE;
+                } else {
+                    this.position = LowerBound(this.chunk, rowStart);
+                    this.end = LowerBound(this.chunk, rowStart + CHUNK_SIZE);
+                }
+                this.ownPosition = LowerBound(this.own, rowStart);
+                this.ownEnd = LowerBound(this.own, rowStart + CHUNK_SIZE);
+            }
+        }
+
+        // Cell of the next non-empty palette index in the current row, CHUNK_CELLS when there are no more
+        private int NextCell() {
+            if (this.chunk.length == CHUNK_CELLS) {
+                while (this.position < this.end && this.chunk[this.position] == 0) {
+                    this.position++;
+                }
+                return this.position < this.end ? this.position : CHUNK_CELLS;
+            }
+            return this.position < this.end ? this.chunk[this.position] >>> PALETTE_BITS : CHUNK_CELLS;
         }
     }
 }
@@ -751,6 +1475,9 @@ class TileMap {
     // Static field defining the rendering scale factor
     static double RENDERSCALE = 50.0;
 
+    // Backend used to draw tiles, can be switched at runtime
+    public static RenderBackend renderBackend = RenderBackend.JAVA2D;
+
     // Offset for rendering
     public Vector2 renderOffset = new Vector2();
 
@@ -767,12 +1494,55 @@ class TileMap {
     // Layers of tiles in the map
     protected ArrayList<TileMapLayer> layers = new ArrayList<>();
 
+    // Tiles placed on the layers, which keep indicies into it
+    protected TilePalette palette = new TilePalette();
+
+    // Tiles by tag, for GetSheetTileByTag and GetMapTilesByTag
+    protected TileTagIndex tagIndex = new TileTagIndex(this);
+
+    // Humanoid animations by name, shared by every humanoid with it
+    protected AnimationRegistry animations = new AnimationRegistry(this);
+
+    // Journal of the file the map was loaded from or last saved to, see TileMapJournal
+    protected TileMapJournal journal = null;
+
+    // File the map was last loaded from, hot reloaded when it changes (see AssetWatcher). Null for a new map
+    protected String filePath = null;
+
+    // What the map held when it was last loaded from or saved to filePath, for Revert
+    protected TileMapSnapshot saved = null;
+
+    // Whether saves append edits to the map's journal instead of writing the whole map every time
+    public static boolean journalSaves = true;
+
     // Objects responsible for rendering within the map
     protected ArrayList<GameObject> renderingResponsiblity = new ArrayList<>();
 
     // High score associated with the map
     public int highScore = 0;
 
+    // Software tile renderer, used when renderBackend is SOFTWARE
+    protected TileRasterizer rasterizer = new TileRasterizer(this);
+
+    // Baked chunk images, used when renderBackend is CHUNKED
+    protected TileChunkCache chunkCache = new TileChunkCache(this);
+
+    // Streams the chunks of a large binary map in and out around the camera, null when the whole map is loaded
+    protected TileMapStreamer streamer = null;
+
+    // Maps larger than this many cells are streamed when loaded from a binary file
+    public static int streamingThreshold = 256 * 256;
+
+    // For each cell, the highest layer with an opaque tile there (-1 if none). Tiles of lower layers at that cell can't be seen.
+    // Kept per chunk like the layers' tiles, null for chunks without any. Kept up to date by the layers like the
+    // tag index (see OcclusionCellChanged and OcclusionChunkChanged), built again when that isn't enough
+    protected int[][] occludingLayer = new int[0][];
+    private ArrayList<TileMapLayer> occlusionLayers = null; // Layers the index was built from, null to build it again
+    private int[] occlusionVersions = new int[0]; // By layer, version the index is up to date with
+    private int occlusionWidth = -1, occlusionHeight = -1; // Map size the index was built at
+    private long occlusionSheetVersion = -1; // Sum of the sheet versions the index was built at
+    private ArrayList<SpriteSheet> occlusionSheets = new ArrayList<>(); // Which tiles are opaque depends on them
+
     // Constructor to initialize the map with given dimensions
     public TileMap(int width, int height) {
         this.width = width;
@@ -793,14 +1563,39 @@ class TileMap {
 
     // Delete a sprite sheet from all layers and remove it from owned sheets
     public void DeleteSheet(SpriteSheet sheet) {
+        if (this.streamer != null) {
+            this.streamer.ForgetSheet(sheet); // Chunks streamed in later mustn't use it either, looked up before the entries go
+        }
+        this.palette.ForgetSheet(sheet); // Empties the cells placed from it
+        for (TileMapLayer layer : this.layers) {
+            layer.version++;
+        }
+
+        // What's left are tiles cells got from GetTile
         for (TileMapLayer layer : this.layers) {
-            for (Tile t : layer.tiles) {
-                if (t.textureSheet == sheet) {
-                    t.Clear();  // Clear all tiles using the specified sprite sheet
+            for (TileMapLayer.Cells cell = layer.LoadedCells(); cell.Next(); ) {
+                if (cell.tile.textureSheet == sheet) {
+                    cell.tile.Clear();  // Clear all tiles using the specified sprite sheet
                 }
             }
         }
         this.ownedSheets.remove(sheet);  // Remove the sprite sheet from the owned sheets list
+        sheet.Release();
+    }
+
+    // Gives every owned sheet's image back to the AssetCache and closes the file a streamed map reads from, call
+    // when dropping the map
+    public void ReleaseSheets() {
+        TileMap.ReleaseSheets(this.ownedSheets);
+        if (this.streamer != null) {
+            this.streamer.Close();
+        }
+    }
+
+    private static void ReleaseSheets(ArrayList<SpriteSheet> sheets) {
+        for (SpriteSheet sheet : sheets) {
+            sheet.Release();
+        }
     }
 
     // Loads a sprite sheet from the specified file path and tile size
@@ -850,7 +1645,143 @@ class TileMap {
         return n;  // Return the converted local vector
     }
 
-    // Retrieves the tile at the given world position in the specified layer
+    // Returns the part of the map visible through g in world space: the device (screen or image) bounds,
+    // limited by the clip and by the map's own bounds.
+    public Rectangle2D GetVisibleWorldBounds(Graphics2D g) {
+        Rectangle2D visible;
+        try {
+            visible = g.getTransform().createInverse().createTransformedShape(g.getDeviceConfiguration().getBounds()).getBounds2D();
+        } catch (NoninvertibleTransformException e) {
+            visible = new Rectangle(0, 0, Game.WINDOW_WIDTH, Game.WINDOW_HEIGHT);
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            visible = visible.createIntersection(clip);
+        }
+
+        Vector2 mapPosition = this.LocalToWorldVectorPositional(new Vector2(0, 0));
+        Vector2 mapSize = this.LocalToWorldVectorScalar(new Vector2(this.width, this.height));
+        return visible.createIntersection(new Rectangle2D.Double(mapPosition.x, mapPosition.y, mapSize.x, mapSize.y));
+    }
+
+    // Builds the occlusion index again if a layer was added, removed or changed without telling it, a sheet changed
+    // or the map was resized. Only loaded chunks are indexed
+    public void UpdateOcclusion() {
+        long sheetVersion = 0;
+        for (SpriteSheet sheet : this.ownedSheets) {
+            sheetVersion += sheet.version;
+        }
+
+        boolean current = this.occlusionLayers != null && this.occlusionLayers.equals(this.layers)
+                && this.occlusionWidth == this.width && this.occlusionHeight == this.height
+                && this.occlusionSheetVersion == sheetVersion && this.occlusionSheets.equals(this.ownedSheets);
+        for (int l = 0; current && l < this.occlusionVersions.length; l++) {
+            current = this.occlusionVersions[l] == this.layers.get(l).version;
+        }
+        if (current) return;
+
+        int chunksX = (this.width + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+        int chunksY = (this.height + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+        this.occludingLayer = new int[chunksX * chunksY][];
+
+        for (int l = 0; l < this.layers.size(); l++) {
+            TileMapLayer layer = this.layers.get(l);
+            if (layer.width != this.width || layer.height != this.height) continue;
+
+            for (TileMapLayer.Cells cell = layer.LoadedCells(); cell.Next(); ) {
+                if (!cell.tile.IsOpaque()) continue;
+
+                // Later layers draw on top, so the last opaque one wins
+                this.Occluders(cell.x, cell.y)[(cell.y % TileMapLayer.CHUNK_SIZE) * TileMapLayer.CHUNK_SIZE + (cell.x % TileMapLayer.CHUNK_SIZE)] = l;
+            }
+        }
+
+        this.occlusionLayers = new ArrayList<>(this.layers);
+        this.occlusionVersions = new int[this.occlusionLayers.size()];
+        for (int l = 0; l < this.occlusionVersions.length; l++) {
+            this.occlusionVersions[l] = this.occlusionLayers.get(l).version;
+        }
+        this.occlusionWidth = this.width;
+        this.occlusionHeight = this.height;
+        this.occlusionSheetVersion = sheetVersion;
+        this.occlusionSheets = new ArrayList<>(this.ownedSheets);
+    }
+
+    // The cell at (x, y) of layer changed, called by the layer right after it bumped its version
+    void OcclusionCellChanged(TileMapLayer layer, int x, int y) {
+        if (!this.OcclusionSynced(layer)) return;
+
+        this.Occlude(x, y, null);
+    }
+
+    // Layer's chunk c was streamed in (loaded) or is about to be streamed out, called by the layer right after it
+    // bumped its version
+    void OcclusionChunkChanged(TileMapLayer layer, int c, boolean loaded) {
+        if (!this.OcclusionSynced(layer)) return;
+
+        // Same size as the map, so its chunks are the map's
+        int chunksX = (this.width + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+        for (int cell = 0; cell < TileMapLayer.CHUNK_CELLS; cell++) {
+            int x = (c % chunksX) * TileMapLayer.CHUNK_SIZE + cell % TileMapLayer.CHUNK_SIZE;
+            int y = (c / chunksX) * TileMapLayer.CHUNK_SIZE + cell / TileMapLayer.CHUNK_SIZE;
+            if (x >= this.width || y >= this.height) continue;
+
+            this.Occlude(x, y, loaded ? null : layer); // Still there when it's streamed out, leave it out
+        }
+    }
+
+    // Whether the occlusion index is up to date with every change of layer before the one it just made, which is
+    // counted as done, and layer is indexed. False when it'll be built again anyway or layer doesn't cover the map
+    private boolean OcclusionSynced(TileMapLayer layer) {
+        if (this.occlusionLayers == null || this.occlusionWidth != this.width || this.occlusionHeight != this.height) return false;
+
+        int l = this.occlusionLayers.indexOf(layer);
+        if (l < 0 || this.occlusionVersions[l] != layer.version - 1) return false;
+
+        this.occlusionVersions[l] = layer.version;
+        return layer.width == this.width && layer.height == this.height;
+    }
+
+    // Finds the highest layer with an opaque tile at (x, y) again, leaving skip out
+    private void Occlude(int x, int y, TileMapLayer skip) {
+        int occluder = -1;
+        for (int l = this.layers.size() - 1; l >= 0 && occluder < 0; l--) {
+            TileMapLayer layer = this.layers.get(l);
+            if (layer == skip || layer.width != this.width || layer.height != this.height) continue;
+
+            Tile t = layer.PeekTile(x, y);
+            if (t != null && t.IsOpaque()) occluder = l;
+        }
+
+        if (occluder < 0 && this.GetOccludingLayer(x, y) < 0) return; // Nothing to write, don't make the chunk's array
+        this.Occluders(x, y)[(y % TileMapLayer.CHUNK_SIZE) * TileMapLayer.CHUNK_SIZE + (x % TileMapLayer.CHUNK_SIZE)] = occluder;
+    }
+
+    // Occlusion index of the chunk (x, y) is in, made (with no occluders) if it has none yet
+    private int[] Occluders(int x, int y) {
+        int chunksX = (this.width + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+        int c = (y / TileMapLayer.CHUNK_SIZE) * chunksX + (x / TileMapLayer.CHUNK_SIZE);
+        if (this.occludingLayer[c] == null) {
+            this.occludingLayer[c] = new int[TileMapLayer.CHUNK_CELLS];
+            Arrays.fill(this.occludingLayer[c], -1);
+        }
+        return this.occludingLayer[c];
+    }
+
+    // Highest layer with an opaque tile at (x, y) as of the last UpdateOcclusion, -1 if none or not loaded
+    public int GetOccludingLayer(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) return -1;
+
+        int chunksX = (this.width + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+        int c = (y / TileMapLayer.CHUNK_SIZE) * chunksX + (x / TileMapLayer.CHUNK_SIZE);
+        if (c >= this.occludingLayer.length || this.occludingLayer[c] == null) return -1;
+
+        return this.occludingLayer[c][(y % TileMapLayer.CHUNK_SIZE) * TileMapLayer.CHUNK_SIZE + (x % TileMapLayer.CHUNK_SIZE)];
+    }
+
+    // Retrieves a copy of the tile at the given world position in the specified layer (see ReadTile), set it back
+    // with SetTileAtWorldPosition
     public Tile GetTileAtWorldPosition(Vector2 position, TileMapLayer layerMask) {
         // Convert world position to local position
         position = WorldToLocalVector(position);
@@ -864,14 +1795,14 @@ class TileMap {
 
         // If a specific layer mask is provided, return the tile from that layer
         if (layerMask != null) {
-            return layerMask.GetTile(x, y);
+            return layerMask.ReadTile(x, y);
         }
 
         // Search for the tile in all layers
         for (TileMapLayer layer : this.layers) {
-            Tile t = layer.GetTile(x, y);
-            if (!t.IsNull()) {
-                return t;  // Return the first non-null tile found
+            Tile t = layer.PeekTile(x, y);
+            if (t != null && !t.IsNull()) {
+                return layer.ReadTile(x, y);  // Return the first non-null tile found
             }
         }
 
@@ -930,62 +1861,52 @@ class TileMap {
         return groundLayer;  // Return the found ground layer or null if not found
     }
 
-    // Resets the responsibilities (clears the rendering list and clears objects on ground tiles)
+    // Resets the responsibilities (clears the rendering list, Draw finds each object's cell again)
     public void ResetResponsiblities() {
         this.renderingResponsiblity.clear();  // Clear the list of objects with rendering responsibility
-
-        TileMapLayer groundLayer = this.GetGroundLayer();  // Get the ground layer
-        if (groundLayer != null) {
-            for (Tile t : groundLayer.tiles) {
-                t.objectsOnTile.clear();  // Clear objects on each tile of the ground layer
-            }
-        }
     }
 
     // Returns a list of tiles with the specified tag in the given layer or all layers
     public ArrayList<Tile> GetMapTilesByTag(String tag, TileMapLayer layerMask) {
-        ArrayList<Tile> tiles = new ArrayList<>();
-        
-        // If no specific layer is provided, search all layers
-        if (layerMask == null) {
-            for (TileMapLayer l : this.layers) {
-                for (Tile t : l.tiles) {
-                    if (t.tags.contains(tag)) {  // If the tile has the specified tag
-                        tiles.add(t);  // Add it to the list
-                    }
-                }
-            }
-        } else {
-            // If a specific layer is provided, search only that layer
-            for (Tile t : layerMask.tiles) {
-                if (t.tags.contains(tag)) {  // If the tile has the specified tag
-                    tiles.add(t);  // Add it to the list
-                }
-            }
+        // Tagged tiles of a streamed map are loaded wherever they are, so spawn points can be found
+        if (this.streamer != null) {
+            this.streamer.LoadTagged(tag);
         }
 
-        return tiles;  // Return the list of matching tiles
+        return this.tagIndex.MapTiles(tag, layerMask);  // Only the matching cells, see TileTagIndex
     }
 
     // Returns the first tile with the specified tag from any of the owned sprite sheets
     public Tile GetSheetTileByTag(String tag) {
-        // Loop through all owned sprite sheets
-        for (SpriteSheet ss : this.ownedSheets) {
-            for (Tile t : ss.tiles) {
-                if (!t.IsNull() && t.tags.contains(tag)) {  // If the tile is not null and has the specified tag
-                    return t;  // Return the first matching tile
-                }
-            }
-        }
-        return null;  // Return null if no tile with the specified tag is found
+        return this.tagIndex.SheetTile(tag);
     }
 
+    // Cells past the edge of the screen that are still ordered by Draw, so tiles taller than this can pop in late
+    private static final int DRAW_MARGIN = 4;
+
     // Function to draw tiles in specefic order
     public void Draw(Graphics2D g) {
         // I don't know how to document I just did random stuf
 
         // int drewCount = 0;
-        
+
+        // Only the cells on screen are ordered, plus a margin for tall tiles and objects standing just outside it.
+        // Indices below are into this window, not the map
+        Rectangle2D visible = this.GetVisibleWorldBounds(g);
+        int wx0 = 0, wy0 = 0, wx1 = 0, wy1 = 0;
+        if (!visible.isEmpty()) {
+            wx0 = Math.max(0, (int)Math.floor((visible.getMinX() - this.renderOffset.x) / TileMap.RENDERSCALE) - DRAW_MARGIN);
+            wy0 = Math.max(0, (int)Math.floor((visible.getMinY() - this.renderOffset.y) / TileMap.RENDERSCALE) - DRAW_MARGIN);
+            wx1 = Math.min(this.width, (int)Math.ceil((visible.getMaxX() - this.renderOffset.x) / TileMap.RENDERSCALE) + DRAW_MARGIN);
+            wy1 = Math.min(this.height, (int)Math.ceil((visible.getMaxY() - this.renderOffset.y) / TileMap.RENDERSCALE) + DRAW_MARGIN);
+        }
+        int windowWidth = Math.max(0, wx1 - wx0);
+
+        // Objects drawn with each cell of the window, after that cell's row of tiles. Kept here rather than on the
+        // ground tiles, which are palette entries shared between cells unless a cell was edited
+        @SuppressWarnings("unchecked")
+        ArrayList<GameObject>[] objectsAt = (ArrayList<GameObject>[]) new ArrayList<?>[windowWidth * Math.max(0, wy1 - wy0)];
+
         TileMapLayer groundLayer = this.GetGroundLayer();
         if (groundLayer != null) {
             for (GameObject o : this.renderingResponsiblity) {
@@ -997,297 +1918,423 @@ class TileMap {
                 g.setColor(Color.RED);
                 GG.drawOval(centreBottomPos, new Vector2(10, 10));
                 
-                Tile t1 = this.GetTileAtWorldPosition(centreBottomPos, groundLayer);
-                Tile t2 = null;
-                
-                if (t1 != null)
-                t2 = groundLayer.GetTile(t1.x, t1.y + 1);
+                // The ground cell the object stands in, or the one below it when that's loaded too
+                Vector2 feet = this.WorldToLocalVector(centreBottomPos);
+                int ax = (int)Math.floor(feet.x);
+                int ay = (int)Math.floor(feet.y);
+                boolean anchored = ax >= 0 && ax <= this.width && ay >= 0 && ay <= this.height && groundLayer.IsLoaded(ax, ay);
+                if (anchored) {
+                    int cellIndex = ay * groundLayer.width + ax; // Wraps onto the next row like GetTile
+                    ax = cellIndex % groundLayer.width;
+                    ay = cellIndex / groundLayer.width;
+                    if (groundLayer.IsLoaded(ax, ay + 1)) ay++;
+                }
 
-                if (t2 != null) {
-                    t2.objectsOnTile.add(o);
-                } else if (t1 != null) {
-                    t1.objectsOnTile.add(o);
+                // Objects outside the window are drawn straight away, their Draw still has to run every frame
+                if (anchored && ax >= wx0 && ax < wx1 && ay >= wy0 && ay < wy1) {
+                    int index = (ay - wy0) * windowWidth + (ax - wx0);
+                    if (objectsAt[index] == null) objectsAt[index] = new ArrayList<>();
+                    objectsAt[index].add(o);
                 } else {
                     o.Draw(g);
                 }
             }
         }
         
+        MapDrawEvent drawEvent = MapDrawEvent.TYPE.isEnabled() ? new MapDrawEvent() : null;
+        if (drawEvent != null) drawEvent.begin();
+        int tilesDrawn = 0, tilesOccluded = 0;
+
+        this.UpdateOcclusion();
+
         // ? Surely this is fine for memory and performance. (We're in a time crunch.)
         ArrayList<ArrayList<Tile>> layerOrdered = new ArrayList<>();
+        // Alongside each tile, how many rows above the cell it's in it's drawn from. Only tall tiles moved down by
+        // the pass below aren't 0, palette entries don't know their own y
+        ArrayList<ArrayList<Integer>> rowsAbove = new ArrayList<>();
         
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
+        for (int y = wy0; y < wy1; y++) {
+            for (int x = wx0; x < wx1; x++) {
                 layerOrdered.add(new ArrayList<Tile>());
+                rowsAbove.add(new ArrayList<Integer>());
             }
         }
         
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                int index = y * this.width + x;
+        for (int y = wy0; y < wy1; y++) {
+            for (int x = wx0; x < wx1; x++) {
+                int index = (y - wy0) * windowWidth + (x - wx0);
                 
                 ArrayList<Tile> tilesAtPos = layerOrdered.get(index);
+                ArrayList<Integer> rowsAtPos = rowsAbove.get(index);
+                int occluder = this.GetOccludingLayer(x, y);
                 
-                for (TileMapLayer l : this.layers) {
+                for (int li = 0; li < this.layers.size(); li++) {
+                    TileMapLayer l = this.layers.get(li);
                     if (l.width != this.width || l.height != this.height) {
                         System.err.println("[WARN]: Not rendering layer with non-matching width or height. Layer: " + l.name);
                         continue;
                     }
                     
-                    Tile t = l.tiles.get(index);
-                    tilesAtPos.add(t);
+                    Tile t = l.PeekTile(x, y); // Null when the cell is empty, or its chunk isn't streamed in yet
+
+                    // Hidden under an opaque tile, unless it spills into other cells
+                    if (li < occluder && (t == null || !t.IsCompoundTile())) {
+                        tilesOccluded++;
+                        continue;
+                    }
+
+                    tilesAtPos.add(t); // Empty cells keep their place too, the tall tile pass below depends on it
+                    rowsAtPos.add(0);
                 }
             }
         }
         
         for (int i = 0; i < layerOrdered.size(); i++) {
             ArrayList<Tile> tilesAtPos = layerOrdered.get(i);
+            ArrayList<Integer> rowsAtPos = rowsAbove.get(i);
             
             for (int j = 0; j < tilesAtPos.size(); j++) {
                 Tile t = tilesAtPos.get(j);
-                if (t.h > 1) {
+                if (t != null && t.h > 1) {
+                    int tx = wx0 + i % windowWidth;
+                    int ty = wy0 + i / windowWidth - rowsAtPos.get(j);
+
                     tilesAtPos.remove(j);
+                    rowsAtPos.remove(j);
                     
-                    int bottomY = t.y + t.h;
-                    int newIndex = (bottomY * this.width + t.x);
+                    int bottomY = Math.min(ty + t.h, wy1 - 1);
+                    int newIndex = ((bottomY - wy0) * windowWidth + (tx - wx0));
                     
                     layerOrdered.get(newIndex).add(t);
+                    rowsAbove.get(newIndex).add(bottomY - ty);
                 }
             }
         }
         
+        boolean software = TileMap.renderBackend == RenderBackend.SOFTWARE;
+        if (software) {
+            this.rasterizer.Begin(g);
+        }
+
+        boolean chunked = TileMap.renderBackend == RenderBackend.CHUNKED;
+        if (chunked) {
+            this.chunkCache.Update(g); // Ready chunks are drawn row by row below, the rest tile by tile
+        }
+
         // double start = Game.now();
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                int index = y * this.width + x;
+        for (int y = wy0; y < wy1; y++) {
+            int bakedFrom = wx0; // First cell of the row whose baked tiles aren't drawn yet
+
+            for (int x = wx0; x < wx1; x++) {
+                int index = (y - wy0) * windowWidth + (x - wx0);
                 ArrayList<Tile> tiles = layerOrdered.get(index);
+                ArrayList<Integer> rows = rowsAbove.get(index);
                 
                 for (int l = 0; l < tiles.size(); l++) {
                     Tile t = tiles.get(l);
                     
-                    if (!t.IsNull()) {
-                        Vector2 tilePosition = LocalToWorldVectorPositional(new Vector2(t.x, t.y));
+                    if (t != null && !t.IsNull()) {
+                        tilesDrawn++;
+
+                        // Only tall tiles are drawn away from their cell, up in the same column
+                        int tx = x;
+                        int ty = y - rows.get(l);
+
+                        if (chunked && this.chunkCache.IsBaked(t, tx, ty)) {
+                            continue;
+                        }
+                        if (chunked && ty == y && bakedFrom <= x) {
+                            // Baked cells to the left go first, like they would tile by tile
+                            this.chunkCache.DrawRow(g, y, bakedFrom, x);
+                            bakedFrom = x + 1;
+                        }
+
+                        if (software) {
+                            this.rasterizer.DrawTile(t, tx, ty);
+                            continue;
+                        }
+
+                        Vector2 tilePosition = LocalToWorldVectorPositional(new Vector2(tx, ty));
                         Vector2 tileSize = LocalToWorldVectorScalar(new Vector2(t.w, t.h));
                         
                         t.Draw(g, tilePosition.x, tilePosition.y, tileSize.x, tileSize.y);
                     }
                 }
             }
-            for (int x = 0; x < this.width; x++) {
-                int index = y * this.width + x;
-                ArrayList<Tile> tiles = layerOrdered.get(index);
+            if (chunked) {
+                this.chunkCache.DrawRow(g, y, bakedFrom, wx1);
+            }
+
+            for (int x = wx0; x < wx1; x++) {
+                int index = (y - wy0) * windowWidth + (x - wx0);
+                if (objectsAt[index] == null) continue;
                 
-                for (int l = 0; l < tiles.size(); l++) {
-                    Tile t = tiles.get(l);
-                    
-                    for (GameObject o : t.objectsOnTile) {
-                        o.Draw(g);
+                for (GameObject o : objectsAt[index]) {
+                    // Tiles rasterized so far have to be on screen before the object is drawn over them
+                    if (software) {
+                        this.rasterizer.Flush(g);
                     }
+                    o.Draw(g);
                 }
             }
         }
+
+        if (software) {
+            this.rasterizer.Flush(g);
+        }
+
+        if (drawEvent != null) drawEvent.end();
+        if (drawEvent != null && drawEvent.shouldCommit()) {
+            drawEvent.tilesDrawn = tilesDrawn;
+            drawEvent.tilesOccluded = tilesOccluded;
+            drawEvent.layerCount = this.layers.size();
+            drawEvent.renderBackend = TileMap.renderBackend.name();
+            drawEvent.commit();
+        }
         // System.err.println("Time: " + (Game.now() - start));
     }
 
-    // This method saves the current map's data (including layers, sheets, and high score) to a file.
-    public void Save(String filePath) {
-        new Message("Saving map...");
-
-        try {
-            // Create or overwrite the map file
-            File mapF = new File(filePath);
-            if (mapF.createNewFile()) {
-                new Message("New map file created: `" + mapF.getPath() + "`");
-            } else {
-                new Message("Overwriting, map file already exists: `" + mapF.getPath() + "`");
-            }
+    // Single thread writing maps saved with SaveAsync, one at a time and in the order they were saved
+    private static ExecutorService saver = null;
 
-            FileWriter fw = new FileWriter(mapF);
+    // Latest save queued for each file, loads wait on it so they never read a map that's about to be replaced
+    private static final ConcurrentHashMap<String, Future<?>> pendingSaves = new ConcurrentHashMap<>();
 
-            // Write general map information
-            fw.write("__MAP__\n");
-            fw.write("width=" + this.width + "\n");
-            fw.write("height=" + this.height + "\n");
+    // Messages from finished background saves. Panel.messages belongs to the game thread, so they are
+    // created there by ShowSaveMessages
+    private static final ConcurrentLinkedQueue<Runnable> saveMessages = new ConcurrentLinkedQueue<>();
 
-            // Save owned sprite sheets
-            fw.write("num_owned_sheets=" + this.ownedSheets.size() + "\n");
-            for (SpriteSheet sheet : this.ownedSheets) {
-                sheet.SaveToFile(fw, this);
-            }
+    private static synchronized ExecutorService GetSaver() {
+        if (saver == null) {
+            saver = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Map Saver");
+                t.setDaemon(true);
+                return t;
+            });
 
-            // Save layers
-            fw.write("num_layers=" + this.layers.size() + "\n");
-            for (TileMapLayer l : this.layers) {
-                l.SaveToFile(fw, this);
-            }
+            // Let saves that are still queued finish when the game exits
+            ExecutorService s = saver;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                s.shutdown();
+                try {
+                    s.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                }
+            }, "Map Saver Shutdown"));
+        }
+        return saver;
+    }
 
-            // Save high score
-            fw.write("high_score=" + this.highScore + "\n");
+    private static String SaveKey(String filePath) {
+        return new File(filePath).getAbsoluteFile().toPath().normalize().toString();
+    }
 
-            // End of file marker
-            fw.write("END\n");
+    // This method saves the current map's data (including layers, sheets, and high score) to a file.
+    // Blocks until the file is written, the game uses SaveAsync.
+    public void Save(String filePath) {
+        new Message("Saving map...");
 
-            fw.flush();
-            fw.close();
-        } catch (IOException e) {
-            new Message("An error occurred: " + e.getLocalizedMessage(), true);
-            e.printStackTrace();
-        }
+        TileMapSnapshot snapshot = new TileMapSnapshot(this);
+        this.Saved(snapshot, filePath);
+        SaveSnapshot(snapshot, filePath, this.JournalFor(filePath), false);
     }
 
+    // Saves the map on the saver thread. Only the snapshot is taken here, the frame never waits on the disk
+    public void SaveAsync(String filePath) {
+        new Message("Saving map...");
 
-    private static String loaderError = null;
+        TileMapSnapshot snapshot = new TileMapSnapshot(this);
+        this.Saved(snapshot, filePath);
+        TileMapJournal journal = this.JournalFor(filePath);
+        Future<?> save = GetSaver().submit(() -> SaveSnapshot(snapshot, filePath, journal, true));
+        pendingSaves.put(SaveKey(filePath), save);
+    }
 
-    private static String getNextLine(BufferedReader br)  throws IOException {
-        String line = br.readLine();
+    // Remembers snapshot for Revert when it's of the file the map came from
+    private void Saved(TileMapSnapshot snapshot, String filePath) {
+        if (this.filePath != null && SaveKey(this.filePath).equals(SaveKey(filePath))) {
+            this.saved = snapshot;
+        }
+    }
 
-        if (line == null)  return null;
+    // Undoes the edits made since the map was last loaded or saved. Put back from what that save held, like
+    // HotReload applies a changed file, so a save that's still being written isn't waited for. Streamed maps and
+    // maps that changed size are loaded from the file again
+    public void Revert() {
+        if (this.filePath == null) return;
 
-        while (line.strip().equals("") || line.startsWith("__")) {
-            line = br.readLine();
+        int changed;
+        try {
+            changed = this.saved != null && this.streamer == null ? TileMapJournal.Revert(this, this.saved) : -1;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            changed = -1;
         }
 
-        return line;
-    } 
-
-    private static boolean gotEnd = false;
-    public static void GoToEnd(BufferedReader br) throws IOException {
-        if (gotEnd) {
-            gotEnd = false;
-            return;
+        if (changed < 0) {
+            this.LoadFromFile(this.filePath);
         }
-        String line = null;
-        do {
-            String newLine = br.readLine();
-            if (newLine == null) {
-                loaderError = "Unexpected EOF, Expecting END. `" + line + "`";
-                return;
-            }
-            line = newLine;
-        } while (line == null || !line.equals("END"));
+        new Message("Reverted to the last save of `" + this.filePath + "`.", 4.0);
     }
 
-    // Reads an integer value from a BufferedReader, checking for a specific header
-    public static Integer readInt(BufferedReader br, String expectedHeader) throws IOException {
-        // If an end marker was reached, return null
-        if (gotEnd) return null;
+    // Waits for a queued save of filePath to finish, if there is one
+    public static void WaitForSave(String filePath) {
+        Future<?> save = pendingSaves.get(SaveKey(filePath));
+        if (save == null || save.isDone()) return;
 
-        // Read the next line of input
-        String line = getNextLine(br);
+        try {
+            save.get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("[ERROR]: Waiting for map save of `" + filePath + "`: " + e);
+        }
+    }
 
-        // If EOF is reached unexpectedly, set an error and return null
-        if (line == null) {
-            loaderError = "Unexpected EOF.\n";
-            return null;
+    // Shows the messages of background saves that finished since the last call, called by the game thread every frame
+    public static void ShowSaveMessages() {
+        Runnable show;
+        while ((show = saveMessages.poll()) != null) {
+            show.run();
         }
+    }
 
-        // Split the line into components by '='
-        String components[] = line.split("=");
+    // Journal to save into for filePath, a new one when the map is saved somewhere else. Null when journaling is off
+    private TileMapJournal JournalFor(String filePath) {
+        if (!TileMap.journalSaves) return null;
 
-        // If the line doesn't have both header and value, set an error and return null
-        if (components.length < 2) {
-            loaderError = "Incomplete statement. Line: `" + line + "`";
-            return null;
+        if (this.journal == null || !SaveKey(this.journal.mapFile.getPath()).equals(SaveKey(filePath))) {
+            this.journal = new TileMapJournal(filePath); // Its first save writes the whole map
         }
-        
-        // Get the header part of the statement
-        String header = components[0];
+        return this.journal;
+    }
 
-        // If the header doesn't match the expected header, set an error and return null
-        if (!header.equals(expectedHeader)) {
-            loaderError = "Expected `" + expectedHeader + "` got: `" + header + "`";
-            return null;
+    // Appends the snapshot's changes to the journal, or writes the whole map when there's no journal to append to
+    // or it got big enough to be folded into the map file
+    private static void SaveSnapshot(TileMapSnapshot snapshot, String filePath, TileMapJournal journal, boolean background) {
+        if (journal == null) {
+            WriteSnapshot(snapshot, filePath, background);
+            return;
         }
 
-        // Concatenate all parts of the value (in case the value has multiple components)
-        String valueStr = components[1];
-        for (int i = 2; i < components.length; i++) {
-            valueStr += components[i];
-        }
+        synchronized (journal) {
+            MapSaveEvent saveEvent = new MapSaveEvent();
+            saveEvent.begin();
 
-        // Try to parse the value as an integer
-        int value = 0;
-        try {
-            value = Integer.parseInt(valueStr);
-        } catch (NumberFormatException e) {
-            // If parsing fails, set an error and return null
-            loaderError = "Expected integer got: " + valueStr + ".\n";
-            return null;
-        }
+            long appended;
+            try {
+                appended = journal.Append(snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+                appended = -1; // Written in full below
+            }
 
-        // Return the parsed integer value
-        return value;
-    }
+            if (appended >= 0 && !journal.NeedsCompaction()) {
+                saveEvent.end();
+                if (saveEvent.shouldCommit()) {
+                    saveEvent.path = journal.file.getPath();
+                    saveEvent.bytesWritten = appended;
+                    saveEvent.sheetCount = snapshot.sheets.size();
+                    saveEvent.layerCount = snapshot.layers.size();
+                    saveEvent.commit();
+                }
 
-    // Reads a string value from a BufferedReader, checking for a specific header
-    public static String readString(BufferedReader br, String expectedHeader) throws IOException {
-        // If an end marker was reached, return null
-        if (gotEnd) return null;
+                String text = appended == 0 ? "Saved map, nothing changed." : "Saved map, appended " + appended + " bytes to `" + journal.file.getPath() + "`.";
+                PostSaveMessage(() -> new Message(text), background);
+                return;
+            }
 
-        // Read the next line of input
-        String line = getNextLine(br);
+            if (appended >= 0) {
+                System.out.println("[LOG]: Compacting `" + journal.file.getPath() + "` into `" + filePath + "`.");
+            }
 
-        // If EOF is reached unexpectedly, set an error and return null
-        if (line == null) {
-            loaderError = "Unexpected EOF.\n";
-            return null;
+            if (WriteSnapshot(snapshot, filePath, background)) {
+                journal.Reset(snapshot);
+            }
         }
+    }
 
-        // If the line contains the "END" marker, set gotEnd to true and return null
-        if (line.equals("END")) {
-            gotEnd = true;
-            return null;
+    private static void PostSaveMessage(Runnable message, boolean background) {
+        if (background) {
+            saveMessages.add(message);
+        } else {
+            message.run();
         }
+    }
 
-        // Split the line into components by '='
-        String components[] = line.split("=");
+    // Writes a snapshot to a temporary file next to filePath and renames it over filePath,
+    // so the map on disk is always either the old one or the new one, never half written.
+    // Any journal of filePath is deleted, the map file has everything. Returns whether it was written
+    private static boolean WriteSnapshot(TileMapSnapshot snapshot, String filePath, boolean background) {
+        MapSaveEvent saveEvent = new MapSaveEvent();
+        saveEvent.begin();
 
-        // If the line doesn't have both header and value, return an empty string
-        if (components.length < 2) {
-            return "";
-        }
-        
-        // Get the header part of the statement
-        String header = components[0];
+        File mapF = new File(filePath);
+        File tempF = new File(filePath + ".tmp");
+        Runnable message;
+        boolean written = false;
 
-        // If the header doesn't match the expected header, set an error and return null
-        if (!header.equals(expectedHeader)) {
-            loaderError = "Expected `" + expectedHeader + "` got: `" + header + "`";
-            return null;
-        }
+        try {
+            boolean existed = mapF.exists();
+
+            // Binary maps go through TileMapBinary
+            long bytesWritten;
+            if (filePath.endsWith(TileMapBinary.EXTENSION)) {
+                bytesWritten = TileMapBinary.Save(snapshot, tempF);
+            } else {
+                try (BufferedWriter bw = Files.newBufferedWriter(tempF.toPath(), StandardCharsets.UTF_8)) {
+                    snapshot.WriteText(bw);
+                }
+                bytesWritten = tempF.length();
+            }
+
+            // A streamed map reads its chunks from the file it's saved over, it has to let go of it first
+            if (snapshot.streamer != null && snapshot.streamer.Reads(mapF)) {
+                snapshot.streamer.Replace(tempF);
+            } else {
+                MoveOver(tempF, mapF);
+            }
+            new File(filePath + TileMapJournal.EXTENSION).delete();
+
+            saveEvent.end();
+            if (saveEvent.shouldCommit()) {
+                saveEvent.path = filePath;
+                saveEvent.bytesWritten = bytesWritten;
+                saveEvent.sheetCount = snapshot.sheets.size();
+                saveEvent.layerCount = snapshot.layers.size();
+                saveEvent.commit();
+            }
 
-        // Concatenate all parts of the value (in case the value has multiple components)
-        String valueStr = components[1];
-        for (int i = 2; i < components.length; i++) {
-            valueStr += components[i];
+            String text = (existed ? "Saved map, overwrote `" : "Saved map, created `") + mapF.getPath() + "` (" + (bytesWritten / 1024) + " KB).";
+            message = () -> new Message(text);
+            written = true;
+        } catch (IOException e) {
+            tempF.delete();
+            e.printStackTrace();
+
+            String text = "An error occurred saving `" + mapF.getPath() + "`: " + e.getLocalizedMessage();
+            message = () -> new Message(text, true);
         }
 
-        // Return the concatenated string value
-        return valueStr;
+        PostSaveMessage(message, background);
+        return written;
     }
 
-    // Reads a number (Double) value from a BufferedReader, checking for a specific header
-    public static Double readNumber(BufferedReader br, String expectedHeader) throws IOException {
-        // Read the string value associated with the expected header
-        String str = readString(br, expectedHeader);
-        
-        // If the string is not null, attempt to parse it as a Double
-        if (str != null) {
-            try {
-                // Try parsing the string as a Double and return the parsed value
-                return Double.parseDouble(str);
-            } catch (NumberFormatException e) {
-                // If parsing fails, set an error indicating the issue
-                loaderError = "Expected number got: `" + str + "`";
-            }
+    // Renames from over to, atomically where the file system can
+    static void MoveOver(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
-        
-        // Return null if parsing failed or the string was null
-        return null;
     }
 
     // Loads a map from a specified file path
     public void LoadFromFile(String filePath) {
+        // A save of this file may still be on its way to disk
+        TileMap.WaitForSave(filePath);
+
+        MapLoadEvent loadEvent = new MapLoadEvent();
+        loadEvent.begin();
+
         try {
             // Check if the file exists
             File mapF = new File(filePath);
@@ -1296,70 +2343,179 @@ class TileMap {
                 return;
             }
 
-            // Create a BufferedReader to read the map file
-            BufferedReader br = new BufferedReader(new FileReader(mapF));
+            // Binary maps are recognized by their magic, whatever the extension
+            if (TileMapBinary.IsBinaryMap(mapF)) {
+                ArrayList<SpriteSheet> previousSheets = this.ownedSheets;
+                TileMapBinary.Load(this, mapF);
+                TileMap.ReleaseSheets(previousSheets);
+                this.journal = TileMapJournal.Open(this, mapF); // Edits saved since the map file was written
+                this.filePath = filePath;
+                this.saved = new TileMapSnapshot(this);
+
+                loadEvent.end();
+                if (loadEvent.shouldCommit()) {
+                    loadEvent.path = filePath;
+                    loadEvent.bytesRead = mapF.length();
+                    loadEvent.sheetCount = this.ownedSheets.size();
+                    loadEvent.layerCount = this.layers.size();
+                    loadEvent.commit();
+                }
+                return;
+            }
+
+            // Read the whole map file, the reader keeps track of where we are and of errors
+            TileMapReader reader = TileMapReader.FromFile(mapF);
 
             // Read the map's width and height
-            int width = readInt(br, "width");
-            int height = readInt(br, "height");
+            Integer width = reader.ReadInt("width");
+            Integer height = reader.ReadInt("height");
+
+            // Read the number of owned sprite sheets
+            Integer numOwnedSheets = reader.ReadInt("num_owned_sheets");
+
+            if (width == null || height == null || numOwnedSheets == null) {
+                new Message("[ERROR] Map loader error in `" + filePath + "`: " + reader.error, true);
+                return;
+            }
 
             System.out.println("Width:" + width);
             System.out.println("Height:" + height);
 
-            // Read the number of owned sprite sheets
-            int numOwnedSheets = readInt(br, "num_owned_sheets");
+            // Layers index their tiles with the map's width
+            this.width = width;
+            this.height = height;
+
             ArrayList<SpriteSheet> sheets = new ArrayList<>();
 
-            // Load each sprite sheet
+            // Load each sprite sheet, their images decode on other threads while the rest of the file is parsed
             for (int i = 0; i < numOwnedSheets; i++) {
-                SpriteSheet s = new SpriteSheet(br, this);
+                SpriteSheet s = new SpriteSheet(reader, this);
                 sheets.add(s);
             }
 
             // Check for errors loading sprite sheets
-            if (loaderError != null) {
-                new Message("[ERROR] Map loader error in loading sheets: " + loaderError, true);
+            ArrayList<SpriteSheet> previousSheets = this.ownedSheets;
+            if (reader.error != null) {
+                TileMap.ReleaseSheets(sheets);
+                new Message("[ERROR] Map loader error in loading sheets of `" + filePath + "`: " + reader.error, true);
                 return;
             } else {
-                this.ownedSheets = sheets;
+                this.ownedSheets = sheets; // Layer tiles look their sheet up by index
             }
 
             // Read the number of layers
-            int numLayers = readInt(br, "num_layers");
+            Integer numLayers = reader.ReadInt("num_layers");
+            if (numLayers == null) numLayers = 0; // Reader has the error
             ArrayList<TileMapLayer> layers = new ArrayList<>();
+            TilePalette palette = new TilePalette();
             
             // Load each tile map layer
             for (int i = 0; i < numLayers; i++) {
                 TileMapLayer tl = new TileMapLayer(this, width, height);
-                tl.LoadFromFile(br, this);
+                tl.palette = palette;
+                tl.LoadFromFile(reader, this);
                 layers.add(tl);
             }
 
             // Check for errors loading layers
-            if (loaderError != null) {
-                new Message("[ERROR] Map loader error in loading layers: " + loaderError, true);
+            if (reader.error != null) {
+                this.ownedSheets = previousSheets; // The old layers stay, keep the sheets they draw from
+                TileMap.ReleaseSheets(sheets);
+                new Message("[ERROR] Map loader error in loading layers of `" + filePath + "`: " + reader.error, true);
                 return;
-            } else {
-                this.layers = layers;
             }
 
+            // Everything parsed, wait for the images and upload them
+            try {
+                for (SpriteSheet s : sheets) {
+                    s.FinishLoading();
+                }
+            } catch (IOException e) {
+                this.ownedSheets = previousSheets;
+                TileMap.ReleaseSheets(sheets);
+                throw e;
+            }
+            this.layers = layers;
+            this.palette = palette;
+            if (this.streamer != null) {
+                this.streamer.Close();
+            }
+            this.streamer = null; // Text maps are loaded whole
+            TileMap.ReleaseSheets(previousSheets); // Reloading the same map gets the same images back, so this only drops references
+
             // Read the high score value (if available)
-            Integer highScore = readInt(br, "high_score");
+            Integer highScore = reader.ReadInt("high_score");
             if (highScore != null) {
                 System.out.println("Read highscore: " + highScore);
                 this.highScore = highScore;
             }
 
             // Move to the end of the file to ensure no unexpected data is left
-            GoToEnd(br);
-
-            // Close the BufferedReader after reading
-            br.close();
-        } catch (IOException e) {
-            // Handle any IO exceptions
+            reader.GoToEnd();
+
+            this.journal = TileMapJournal.Open(this, mapF); // Edits saved since the map file was written
+            this.filePath = filePath;
+            this.saved = new TileMapSnapshot(this);
+
+            loadEvent.end();
+            if (loadEvent.shouldCommit()) {
+                loadEvent.path = filePath;
+                loadEvent.bytesRead = mapF.length();
+                loadEvent.sheetCount = this.ownedSheets.size();
+                loadEvent.layerCount = this.layers.size();
+                loadEvent.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Handle any IO exceptions, and anything a malformed file still gets past the loaders' checks
+            new Message("[ERROR] Map loader error in `" + filePath + "`: " + e, true);
             System.out.println("An error occurred.");
             e.printStackTrace();
         }
     }
 
-}
+    // Applies what changed in the map file since it was loaded to this map in place, like replaying a journal
+    // record: layers, sheets, palette entries and chunk images that didn't change are kept. Falls back to loading
+    // the whole file when the map changed size or is streamed. Game thread only, see AssetWatcher
+    public void HotReload() {
+        if (this.filePath == null) return;
+
+        TileMap.WaitForSave(this.filePath);
+
+        // Our own save, the map already has it
+        if (this.journal != null && SaveKey(this.journal.mapFile.getPath()).equals(SaveKey(this.filePath)) && this.journal.HoldsMapFile()) {
+            return;
+        }
+
+        TileMap next = new TileMap(this.width, this.height);
+        next.LoadFromFile(this.filePath);
+        if (next.filePath == null) {
+            next.ReleaseSheets();
+            return; // Didn't load, it showed why. A file still being written is loaded again on its next change
+        }
+
+        int changed;
+        try {
+            changed = TileMapJournal.ApplyInPlace(this, next);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            changed = -1;
+        }
+        next.ReleaseSheets(); // This map acquired its own references to the images it kept
+
+        if (changed < 0) {
+            this.LoadFromFile(this.filePath);
+            new Message("Reloaded `" + this.filePath + "`.", 4.0);
+            return;
+        }
+
+        // Saves diff against the file as it is now
+        next.journal.Adopt(this);
+        this.journal = next.journal;
+        this.saved = new TileMapSnapshot(this);
+
+        if (changed > 0) {
+            new Message("Hot reloaded `" + this.filePath + "`, applied " + changed + " bytes of changes.", 4.0);
+        }
+    }
+
+}
\ No newline at end of file
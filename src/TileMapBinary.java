@@ -0,0 +1,683 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/*
+ * Compact binary form of a map (.wmapb).
+ *
+ * The text .wmap writes every property of every tile, so a 100x100 map with a few layers is a megabyte of
+ * `key=value` lines. Most tiles only differ by their texture, so here every distinct set of tile properties is
+ * stored once in a prototype table and layers are run length encoded lists of prototype indicies.
+ *
+ * Layout, all integers are unsigned LEB128 varints unless noted (zigzag for ones that can be negative),
+ * strings are a varint byte length followed by UTF-8:
+ *
+ *   header     "WMAP" magic (4 bytes), version (u16, big endian), width, height, high score (zigzag)
+ *   sheets     count, then per sheet: name, image path, tile size, has alpha (byte),
+ *              deleted tiles (byte length, then the bytes of BitSet.toByteArray)
+ *   prototypes count, then per prototype: sheet index + 1 (0 = none), texture index (zigzag), w, h, flags (byte),
+ *              collider x, y, w, h (doubles, only with FLAG_COLLIDER), fps, frames x, frames y (only with FLAG_ANIMATED),
+ *              tag count, tags
+ *   sheet tiles per sheet: modified tile count, then (sheet tile index, prototype index) pairs
+ *   layers     count, then per layer: name, width, height, is ground layer (byte),
+ *              chunk index: byte length of each TileMapLayer.CHUNK_SIZE square chunk, row by row (0 = all empty),
+ *              then each chunk's runs of (run length, prototype index + 1) covering its tiles inside the layer
+ *              row by row, 0 being an empty tile
+ *
+ * Version 1 had no chunk index, a layer was one list of runs covering width * height tiles. Versions 1 and 2
+ * stored deleted tiles as a count and ascending delta encoded indicies. Both still load.
+ * Maps bigger than TileMap.streamingThreshold don't decode their chunks on load, the index lets a
+ * TileMapStreamer read the ones it needs out of the file later.
+ *
+ * Convert between the two formats with: java -Djava.awt.headless=true -cp bin TileMapBinary <in> <out>
+ */
+class TileMapBinary {
+    static final String EXTENSION = ".wmapb";
+    static final byte[] MAGIC = { 'W', 'M', 'A', 'P' };
+    static final int VERSION = 3;
+
+    static final int FLAG_COLLIDABLE = 1;
+    static final int FLAG_ANIMATED = 1 << 1;
+    static final int FLAG_COLLIDER = 1 << 2; // Collider isn't the default (0, 0, 1, 1)
+
+    // Whether the file starts with the binary map magic, used to pick a loader regardless of the extension
+    public static boolean IsBinaryMap(File f) {
+        try (FileInputStream in = new FileInputStream(f)) {
+            byte[] magic = new byte[MAGIC.length];
+            if (in.read(magic) != MAGIC.length) return false;
+
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Bytes read into memory at a time while parsing a streamed map, more than any one sheet, prototype or layer
+    // header takes
+    static final int WINDOW_BYTES = 64 * 1024;
+
+    // The part of a map file being parsed, read as it's needed. A streamed map's chunks are skipped without being
+    // read, the streamer reads them later. Nothing stays mapped or open, so the file can be replaced once loaded
+    private static class Window {
+        final FileChannel channel;
+        final long size;
+        long start = 0; // File position of buf's first byte
+        ByteBuffer buf = ByteBuffer.allocate(0);
+
+        Window(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        // Makes sure the next n bytes are in buf, or everything left of the file when it's shorter. Returns buf
+        ByteBuffer Need(long n) throws IOException {
+            long position = this.Position();
+            long end = Math.min(this.size, position + n);
+            if (end <= this.start + this.buf.limit()) return this.buf;
+
+            end = Math.max(end, Math.min(this.size, position + WINDOW_BYTES));
+            if (end - position > Integer.MAX_VALUE) throw new IOException("Binary map is too big to load.");
+
+            ByteBuffer next = ByteBuffer.allocate((int)(end - position)).order(ByteOrder.BIG_ENDIAN);
+            while (next.hasRemaining()) {
+                if (this.channel.read(next, position + next.position()) < 0) break;
+            }
+            next.flip();
+
+            this.start = position;
+            this.buf = next;
+            return next;
+        }
+
+        // Moves to a file position, reading from there on the next Need
+        void Seek(long position) {
+            if (position >= this.start && position <= this.start + this.buf.limit()) {
+                this.buf.position((int)(position - this.start));
+            } else {
+                this.start = position;
+                this.buf = ByteBuffer.allocate(0);
+            }
+        }
+
+        long Position() {
+            return this.start + this.buf.position();
+        }
+    }
+
+    // Loads a binary map into map, replacing its sheets and layers. Throws on a malformed or newer file
+    // without touching the map
+    public static void Load(TileMap map, File f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            Window in = new Window(channel);
+
+            try {
+                Read(map, f, in);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Unexpected end of binary map at byte " + in.Position() + ".");
+            }
+        }
+    }
+
+    private static void Read(TileMap map, File f, Window in) throws IOException {
+        // Header
+        ByteBuffer buf = in.Need(WINDOW_BYTES);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get() != MAGIC[i]) throw new IOException("Not a binary map, bad magic.");
+        }
+        int version = buf.getShort() & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Binary map version " + version + " is newer than supported version " + VERSION + ".");
+        }
+
+        int width = ReadSize(buf, "map width", Integer.MAX_VALUE);
+        int height = ReadSize(buf, "map height", Integer.MAX_VALUE);
+        int highScore = ReadZigZag(buf);
+
+        // A large map only reads its layers' chunk indicies and leaves the tiles to a streamer, a smaller one is
+        // read whole
+        boolean streamed = version >= 2 && (long)width * height > TileMap.streamingThreshold;
+        if (!streamed) {
+            buf = in.Need(in.size);
+        }
+
+        // Sheets
+        int numSheets = ReadSize(buf, "sheet count", in.size - in.Position());
+        ArrayList<SpriteSheet> sheets = new ArrayList<>(numSheets);
+        for (int i = 0; i < numSheets; i++) {
+            buf = in.Need(WINDOW_BYTES);
+            String name = ReadString(buf);
+            String imagePath = ReadString(buf);
+            int tileSize = ReadVarInt(buf);
+            boolean hasAlpha = buf.get() != 0;
+
+            BitSet deleted = version >= 3 ? ReadBitSet(buf) : ReadDeltaIndicies(buf);
+
+            // The image decodes on another thread while the rest of the file is read
+            SpriteSheet sheet = new SpriteSheet();
+            sheet.name = name;
+            sheet.pendingDeleted = deleted;
+            sheet.StartLoading(imagePath, tileSize, hasAlpha);
+            sheets.add(sheet);
+        }
+
+        // Sheets hold cached images from here on, give them back if the rest of the file is bad
+        TileMapStreamer streamer = null;
+        try {
+            // Prototypes
+            buf = in.Need(WINDOW_BYTES);
+            int numPrototypes = ReadSize(buf, "prototype count", in.size - in.Position());
+            Tile[] prototypes = new Tile[numPrototypes];
+            for (int i = 0; i < numPrototypes; i++) {
+                buf = in.Need(WINDOW_BYTES);
+                prototypes[i] = ReadTile(buf, sheets);
+            }
+
+            // Modified sheet tiles, by sheet tile index. They're placed once the sheet knows its grid
+            int[][] modifiedTiles = new int[sheets.size()][];
+            for (int s = 0; s < sheets.size(); s++) {
+                buf = in.Need(WINDOW_BYTES);
+                int numModified = ReadSize(buf, "modified tile count", (in.size - in.Position()) / 2);
+                buf = in.Need(numModified * 10L);
+
+                int[] pairs = new int[numModified * 2]; // (sheet tile index, prototype index)
+                for (int i = 0; i < pairs.length; i += 2) {
+                    pairs[i] = ReadVarInt(buf);
+                    pairs[i + 1] = ReadVarInt(buf);
+                    if (pairs[i + 1] < 0 || pairs[i + 1] >= numPrototypes) {
+                        throw new IOException("Modified tile of sheet " + s + " uses prototype " + pairs[i + 1] + ", there are " + numPrototypes + ".");
+                    }
+                }
+                modifiedTiles[s] = pairs;
+            }
+
+            // Layers place prototypes through their palette entries
+            TilePalette palette = new TilePalette();
+            int[] paletteIndicies = new int[numPrototypes];
+            for (int i = 0; i < numPrototypes; i++) {
+                paletteIndicies[i] = palette.IndexOf(prototypes[i]);
+            }
+
+            if (streamed) {
+                streamer = new TileMapStreamer(map, f, palette, paletteIndicies);
+            }
+
+            buf = in.Need(WINDOW_BYTES);
+            int numLayers = ReadSize(buf, "layer count", in.size - in.Position());
+            ArrayList<TileMapLayer> layers = new ArrayList<>(numLayers);
+            for (int i = 0; i < numLayers; i++) {
+                buf = in.Need(WINDOW_BYTES);
+                String name = ReadString(buf);
+                int layerWidth = ReadSize(buf, "layer width", Integer.MAX_VALUE);
+                int layerHeight = ReadSize(buf, "layer height", Integer.MAX_VALUE);
+                boolean isGroundLayer = buf.get() != 0;
+
+                // Every chunk has at least a byte in the index
+                long numChunks = ((layerWidth + TileMapLayer.CHUNK_SIZE - 1L) / TileMapLayer.CHUNK_SIZE) * ((layerHeight + TileMapLayer.CHUNK_SIZE - 1L) / TileMapLayer.CHUNK_SIZE);
+                if ((long)layerWidth * layerHeight > Integer.MAX_VALUE || (version >= 2 && numChunks > in.size - in.Position())) {
+                    throw new IOException("Layer `" + name + "` is " + layerWidth + "x" + layerHeight + ", too big to load.");
+                }
+
+                TileMapLayer layer = new TileMapLayer(map, layerWidth, layerHeight, streamed);
+                layer.name = name;
+                layer.isGroundLayer = isGroundLayer;
+                layer.palette = palette;
+
+                if (version < 2) {
+                    ReadLayerRuns(buf, layer, paletteIndicies);
+                } else {
+                    ReadLayerChunks(in, layer, paletteIndicies, streamer);
+                }
+
+                layers.add(layer);
+            }
+
+            // Everything parsed, wait for the images and set up the sheets' tiles
+            for (int s = 0; s < sheets.size(); s++) {
+                SpriteSheet sheet = sheets.get(s);
+                sheet.FinishLoading();
+
+                int[] pairs = modifiedTiles[s];
+                for (int i = 0; i < pairs.length; i += 2) {
+                    int tileIndex = pairs[i];
+                    Tile prototype = prototypes[pairs[i + 1]];
+                    if (tileIndex < 0 || tileIndex >= sheet.tiles.size()) continue;
+
+                    Tile t = new Tile(tileIndex % sheet.numTilesX, tileIndex / sheet.numTilesX, sheet, -1);
+                    t.Set(prototype);
+                    t.textureSheet = sheet;
+                    sheet.SetTileAtIndex(tileIndex, t);
+                }
+            }
+
+            // Only touch the map once everything parsed
+            if (map.streamer != null) {
+                map.streamer.Close(); // Done with the file it streamed from, which may be this one
+            }
+            map.width = width;
+            map.height = height;
+            map.highScore = highScore;
+            map.ownedSheets = sheets;
+            map.layers = layers;
+            map.palette = palette;
+            map.streamer = streamer;
+        } catch (IOException | RuntimeException e) {
+            for (SpriteSheet sheet : sheets) {
+                sheet.Release();
+            }
+            if (streamer != null) {
+                streamer.Close();
+            }
+            throw e;
+        }
+    }
+
+    // A count or size, which a varint big enough to be negative isn't. Counts of things that take at least a byte
+    // each are also checked against what's left of the file (max), so a bad one can't run out of memory
+    private static int ReadSize(ByteBuffer buf, String what, long max) throws IOException {
+        int value = ReadVarInt(buf);
+        if (value < 0 || value > max) throw new IOException("Bad " + what + " " + value + " at byte " + buf.position() + ".");
+        return value;
+    }
+
+    // Version 1 layer: runs covering every tile of the layer. paletteIndicies has the layer's palette index of each prototype
+    private static void ReadLayerRuns(ByteBuffer buf, TileMapLayer layer, int[] paletteIndicies) throws IOException {
+        int numTiles = layer.width * layer.height;
+        int index = 0;
+        while (index < numTiles) {
+            int run = ReadVarInt(buf);
+            int prototypeIndex = ReadVarInt(buf) - 1;
+            if (run <= 0 || index + run > numTiles || prototypeIndex < -1 || prototypeIndex >= paletteIndicies.length) {
+                throw new IOException("Bad tile run in layer `" + layer.name + "` at tile " + index + ".");
+            }
+
+            if (prototypeIndex >= 0) {
+                for (int r = 0; r < run; r++) {
+                    layer.SetPaletteIndex((index + r) % layer.width, (index + r) / layer.width, paletteIndicies[prototypeIndex]);
+                }
+            }
+            index += run;
+        }
+    }
+
+    // Version 2 layer: the chunk index, then the chunks. They're decoded into the layer, or handed to the
+    // streamer when there is one
+    private static void ReadLayerChunks(Window in, TileMapLayer layer, int[] paletteIndicies, TileMapStreamer streamer) throws IOException {
+        int numChunks = layer.chunksX * layer.chunksY;
+        int[] offsets = new int[numChunks];
+        int[] lengths = new int[numChunks];
+
+        ByteBuffer buf = in.Need(numChunks * 5L);
+        long total = 0;
+        for (int c = 0; c < numChunks; c++) {
+            lengths[c] = ReadSize(buf, "chunk length", in.size);
+            total += lengths[c];
+        }
+        if (total > in.size - in.Position() || in.size > Integer.MAX_VALUE) {
+            throw new IOException("Chunks of layer `" + layer.name + "` run past the end of the file.");
+        }
+
+        int offset = (int)in.Position();
+        for (int c = 0; c < numChunks; c++) {
+            offsets[c] = offset;
+            offset += lengths[c];
+        }
+
+        if (streamer != null) {
+            streamer.AddLayer(layer, offsets, lengths);
+            in.Seek(offset);
+            return;
+        }
+
+        buf = in.Need(total);
+        int[] cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+        for (int c = 0; c < numChunks; c++) {
+            if (lengths[c] == 0) continue;
+
+            ReadChunk(buf, layer, c % layer.chunksX, c / layer.chunksX, paletteIndicies.length, cells);
+            if (in.Position() != offsets[c] + lengths[c]) {
+                throw new IOException("Chunk " + c + " of layer `" + layer.name + "` doesn't match its length in the index.");
+            }
+            layer.cells[c] = FillChunk(cells, paletteIndicies);
+            layer.version++;
+        }
+    }
+
+    // Reads the runs of layer's chunk at (cx, cy) into cells, laid out like the layer's chunks (prototype index
+    // + 1 per cell, 0 = empty). Only reads buf, so streamer threads use it on the bytes they read
+    static void ReadChunk(ByteBuffer buf, TileMapLayer layer, int cx, int cy, int numPrototypes, int[] cells) throws IOException {
+        int cw = Math.min(TileMapLayer.CHUNK_SIZE, layer.width - cx * TileMapLayer.CHUNK_SIZE);
+        int ch = Math.min(TileMapLayer.CHUNK_SIZE, layer.height - cy * TileMapLayer.CHUNK_SIZE);
+        int numCells = cw * ch;
+
+        Arrays.fill(cells, 0);
+        int i = 0;
+        while (i < numCells) {
+            int run = ReadVarInt(buf);
+            int value = ReadVarInt(buf);
+            if (run <= 0 || i + run > numCells || value < 0 || value > numPrototypes) {
+                throw new IOException("Bad tile run in chunk (" + cx + ", " + cy + ") of layer `" + layer.name + "` at tile " + i + ".");
+            }
+
+            for (int r = 0; r < run; r++, i++) {
+                cells[(i / cw) * TileMapLayer.CHUNK_SIZE + (i % cw)] = value;
+            }
+        }
+    }
+
+    // Turns cells read by ReadChunk into a layer chunk, paletteIndicies has the palette index of each prototype.
+    // Overwrites cells
+    static int[] FillChunk(int[] cells, int[] paletteIndicies) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                cells[i] = paletteIndicies[cells[i] - 1];
+            }
+        }
+        return TileMapLayer.MakeCells(cells);
+    }
+
+    // Writes a map snapshot in the binary format, returns the number of bytes written
+    public static long Save(TileMapSnapshot map, File f) throws IOException {
+        map.Materialize();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        // Header
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        WriteVarInt(out, map.width);
+        WriteVarInt(out, map.height);
+        WriteZigZag(out, map.highScore);
+
+        // Sheets
+        WriteVarInt(out, map.sheets.size());
+        for (TileMapSnapshot.Sheet sheet : map.sheets) {
+            WriteString(out, sheet.name);
+            WriteString(out, sheet.imagePath);
+            WriteVarInt(out, sheet.tileSize);
+            out.writeByte(sheet.hasAlpha ? 1 : 0);
+
+            WriteBitSet(out, sheet.deletedTiles);
+        }
+
+        // Prototypes, collected from every sheet tile and layer tile that gets written
+        ArrayList<Tile> prototypes = new ArrayList<>();
+        ArrayList<Integer> prototypeSheets = new ArrayList<>(); // Sheet index of each prototype
+        HashMap<String, Integer> prototypeIndicies = new HashMap<>();
+
+        ArrayList<int[]> sheetTiles = new ArrayList<>(); // Per sheet, (tile index, prototype index) pairs
+        for (int s = 0; s < map.sheets.size(); s++) {
+            TileMapSnapshot.Sheet sheet = map.sheets.get(s);
+            int[] pairs = new int[sheet.modifiedTiles.length * 2];
+            for (int i = 0; i < sheet.modifiedTiles.length; i++) {
+                pairs[i * 2] = sheet.modifiedIndicies[i];
+                pairs[i * 2 + 1] = Prototype(sheet.modifiedTiles[i], s, prototypes, prototypeSheets, prototypeIndicies);
+            }
+            sheetTiles.add(pairs);
+        }
+
+        ArrayList<int[]> layerTiles = new ArrayList<>(); // Per layer, prototype index + 1 of every tile
+        for (TileMapSnapshot.Layer layer : map.layers) {
+            int[] cells = new int[layer.width * layer.height];
+            for (int i = 0; i < layer.tiles.length; i++) {
+                if (layer.indicies[i] >= cells.length) continue;
+                cells[layer.indicies[i]] = Prototype(layer.tiles[i], layer.sheetIndicies[i], prototypes, prototypeSheets, prototypeIndicies) + 1;
+            }
+            layerTiles.add(cells);
+        }
+
+        WriteVarInt(out, prototypes.size());
+        for (int p = 0; p < prototypes.size(); p++) {
+            WriteTile(out, prototypes.get(p), prototypeSheets.get(p));
+        }
+
+        // Modified sheet tiles
+        for (int[] pairs : sheetTiles) {
+            WriteVarInt(out, pairs.length / 2);
+            for (int value : pairs) {
+                WriteVarInt(out, value);
+            }
+        }
+
+        // Layers
+        WriteVarInt(out, map.layers.size());
+        for (int i = 0; i < map.layers.size(); i++) {
+            TileMapSnapshot.Layer layer = map.layers.get(i);
+            int[] cells = layerTiles.get(i);
+
+            WriteString(out, layer.name);
+            WriteVarInt(out, layer.width);
+            WriteVarInt(out, layer.height);
+            out.writeByte(layer.isGroundLayer ? 1 : 0);
+
+            // Each chunk's runs go to chunkBytes, the index of their lengths is written before all of them
+            int chunksX = (layer.width + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+            int chunksY = (layer.height + TileMapLayer.CHUNK_SIZE - 1) / TileMapLayer.CHUNK_SIZE;
+            int[] lengths = new int[chunksX * chunksY];
+            ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+            DataOutputStream chunkOut = new DataOutputStream(chunkBytes);
+
+            int[] chunkCells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+            for (int c = 0; c < lengths.length; c++) {
+                int x0 = (c % chunksX) * TileMapLayer.CHUNK_SIZE, y0 = (c / chunksX) * TileMapLayer.CHUNK_SIZE;
+                int cw = Math.min(TileMapLayer.CHUNK_SIZE, layer.width - x0);
+                int ch = Math.min(TileMapLayer.CHUNK_SIZE, layer.height - y0);
+
+                int numCells = 0;
+                boolean empty = true;
+                for (int y = 0; y < ch; y++) {
+                    for (int x = 0; x < cw; x++) {
+                        chunkCells[numCells] = cells[(y0 + y) * layer.width + x0 + x];
+                        empty &= chunkCells[numCells] == 0;
+                        numCells++;
+                    }
+                }
+                if (empty) continue;
+
+                int start = chunkOut.size();
+                int index = 0;
+                while (index < numCells) {
+                    int run = 1;
+                    while (index + run < numCells && chunkCells[index + run] == chunkCells[index]) {
+                        run++;
+                    }
+                    WriteVarInt(chunkOut, run);
+                    WriteVarInt(chunkOut, chunkCells[index]);
+                    index += run;
+                }
+                lengths[c] = chunkOut.size() - start;
+            }
+
+            for (int length : lengths) {
+                WriteVarInt(out, length);
+            }
+            chunkOut.flush();
+            chunkBytes.writeTo(out);
+        }
+
+        out.flush();
+        try (FileOutputStream fos = new FileOutputStream(f)) {
+            bytes.writeTo(fos);
+        }
+        return bytes.size();
+    }
+
+    // Index of the prototype with t's properties, adding one if it's new
+    private static int Prototype(Tile t, int sheetIndex, ArrayList<Tile> prototypes, ArrayList<Integer> prototypeSheets, HashMap<String, Integer> indicies) {
+        StringBuilder key = new StringBuilder();
+        key.append(sheetIndex).append(',')
+           .append(t.textureIndex).append(',').append(t.w).append(',').append(t.h).append(',')
+           .append(t.collidable).append(',').append(t.collidorPos.x).append(',').append(t.collidorPos.y).append(',')
+           .append(t.collidorSize.x).append(',').append(t.collidorSize.y).append(',')
+           .append(t.animated);
+        if (t.animated) {
+            key.append(',').append(t.animFPS).append(',').append(t.animNumFramesX).append(',').append(t.animNumFramesY);
+        }
+        for (String tag : t.tags) {
+            key.append('\0').append(tag);
+        }
+
+        Integer index = indicies.get(key.toString());
+        if (index == null) {
+            index = prototypes.size();
+            prototypes.add(t);
+            prototypeSheets.add(sheetIndex);
+            indicies.put(key.toString(), index);
+        }
+        return index;
+    }
+
+    // Writes a tile's saved properties as a prototype entry, also used by TileMapJournal
+    static void WriteTile(DataOutputStream out, Tile t, int sheetIndex) throws IOException {
+        WriteVarInt(out, sheetIndex + 1);
+        WriteZigZag(out, t.textureIndex);
+        WriteVarInt(out, t.w);
+        WriteVarInt(out, t.h);
+
+        boolean defaultCollider = t.collidorPos.x == 0 && t.collidorPos.y == 0 && t.collidorSize.x == 1 && t.collidorSize.y == 1;
+        int flags = (t.collidable ? FLAG_COLLIDABLE : 0) | (t.animated ? FLAG_ANIMATED : 0) | (defaultCollider ? 0 : FLAG_COLLIDER);
+        out.writeByte(flags);
+
+        if (!defaultCollider) {
+            out.writeDouble(t.collidorPos.x);
+            out.writeDouble(t.collidorPos.y);
+            out.writeDouble(t.collidorSize.x);
+            out.writeDouble(t.collidorSize.y);
+        }
+        if (t.animated) {
+            WriteVarInt(out, t.animFPS);
+            WriteVarInt(out, t.animNumFramesX);
+            WriteVarInt(out, t.animNumFramesY);
+        }
+
+        WriteVarInt(out, t.tags.size());
+        for (String tag : t.tags) {
+            WriteString(out, tag);
+        }
+    }
+
+    // Reads a tile written by WriteTile, its sheet index is looked up in sheets
+    static Tile ReadTile(ByteBuffer buf, ArrayList<SpriteSheet> sheets) throws IOException {
+        int sheetIndex = ReadVarInt(buf) - 1;
+        Tile t = new Tile(0, 0, sheetIndex >= 0 && sheetIndex < sheets.size() ? sheets.get(sheetIndex) : null, ReadZigZag(buf));
+        t.w = ReadVarInt(buf);
+        t.h = ReadVarInt(buf);
+
+        int flags = buf.get();
+        t.collidable = (flags & FLAG_COLLIDABLE) != 0;
+        if ((flags & FLAG_COLLIDER) != 0) {
+            t.collidorPos = new Vector2(buf.getDouble(), buf.getDouble());
+            t.collidorSize = new Vector2(buf.getDouble(), buf.getDouble());
+        }
+        if ((flags & FLAG_ANIMATED) != 0) {
+            t.animated = true;
+            t.animFPS = ReadVarInt(buf);
+            t.animNumFramesX = ReadVarInt(buf);
+            t.animNumFramesY = ReadVarInt(buf);
+        }
+
+        int numTags = ReadVarInt(buf);
+        for (int tag = 0; tag < numTags; tag++) {
+            t.tags.add(ReadString(buf));
+        }
+
+        return t;
+    }
+
+    static void WriteVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static void WriteZigZag(DataOutputStream out, int value) throws IOException {
+        WriteVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    static void WriteString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        WriteVarInt(out, utf8.length);
+        out.write(utf8);
+    }
+
+    static void WriteBitSet(DataOutputStream out, BitSet bits) throws IOException {
+        byte[] bytes = bits.toByteArray();
+        WriteVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static int ReadVarInt(ByteBuffer buf) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint at byte " + buf.position() + ".");
+    }
+
+    static int ReadZigZag(ByteBuffer buf) throws IOException {
+        int value = ReadVarInt(buf);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String ReadString(ByteBuffer buf) throws IOException {
+        int length = ReadVarInt(buf);
+        if (length < 0 || length > buf.remaining()) throw new IOException("Bad string length at byte " + buf.position() + ".");
+
+        byte[] utf8 = new byte[length];
+        buf.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    static BitSet ReadBitSet(ByteBuffer buf) throws IOException {
+        int length = ReadVarInt(buf);
+        if (length < 0 || length > buf.remaining()) throw new IOException("Bad bitset length at byte " + buf.position() + ".");
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return BitSet.valueOf(bytes);
+    }
+
+    // Count and ascending delta encoded indicies, how deleted tiles were stored before WriteBitSet
+    static BitSet ReadDeltaIndicies(ByteBuffer buf) throws IOException {
+        BitSet bits = new BitSet();
+        int count = ReadVarInt(buf);
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            index += ReadVarInt(buf);
+            if (index >= 0) bits.set(index);
+        }
+        return bits;
+    }
+
+    // Converts a map between the text and binary formats, the output's extension picks the format
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: TileMapBinary <input .wmap|.wmapb> <output .wmap|.wmapb>");
+            System.exit(2);
+        }
+
+        TileMap map = new TileMap(1, 1);
+
+        double start = Game.now();
+        map.LoadFromFile(args[0]);
+        System.out.printf("Loaded `%s` (%d bytes) in %.1f ms.%n", args[0], new File(args[0]).length(), (Game.now() - start) * 1000.0);
+
+        map.Save(args[1]);
+        System.out.printf("Wrote `%s` (%d bytes).%n", args[1], new File(args[1]).length());
+    }
+}
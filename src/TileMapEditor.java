@@ -2,7 +2,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.BitSet;
 import java.io.*;
 import java.awt.image.*;
 import javax.imageio.ImageIO;
@@ -24,7 +24,8 @@ class TileMapEditor {
     private SpriteSheet currentSelectedSheet;  // The current sprite sheet selected for editing
     private JFileChooser fileChooser;  // File chooser for opening/saving files
 
-    private ArrayList<Tile> mapSelection = new ArrayList<>();  // List of tiles selected for map editing
+    private ArrayList<Tile> mapSelection = new ArrayList<>();  // Copies of the tiles selected for map editing (see TileMapLayer.ReadTile), set back by coordinate
+    private BitSet mapSelected = new BitSet();  // Selected cells of the current layer, by y * width + x
 
     private SpriteSheet sslSheet = null;  // The sprite sheet for the selection tool
     private String sslError = null;  // Error message if there is an issue with the selection tool
@@ -98,7 +99,7 @@ class TileMapEditor {
             // Clear tiles within the defined rectangle
             for (int x = topLeftX; x <= bottomRightX; x++) {
                 for (int y = topLeftY; y <= bottomRightY; y++) {
-                    this.sslSheet.tiles.set(y * this.sslSheet.numTilesX + x, new Tile(x, y, this.sslSheet, -1));
+                    this.sslSheet.ClearTileAtIndex(y * this.sslSheet.numTilesX + x);
                 }
             }
 
@@ -115,7 +116,7 @@ class TileMapEditor {
             new Message("Created group tile of size " + topLeftTile.w + "x" + topLeftTile.h + ".", 4.0);
 
             // Place the grouped tile into the sheet at the calculated position
-            this.sslSheet.tiles.set(tlIndex, topLeftTile);
+            this.sslSheet.SetTileAtIndex(tlIndex, topLeftTile);
 
             // Clear the current selection and add the new group tile
             this.sslSelection.clear();
@@ -132,8 +133,8 @@ class TileMapEditor {
         // Get the single selected tile (the grouped one)
         Tile selection = this.sslSelection.get(0);
 
-        // Remove the grouped tile from the sprite sheet by setting it to null
-        this.sslSheet.tiles.set(selection.GetSheetIndex(), null);
+        // Remove the grouped tile from the sprite sheet
+        this.sslSheet.ClearTileAtIndex(selection.GetSheetIndex());
 
         // Clear the current selection
         this.sslSelection.clear();
@@ -153,7 +154,7 @@ class TileMapEditor {
                 }
 
                 // Place the new tile back into the sheet
-                this.sslSheet.tiles.set(index, newTile);
+                this.sslSheet.SetTileAtIndex(index, newTile);
 
                 // Add the new tile to the selection
                 this.sslSelection.add(newTile);
@@ -288,16 +289,18 @@ class TileMapEditor {
                     sheetEdPanel.ListBegin("SSTileProperties", new Vector2(), new Vector2(1.0, 1.0));
                     if (this.sslSelection.size() == 1) {
                         Tile t = this.sslSelection.get(0);
+                        Tile was = t.Copy(); // The fields below are set directly, the sheet is told at the end
 
                         sheetEdPanel.EntryBegin("Update in Map");
                         if (sheetEdPanel.EntryButton("Update")) {
                             int numUpdated = 0;
 
                             for (TileMapLayer l : this.map.layers) {
-                                for (Tile mapT : l.tiles) {
+                                for (TileMapLayer.Cells cell = l.LoadedCells(); cell.Next(); ) {
+                                    Tile mapT = cell.tile;
                                     if (mapT.textureSheet == t.textureSheet && mapT.textureIndex == t.textureIndex
                                             && mapT.w == t.w && mapT.h == t.h) {
-                                        mapT.Set(t);
+                                        l.SetTile(cell.x, cell.y, t);
                                         numUpdated++;
                                     }
                                 }
@@ -371,6 +374,10 @@ class TileMapEditor {
                             t.animFPS = (int)Math.round(sheetEdPanel.EntrySlider(t.animFPS, 1, 60));
                             sheetEdPanel.EntryEnd();
                         }
+
+                        if (!TileMapJournal.SameTile(was, t)) {
+                            t.Edited();
+                        }
                     }
 
                     if (this.sslSelection.size() == 1) {
@@ -385,21 +392,18 @@ class TileMapEditor {
                                 if (tag.contains(",")) {
                                     new Message("Tag cannot have commas in them.", true);
                                 } else {
-                                    t.tags.add(tag);
+                                    t.AddTag(tag);
                                 }
                                 this.enteringNewTag = false;
                             }
                         }
                         sheetEdPanel.EntryEnd();
 
-                        Iterator<String> iterator = t.tags.iterator();
-                        while (iterator.hasNext()) {
-                            String tag = iterator.next();
-
+                        for (String tag : new ArrayList<>(t.tags)) { // Copy, deleting changes the list
                             sheetEdPanel.EntryBegin("Tag: `" + tag + "`");
 
                             if (sheetEdPanel.EntryButton("Delete")) {
-                                iterator.remove(); // Remove method to avoid exception
+                                t.RemoveTag(tag);
                             }
                             
                             sheetEdPanel.EntryEnd();
@@ -538,6 +542,7 @@ class TileMapEditor {
                     // Normalize collidor size within tileRect
                     t.collidorSize.x = (double)selectionRectangle.width / (double)tileRect.width;
                     t.collidorSize.y = (double)selectionRectangle.height / (double)tileRect.height;
+                    t.Edited();
                 } else {
                     new Message("[ERROR]: Attempted to set collision rect by drawing but something went wrong.", true);
                 }
@@ -711,13 +716,13 @@ class TileMapEditor {
     public void Update(double dt) {
         if (this.map != null) {
             if (Game.IsKeyPressed(KeyEvent.VK_S) && Game.IsKeyDown(KeyEvent.VK_CONTROL)) {
-                this.map.Save("./res/map.wmap");
+                this.map.SaveAsync("./res/map.wmap");
             }
 
             if (Game.IsKeyPressed(KeyEvent.VK_Z) && Game.IsKeyDown(KeyEvent.VK_CONTROL)) {
-                this.map.LoadFromFile("./res/map.wmap");
+                this.map.Revert(); // Back to the last save, without waiting for it to reach the disk
                 this.sslReset();
-                this.mapSelection.clear();
+                this.ClearMapSelection();
                 this.currentTool = "Select";
             }
         }
@@ -734,6 +739,11 @@ class TileMapEditor {
     private boolean paintBrushCanPaintBlankTiles = true;
     private Vector2 mapSelectionMouseStart = null;
 
+    private void ClearMapSelection() {
+        this.mapSelection.clear();
+        this.mapSelected.clear();
+    }
+
     private boolean enteringNewTag = false;
 
     public void Draw(Graphics2D g) throws NoninvertibleTransformException {
@@ -751,6 +761,7 @@ class TileMapEditor {
         if (this.map != null) {
             if (this.currentLayer != null && !this.map.layers.contains(this.currentLayer)) {
                 this.currentLayer = null;
+                this.ClearMapSelection();
             }
 
             if (this.currentLayer == null) {
@@ -774,7 +785,7 @@ class TileMapEditor {
                 Rectangle selectionRectangle = new Rectangle();
 
                 if (!mouseInPanel && this.currentTool.equals("Select") && Game.IsMousePressed(MouseEvent.BUTTON3)) {
-                    this.mapSelection.clear();
+                    this.ClearMapSelection();
                 }
                 if (!mouseInPanel && this.currentTool.equals("Select") && Game.IsMousePressed(MouseEvent.BUTTON1)) {
                     if (this.mapSelectionMouseStart == null) {
@@ -800,23 +811,38 @@ class TileMapEditor {
                     // Set the normalized rectangle
                     selectionRectangle.setBounds(normalizedX, normalizedY, normalizedWidth, normalizedHeight);
                     
-                    this.mapSelection.clear();
+                    this.ClearMapSelection();
                 }
 
                 g.setColor(new Color(99, 134, 224, 100));
                 g.fillRect(selectionRectangle.x, selectionRectangle.y, selectionRectangle.width, selectionRectangle.height);
                 g.drawRect(selectionRectangle.x, selectionRectangle.y, selectionRectangle.width-1, selectionRectangle.height-1); // Border
 
-                for (Tile t : this.currentLayer.tiles) {
-                    boolean isNull = t.IsNull();
+                // Only the cells on screen, and those under the selection rectangle when it reaches past the screen
+                Rectangle2D edited = this.map.GetVisibleWorldBounds(g);
+                if (!selectionRectangle.isEmpty()) {
+                    edited = edited.createUnion(selectionRectangle);
+                }
+                int cx0 = Math.max(0, (int)Math.floor(edited.getMinX() / TileMap.RENDERSCALE));
+                int cy0 = Math.max(0, (int)Math.floor(edited.getMinY() / TileMap.RENDERSCALE));
+                int cx1 = Math.min(this.currentLayer.width, (int)Math.ceil(edited.getMaxX() / TileMap.RENDERSCALE));
+                int cy1 = Math.min(this.currentLayer.height, (int)Math.ceil(edited.getMaxY() / TileMap.RENDERSCALE));
+
+                for (int cy = cy0; cy < cy1; cy++)
+                for (int cx = cx0; cx < cx1; cx++) {
+                    if (!this.currentLayer.IsLoaded(cx, cy)) continue;
+
+                    // Read without giving the cell a tile of its own, only selecting it does that
+                    Tile t = this.currentLayer.PeekTile(cx, cy);
+                    boolean isNull = t == null || t.IsNull();
 
                     if (isNull && this.currentTool.equals("Select") && !this.mapCanSelectBlank) continue;
 
                     Color tileOutlineColor = new Color(60, 106, 171, 190);
                     Rectangle tileRectangle = new Rectangle();
-                    
-                    Vector2 tilePosition = this.map.LocalToWorldVectorScalar(new Vector2(t.x, t.y));
-                    Vector2 tileSize = this.map.LocalToWorldVectorScalar(new Vector2(t.w, t.h));
+
+                    Vector2 tilePosition = this.map.LocalToWorldVectorScalar(new Vector2(cx, cy));
+                    Vector2 tileSize = this.map.LocalToWorldVectorScalar(t != null ? new Vector2(t.w, t.h) : new Vector2(1, 1));
                     
                     tileRectangle.x = (int)(tilePosition.x);
                     tileRectangle.y = (int)(tilePosition.y);
@@ -825,12 +851,14 @@ class TileMapEditor {
                     
                     if (tileRectangle.intersects(selectionRectangle) || selectionRectangle.intersects(tileRectangle)) {
                         if ((isNull && this.mapCanSelectBlank) || (!isNull)) {
-                            this.mapSelection.add(t);
+                            // A copy, Fill and Delete set the cells by coordinate so they keep sharing palette entries
+                            this.mapSelection.add(isNull ? new Tile(cx, cy, null, -1) : this.currentLayer.ReadTile(cx, cy));
+                            this.mapSelected.set(cy * this.currentLayer.width + cx);
                         } 
                     }
                     boolean drawOutline = true;
-                    boolean drawCollidor = this.currentLayer.visualizeCollidors;
-                    boolean selected = (this.mapSelection.indexOf(t) != -1);
+                    boolean drawCollidor = this.currentLayer.visualizeCollidors && t != null;
+                    boolean selected = this.mapSelected.get(cy * this.currentLayer.width + cx);
 
                     if (this.currentTool.equals("Paint")) {
                         Vector2 mouseInMap = this.map.WorldToLocalVector(Game.worldMousePos);
@@ -838,7 +866,7 @@ class TileMapEditor {
                         mouseInMap.x = Math.floor(mouseInMap.x) + 0.5;
                         mouseInMap.y = Math.floor(mouseInMap.y) + 0.5;
 
-                        Vector2 tileCentre = new Vector2(t.x + 0.5, t.y + 0.5);
+                        Vector2 tileCentre = new Vector2(cx + 0.5, cy + 0.5);
                         double distance = tileCentre.distance(mouseInMap);
                         
                         if (!mouseInPanel && distance < 0.5*Math.floor(this.paintBrushRadius)) {
@@ -848,23 +876,24 @@ class TileMapEditor {
 
                                 if (Game.IsMouseDown(MouseEvent.BUTTON1)) {
                                     // Place tile
+                                    // SetTile only changes the cell's palette index, unless it already has a tile of its own
                                     if (this.paintBrushIsEraser) {
-                                        t.Clear();
+                                        this.currentLayer.SetTile(cx, cy, null, -1);
                                     } else {
                                         double strokeChance = Math.random();
                                         if (strokeChance <= Math.pow(this.paintBrushStrokeChance/100.0, 3.f)) {
                                             if (!this.paintBrushRandomTiles) {
                                                 if (this.sslSelectedKeyTile != null) {
-                                                    t.Set(this.sslSelectedKeyTile);
+                                                    this.currentLayer.SetTile(cx, cy, this.sslSelectedKeyTile);
                                                 }
                                                 if (this.sslSelection.size() > 1) {
-                                                    t.Set(this.sslSelection.get(0));
+                                                    this.currentLayer.SetTile(cx, cy, this.sslSelection.get(0));
                                                 }
                                             } else {
                                                 if (this.sslSelection.size() > 1) {
                                                     int randomTileIndex = (int)(Math.random() * this.sslSelection.size());
                                                     Tile randomTile = this.sslSelection.get(randomTileIndex);
-                                                    t.Set(randomTile);
+                                                    this.currentLayer.SetTile(cx, cy, randomTile);
                                                 }
                                             }
                                         }
@@ -929,7 +958,7 @@ class TileMapEditor {
 
                 if (this.currentTool.equals("Select")) {
                     this.mapSelectionMouseStart = null;
-                    this.mapSelection.clear();
+                    this.ClearMapSelection();
                 }
 
                 /* Editor Actions */
@@ -938,6 +967,7 @@ class TileMapEditor {
                         for (Tile t : this.mapSelection) {
                             int randomIndex = (int)(Math.random() * this.sslSelection.size());
                             Tile randomTile = this.sslSelection.get(randomIndex);
+                            this.currentLayer.SetTile(t.x, t.y, randomTile);
                             t.Set(randomTile);
                         }
                     }
@@ -945,6 +975,7 @@ class TileMapEditor {
                 } else if (this.currentTool.equals("Delete")) {
                     if (this.mapSelection.size() > 0) {
                         for (Tile t : this.mapSelection) {
+                            this.currentLayer.SetTile(t.x, t.y, null, -1);
                             t.Clear();
                         }
                     }
@@ -1009,18 +1040,18 @@ class TileMapEditor {
                     }
                     if (this.enteringNewTag == true) {
                         if (Panel.InputField("Enter tag:", null)) {
-                            t.tags.add(Panel.inputInput);
+                            t.AddTag(Panel.inputInput);
+                            this.currentLayer.SetTile(t.x, t.y, t);
                             this.enteringNewTag = false;
                         }
                     }
                     tools.EntryEnd();
                     tools.ListBegin("SelectionTags", new Vector2(), new Vector2(1.0, 1.0));
 
-                    Iterator<String> iterator = t.tags.iterator();
-                    while (iterator.hasNext()) {
-                        String tag = iterator.next();
+                    for (String tag : new ArrayList<>(t.tags)) { // Copy, deleting changes the list
                         if (tools.Button(tag, new Vector2(), new Vector2(1.0, 0.0))) {
-                            iterator.remove(); // Remove method to avoid exception
+                            t.RemoveTag(tag);
+                            this.currentLayer.SetTile(t.x, t.y, t);
                         }
                         tools.LayoutVertBAdded(0.0);
                     }
@@ -1049,7 +1080,7 @@ class TileMapEditor {
             
             newLayer.name = "Layer " + (this.map.layers.size()+1);
             this.currentLayer = newLayer;
-            this.mapSelection.clear();
+            this.ClearMapSelection();
 
             this.map.layers.add(newLayer);
         }
@@ -1059,10 +1090,10 @@ class TileMapEditor {
             this.map.layers.remove(this.currentLayer);
             if (this.map.layers.size() == 0) {
                 this.currentLayer = null;
-                this.mapSelection.clear();
+                this.ClearMapSelection();
             } else {
                 this.currentLayer = this.map.layers.get(this.map.layers.size()-1);
-                this.mapSelection.clear();
+                this.ClearMapSelection();
             }
         }
         layersPanel.nextButtonDisabled = (currentLayer == null);
@@ -1093,6 +1124,7 @@ class TileMapEditor {
                     layersPanel.nextButtonHighlight = true;
                 }
                 if (layersPanel.Button(buttonText, new Vector2(), new Vector2(1.0, 0.0))) {
+                    if (layer != currentLayer) this.ClearMapSelection(); // Selections are cells of the current layer
                     currentLayer = layer;
                 }
                 layersPanel.LayoutVertBAdded(0.0);
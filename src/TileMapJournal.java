@@ -0,0 +1,598 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/*
+ * Append only journal of map edits, kept next to the map file as `<map>.journal`.
+ *
+ * Instead of writing the whole map every save, the map is diffed against what the map file plus the journal
+ * already hold and only the differences are appended: changed tiles of each layer, the layer list when a layer
+ * was added, removed, moved or renamed, the sheet table when a sheet changed, and the high score. Saving one
+ * painted tile appends a few dozen bytes. Loading the map replays the journal on top of it, and once the journal
+ * gets big the next save writes the whole map again and drops the journal (compaction).
+ *
+ * Layout, integers are TileMapBinary varints and tiles are written with TileMapBinary.WriteTile:
+ *
+ *   header     "WJNL" magic (4 bytes), version (u16), map file length (u64), map file CRC32 (u64)
+ *   records    one per save: payload length (u32), payload CRC32 (u32), payload
+ *   payload    list of operations, each an op byte followed by:
+ *                OP_HIGH_SCORE  high score (zigzag)
+ *                OP_SHEETS      count, per sheet: previous index + 1 (0 = new), name, image path, tile size,
+ *                               has alpha (byte), deleted tiles (TileMapBinary.WriteBitSet), modified tiles (index, tile)
+ *                OP_LAYERS      count, per layer: previous index + 1 (0 = new), name, width, height, is ground layer (byte)
+ *                OP_TILES       layer index, count, per tile: index (delta), present (byte), tile when present
+ *
+ * The header ties the journal to one version of the map file, a journal for another version is ignored.
+ * Version 1 journals wrote deleted tiles as a count and delta encoded indicies, they still replay.
+ * A record cut short by a crash fails its CRC and is dropped along with anything after it.
+ *
+ * Diffing compares snapshots, sheets and layers are matched by the objects they were copied from so moving
+ * or renaming a layer doesn't rewrite its tiles. Append and Reset run on the saver thread, a journal is
+ * only ever used by one save at a time.
+ */
+class TileMapJournal {
+    static final String EXTENSION = ".journal";
+    static final byte[] MAGIC = { 'W', 'J', 'N', 'L' };
+    static final int VERSION = 2;
+
+    // Journals smaller than this, or than a quarter of the map file, aren't compacted
+    static final long COMPACT_MIN_BYTES = 32 * 1024;
+
+    static final int OP_HIGH_SCORE = 1;
+    static final int OP_SHEETS = 2;
+    static final int OP_LAYERS = 3;
+    static final int OP_TILES = 4;
+
+    protected final File mapFile;
+    protected final File file;
+
+    private TileMapSnapshot state = null; // What the map file and the journal hold together, null when unknown
+    private long baseLength = -1, baseModified = -1; // Map file as we last wrote or read it
+    private long baseChecksum = -1; // CRC32 of the map file, -1 until it's needed
+    private int version = VERSION; // Version of the records already in the file, older ones aren't appended to
+
+    public TileMapJournal(String mapPath) {
+        this.mapFile = new File(mapPath);
+        this.file = new File(mapPath + EXTENSION);
+    }
+
+    // CRC32 of a file, read a block at a time
+    static long Checksum(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[64 * 1024];
+        try (FileInputStream in = new FileInputStream(f)) {
+            int n;
+            while ((n = in.read(block)) > 0) {
+                crc.update(block, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    // CRC32 of the map file as it was opened or last written, worked out the first time it's needed: a map
+    // without a journal is never read for it until its first save appends one
+    private long BaseChecksum() throws IOException {
+        if (this.baseChecksum == -1) {
+            this.baseChecksum = Checksum(this.mapFile);
+        }
+        return this.baseChecksum;
+    }
+
+    // Replays the journal next to mapF on top of map, which was just loaded from mapF, and returns the journal
+    // to save into. When the journal can't be read the next save writes the whole map. The map file itself is
+    // only read again to check a journal that's there
+    public static TileMapJournal Open(TileMap map, File mapF) {
+        TileMapJournal journal = new TileMapJournal(mapF.getPath());
+
+        try {
+            journal.baseLength = mapF.length();
+            journal.baseModified = mapF.lastModified();
+
+            if (journal.file.exists()) {
+                int records = journal.Replay(map);
+                System.out.println("[LOG]: Replayed " + records + " saves from `" + journal.file.getPath() + "`.");
+            }
+
+            // A streamed map is never all in memory, so it's not kept here either. Its saves are full writes
+            if (map.streamer == null) {
+                journal.state = new TileMapSnapshot(map);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            new Message("[ERROR] Couldn't replay map journal `" + journal.file.getPath() + "`: " + e.getLocalizedMessage(), true);
+        }
+
+        return journal;
+    }
+
+    // Applies every complete record, returns how many there were
+    private int Replay(TileMap map) throws IOException {
+        byte[] bytes = Files.readAllBytes(this.file.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+
+        if (bytes.length < MAGIC.length + 2 + 16) throw new IOException("Journal header is cut short.");
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get() != MAGIC[i]) throw new IOException("Not a map journal, bad magic.");
+        }
+        int version = buf.getShort() & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Map journal version " + version + " is newer than supported version " + VERSION + ".");
+        }
+
+        this.version = version;
+
+        long length = buf.getLong();
+        long checksum = buf.getLong();
+        if (length != this.baseLength || checksum != this.BaseChecksum()) {
+            // The map file was rewritten after the journal, it already has everything
+            System.err.println("[WARNING]: `" + this.file.getPath() + "` belongs to another version of the map, dropping it.");
+            this.file.delete();
+            return 0;
+        }
+
+        int records = 0;
+        int end = buf.position(); // End of the last good record
+        while (buf.remaining() >= 8) {
+            int size = buf.getInt();
+            long crc = buf.getInt() & 0xFFFFFFFFL;
+            if (size < 0 || size > buf.remaining()) break;
+
+            CRC32 check = new CRC32();
+            check.update(bytes, buf.position(), size);
+            if (check.getValue() != crc) break;
+
+            TileMapJournal.Apply(map, buf.slice(buf.position(), size).order(ByteOrder.BIG_ENDIAN), version);
+            buf.position(buf.position() + size);
+            end = buf.position();
+            records++;
+        }
+
+        // Drop a record cut short by a crash so new ones aren't appended after it
+        if (end < bytes.length) {
+            System.err.println("[WARNING]: Dropping " + (bytes.length - end) + " bytes of incomplete records from `" + this.file.getPath() + "`.");
+            try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+                raf.setLength(end);
+            }
+        }
+
+        return records;
+    }
+
+    private static void Apply(TileMap map, ByteBuffer buf, int version) throws IOException {
+        while (buf.hasRemaining()) {
+            int op = buf.get();
+            if (op == OP_HIGH_SCORE) {
+                map.highScore = TileMapBinary.ReadZigZag(buf);
+            } else if (op == OP_SHEETS) {
+                ApplySheets(map, buf, version);
+            } else if (op == OP_LAYERS) {
+                ApplyLayers(map, buf);
+            } else if (op == OP_TILES) {
+                ApplyTiles(map, buf);
+            } else {
+                throw new IOException("Unknown journal operation " + op + " at byte " + buf.position() + ".");
+            }
+        }
+    }
+
+    private static void ApplySheets(TileMap map, ByteBuffer buf, int version) throws IOException {
+        int count = TileMapBinary.ReadVarInt(buf);
+        ArrayList<SpriteSheet> sheets = new ArrayList<>(count);
+
+        for (int s = 0; s < count; s++) {
+            int previous = TileMapBinary.ReadVarInt(buf) - 1;
+            String name = TileMapBinary.ReadString(buf);
+            String imagePath = TileMapBinary.ReadString(buf);
+            int tileSize = TileMapBinary.ReadVarInt(buf);
+            boolean hasAlpha = buf.get() != 0;
+
+            SpriteSheet sheet = null;
+            if (previous >= 0 && previous < map.ownedSheets.size()) {
+                sheet = map.ownedSheets.get(previous);
+                if (sheet.tileSize != tileSize || !sheet.GetRelativeImagePath().equals(imagePath)) {
+                    sheet = null; // Different image, load it like a new sheet
+                }
+            }
+
+            if (sheet != null) {
+                sheet.UpdateTilesSize(); // Deleted and modified tiles are set again below
+                if (sheet.hasAlpha != hasAlpha) sheet.SetHasAlpha(hasAlpha);
+            } else {
+                sheet = new SpriteSheet();
+                sheet.StartLoading(imagePath, tileSize, hasAlpha);
+                sheet.FinishLoading();
+            }
+            sheet.name = name;
+            sheets.add(sheet);
+
+            BitSet deleted = version >= 2 ? TileMapBinary.ReadBitSet(buf) : TileMapBinary.ReadDeltaIndicies(buf);
+            for (int index = deleted.nextSetBit(0); index >= 0; index = deleted.nextSetBit(index + 1)) {
+                sheet.ClearTileAtIndex(index);
+            }
+
+            int numModified = TileMapBinary.ReadVarInt(buf);
+            for (int m = 0; m < numModified; m++) {
+                int tileIndex = TileMapBinary.ReadVarInt(buf);
+                Tile t = TileMapBinary.ReadTile(buf, sheets);
+                if (tileIndex < 0 || tileIndex >= sheet.tiles.size()) continue;
+
+                t.x = tileIndex % sheet.numTilesX;
+                t.y = tileIndex / sheet.numTilesX;
+                t.textureSheet = sheet;
+                sheet.SetTileAtIndex(tileIndex, t);
+            }
+        }
+
+        // Removed sheets, their tiles were cleared by the same save
+        for (SpriteSheet old : map.ownedSheets) {
+            if (!sheets.contains(old)) old.Release();
+        }
+        map.ownedSheets = sheets;
+    }
+
+    private static void ApplyLayers(TileMap map, ByteBuffer buf) throws IOException {
+        int count = TileMapBinary.ReadVarInt(buf);
+        ArrayList<TileMapLayer> layers = new ArrayList<>(count);
+
+        for (int l = 0; l < count; l++) {
+            int previous = TileMapBinary.ReadVarInt(buf) - 1;
+            String name = TileMapBinary.ReadString(buf);
+            int width = TileMapBinary.ReadVarInt(buf);
+            int height = TileMapBinary.ReadVarInt(buf);
+            boolean isGroundLayer = buf.get() != 0;
+
+            TileMapLayer layer = previous >= 0 && previous < map.layers.size() ? map.layers.get(previous) : new TileMapLayer(map, width, height);
+            layer.name = name;
+            layer.isGroundLayer = isGroundLayer;
+            layers.add(layer);
+        }
+
+        map.layers = layers;
+    }
+
+    private static void ApplyTiles(TileMap map, ByteBuffer buf) throws IOException {
+        int layerIndex = TileMapBinary.ReadVarInt(buf);
+        if (layerIndex < 0 || layerIndex >= map.layers.size()) {
+            throw new IOException("Journal changes tiles of layer " + layerIndex + ", the map has " + map.layers.size() + ".");
+        }
+        TileMapLayer layer = map.layers.get(layerIndex);
+
+        int count = TileMapBinary.ReadVarInt(buf);
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            index += TileMapBinary.ReadVarInt(buf);
+            boolean present = buf.get() != 0;
+            Tile t = present ? TileMapBinary.ReadTile(buf, map.ownedSheets) : null;
+
+            if (index >= layer.width * layer.height) {
+                throw new IOException("Journal tile " + index + " is outside of layer `" + layer.name + "`.");
+            }
+
+            int x = index % layer.width, y = index / layer.width;
+            if (layer.streamed && !layer.LoadCell(x, y)) { // Streams its chunk in on a large map
+                throw new IOException("Journal tile " + index + " of layer `" + layer.name + "` couldn't be loaded.");
+            }
+
+            // Through the palette, so replayed cells don't each get a tile of their own
+            if (present) {
+                layer.SetTile(x, y, t);
+            } else {
+                layer.SetPaletteIndex(x, y, 0);
+            }
+        }
+    }
+
+    // Appends what changed since the last save. Returns the bytes written, 0 when nothing changed,
+    // or -1 when the whole map has to be written instead (see Reset)
+    public synchronized long Append(TileMapSnapshot next) throws IOException {
+        if (this.state == null) return -1;
+
+        // Someone else replaced the map file since
+        if (this.mapFile.length() != this.baseLength || this.mapFile.lastModified() != this.baseModified) return -1;
+
+        // Records can't be mixed with an older version's, rewrite the map and start a new journal
+        if (this.version != VERSION && this.file.length() > 0) return -1;
+
+        byte[] payload = Diff(this.state, next);
+        if (payload == null) return -1;
+        if (payload.length == 0) {
+            this.state = next;
+            return 0;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        if (!this.file.exists() || this.file.length() == 0) {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(this.baseLength);
+            out.writeLong(this.BaseChecksum());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int)crc.getValue());
+        out.write(payload);
+        out.flush();
+
+        try (FileOutputStream fos = new FileOutputStream(this.file, true)) {
+            bytes.writeTo(fos);
+        } catch (IOException e) {
+            this.state = null; // May have left part of a record, write the whole map next time
+            throw e;
+        }
+
+        this.state = next;
+        return bytes.size();
+    }
+
+    // Whether the map file is still the one the journal was started from or last wrote
+    public synchronized boolean HoldsMapFile() {
+        return this.mapFile.length() == this.baseLength && this.mapFile.lastModified() == this.baseModified;
+    }
+
+    // The map now holds what the map file and the journal hold, after TileMap.HotReload applied them in place
+    public synchronized void Adopt(TileMap map) {
+        this.state = map.streamer == null ? new TileMapSnapshot(map) : null;
+    }
+
+    // Whether the journal got big enough that the next save should write the whole map
+    public synchronized boolean NeedsCompaction() {
+        return this.file.length() > Math.max(COMPACT_MIN_BYTES, this.baseLength / 4);
+    }
+
+    // The whole map, state, was just written to the map file, which dropped the journal
+    public synchronized void Reset(TileMapSnapshot state) {
+        this.state = state.streamer == null ? state : null; // A streamed map's saves stay full writes, see Open
+        this.baseLength = this.mapFile.length();
+        this.baseModified = this.mapFile.lastModified();
+        this.baseChecksum = -1;
+        this.version = VERSION;
+    }
+
+    // Changes map in place to match next, which was just loaded from the same file (see TileMap.HotReload).
+    // Sheets are matched by image and layers by name, then the difference is applied like a replayed record.
+    // Returns the size of the changes, 0 when there were none, or -1 when they can't be applied in place
+    static int ApplyInPlace(TileMap map, TileMap next) throws IOException {
+        if (map.streamer != null || next.streamer != null) return -1; // Neither is all in memory
+
+        TileMapSnapshot before = new TileMapSnapshot(map);
+        TileMapSnapshot after = new TileMapSnapshot(next);
+
+        // Diff keeps sheets and layers copied from the same object, pretend next's were copied from map's
+        boolean[] taken = new boolean[before.sheets.size()];
+        for (TileMapSnapshot.Sheet sheet : after.sheets) {
+            sheet.source = null;
+            for (int s = 0; s < before.sheets.size(); s++) {
+                TileMapSnapshot.Sheet match = before.sheets.get(s);
+                if (!taken[s] && match.tileSize == sheet.tileSize && Objects.equals(match.imagePath, sheet.imagePath)) {
+                    taken[s] = true;
+                    sheet.source = match.source;
+                    break;
+                }
+            }
+        }
+
+        taken = new boolean[before.layers.size()];
+        for (TileMapSnapshot.Layer layer : after.layers) {
+            layer.source = null;
+            for (int l = 0; l < before.layers.size(); l++) {
+                TileMapSnapshot.Layer match = before.layers.get(l);
+                if (!taken[l] && Objects.equals(match.name, layer.name)) {
+                    taken[l] = true;
+                    layer.source = match.source;
+                    break;
+                }
+            }
+        }
+
+        byte[] payload = Diff(before, after);
+        if (payload == null) return -1;
+
+        if (payload.length > 0) {
+            Apply(map, ByteBuffer.wrap(payload).order(ByteOrder.BIG_ENDIAN), VERSION);
+        }
+        return payload.length;
+    }
+
+    // Changes map in place back to saved, an earlier snapshot of it (see TileMap.Revert). Returns the size of the
+    // changes, 0 when there were none, or -1 when they can't be applied in place
+    static int Revert(TileMap map, TileMapSnapshot saved) throws IOException {
+        if (map.streamer != null) return -1;
+
+        byte[] payload = Diff(new TileMapSnapshot(map), saved);
+        if (payload == null) return -1;
+
+        if (payload.length > 0) {
+            Apply(map, ByteBuffer.wrap(payload).order(ByteOrder.BIG_ENDIAN), VERSION);
+        }
+        return payload.length;
+    }
+
+    // Encodes the changes from prev to next, empty when there are none and null when they can't be journaled
+    private static byte[] Diff(TileMapSnapshot prev, TileMapSnapshot next) throws IOException {
+        if (prev.width != next.width || prev.height != next.height) return null; // Every layer changes size
+
+        prev.Materialize();
+        next.Materialize();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        if (prev.highScore != next.highScore) {
+            out.writeByte(OP_HIGH_SCORE);
+            TileMapBinary.WriteZigZag(out, next.highScore);
+        }
+
+        // Sheets are few and rarely change, the whole table is written when any of them did
+        IdentityHashMap<SpriteSheet, Integer> prevSheets = new IdentityHashMap<>();
+        for (int s = 0; s < prev.sheets.size(); s++) {
+            prevSheets.put(prev.sheets.get(s).source, s);
+        }
+
+        boolean sheetsChanged = prev.sheets.size() != next.sheets.size();
+        for (int s = 0; s < next.sheets.size() && !sheetsChanged; s++) {
+            sheetsChanged = !SameSheet(prev.sheets.get(s), next.sheets.get(s));
+        }
+
+        if (sheetsChanged) {
+            out.writeByte(OP_SHEETS);
+            TileMapBinary.WriteVarInt(out, next.sheets.size());
+            for (int s = 0; s < next.sheets.size(); s++) {
+                TileMapSnapshot.Sheet sheet = next.sheets.get(s);
+                Integer previous = prevSheets.get(sheet.source);
+
+                TileMapBinary.WriteVarInt(out, previous != null ? previous + 1 : 0);
+                TileMapBinary.WriteString(out, String.valueOf(sheet.name));
+                TileMapBinary.WriteString(out, sheet.imagePath);
+                TileMapBinary.WriteVarInt(out, sheet.tileSize);
+                out.writeByte(sheet.hasAlpha ? 1 : 0);
+
+                TileMapBinary.WriteBitSet(out, sheet.deletedTiles);
+
+                TileMapBinary.WriteVarInt(out, sheet.modifiedTiles.length);
+                for (int m = 0; m < sheet.modifiedTiles.length; m++) {
+                    TileMapBinary.WriteVarInt(out, sheet.modifiedIndicies[m]);
+                    TileMapBinary.WriteTile(out, sheet.modifiedTiles[m], s);
+                }
+            }
+        }
+
+        // Layer list, written when a layer was added, removed, moved or renamed
+        IdentityHashMap<TileMapLayer, Integer> prevLayers = new IdentityHashMap<>();
+        for (int l = 0; l < prev.layers.size(); l++) {
+            prevLayers.put(prev.layers.get(l).source, l);
+        }
+
+        boolean layersChanged = prev.layers.size() != next.layers.size();
+        for (int l = 0; l < next.layers.size() && !layersChanged; l++) {
+            TileMapSnapshot.Layer a = prev.layers.get(l), b = next.layers.get(l);
+            layersChanged = a.source != b.source || !Objects.equals(a.name, b.name) || a.isGroundLayer != b.isGroundLayer
+                            || a.width != b.width || a.height != b.height;
+        }
+
+        // Previous version of each layer, null for new ones (replayed as an empty layer)
+        TileMapSnapshot.Layer[] before = new TileMapSnapshot.Layer[next.layers.size()];
+        for (int l = 0; l < next.layers.size(); l++) {
+            TileMapSnapshot.Layer layer = next.layers.get(l);
+            Integer previous = prevLayers.get(layer.source);
+            if (previous != null && prev.layers.get(previous).width == layer.width && prev.layers.get(previous).height == layer.height) {
+                before[l] = prev.layers.get(previous);
+            }
+        }
+
+        if (layersChanged) {
+            out.writeByte(OP_LAYERS);
+            TileMapBinary.WriteVarInt(out, next.layers.size());
+            for (int l = 0; l < next.layers.size(); l++) {
+                TileMapSnapshot.Layer layer = next.layers.get(l);
+                TileMapBinary.WriteVarInt(out, before[l] != null ? prevLayers.get(layer.source) + 1 : 0);
+                TileMapBinary.WriteString(out, String.valueOf(layer.name));
+                TileMapBinary.WriteVarInt(out, layer.width);
+                TileMapBinary.WriteVarInt(out, layer.height);
+                out.writeByte(layer.isGroundLayer ? 1 : 0);
+            }
+        }
+
+        for (int l = 0; l < next.layers.size(); l++) {
+            WriteTileChanges(out, l, prev, before[l], next, next.layers.get(l));
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Writes an OP_TILES for the tiles of after that differ from before, both are in ascending index order
+    private static void WriteTileChanges(DataOutputStream out, int layerIndex, TileMapSnapshot prev, TileMapSnapshot.Layer before,
+                                         TileMapSnapshot next, TileMapSnapshot.Layer after) throws IOException {
+        int numBefore = before != null ? before.tiles.length : 0;
+
+        int[] indicies = new int[16];
+        int[] from = new int[16]; // Index into after.tiles, -1 for a cleared tile
+        int count = 0;
+
+        int a = 0, b = 0;
+        while (a < numBefore || b < after.tiles.length) {
+            int ia = a < numBefore ? before.indicies[a] : Integer.MAX_VALUE;
+            int ib = b < after.tiles.length ? after.indicies[b] : Integer.MAX_VALUE;
+
+            int index, source;
+            if (ia < ib) {
+                index = ia;
+                source = -1;
+                a++;
+            } else if (ib < ia) {
+                index = ib;
+                source = b;
+                b++;
+            } else {
+                boolean same = SameTile(before.tiles[a], after.tiles[b])
+                               && SheetSource(prev, before.sheetIndicies[a]) == SheetSource(next, after.sheetIndicies[b]);
+                index = ib;
+                source = b;
+                a++;
+                b++;
+                if (same) continue;
+            }
+
+            if (count == indicies.length) {
+                indicies = Arrays.copyOf(indicies, count * 2);
+                from = Arrays.copyOf(from, count * 2);
+            }
+            indicies[count] = index;
+            from[count++] = source;
+        }
+
+        if (count == 0) return;
+
+        out.writeByte(OP_TILES);
+        TileMapBinary.WriteVarInt(out, layerIndex);
+        TileMapBinary.WriteVarInt(out, count);
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            TileMapBinary.WriteVarInt(out, indicies[i] - last);
+            last = indicies[i];
+
+            out.writeByte(from[i] != -1 ? 1 : 0);
+            if (from[i] != -1) {
+                TileMapBinary.WriteTile(out, after.tiles[from[i]], after.sheetIndicies[from[i]]);
+            }
+        }
+    }
+
+    private static SpriteSheet SheetSource(TileMapSnapshot map, int sheetIndex) {
+        return sheetIndex >= 0 && sheetIndex < map.sheets.size() ? map.sheets.get(sheetIndex).source : null;
+    }
+
+    private static boolean SameSheet(TileMapSnapshot.Sheet a, TileMapSnapshot.Sheet b) {
+        if (a.source != b.source || !Objects.equals(a.name, b.name) || !Objects.equals(a.imagePath, b.imagePath)
+            || a.tileSize != b.tileSize || a.hasAlpha != b.hasAlpha
+            || !a.deletedTiles.equals(b.deletedTiles) || !Arrays.equals(a.modifiedIndicies, b.modifiedIndicies)) {
+            return false;
+        }
+
+        for (int i = 0; i < a.modifiedTiles.length; i++) {
+            if (!SameTile(a.modifiedTiles[i], b.modifiedTiles[i])) return false;
+        }
+        return true;
+    }
+
+    // Whether two tiles have the same saved properties, their sheets are compared by the caller
+    static boolean SameTile(Tile a, Tile b) {
+        return a.textureIndex == b.textureIndex && a.w == b.w && a.h == b.h && a.collidable == b.collidable
+               && a.collidorPos.x == b.collidorPos.x && a.collidorPos.y == b.collidorPos.y
+               && a.collidorSize.x == b.collidorSize.x && a.collidorSize.y == b.collidorSize.y
+               && a.animated == b.animated && a.animFPS == b.animFPS
+               && a.animNumFramesX == b.animNumFramesX && a.animNumFramesY == b.animNumFramesY
+               && a.tags.equals(b.tags);
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+
+/*
+ * Tokenizer for the text map format (.wmap), `key=value` lines grouped into `__SECTION__ ... END` blocks.
+ *
+ * The whole file is decoded into one char[] up front and lines are walked in place: keys are compared and
+ * integers/numbers parsed straight out of the array, so the only strings created are values that are kept
+ * (names, paths, tags). All parser state lives in the reader, so several maps can load at the same time.
+ *
+ * Read methods return null when the value is missing or malformed. The first problem is kept in `error`
+ * along with its line number, callers check it after each block.
+ */
+class TileMapReader {
+    private final char[] text;
+    private final int length;
+
+    private int position = 0; // Start of the next unread line
+    private int lineNumber = 0; // 1 based number of the current line
+    private int lineStart = 0, lineEnd = 0; // Bounds of the current line, without the line break
+
+    private boolean gotEnd = false; // Hit the END of the current block while reading a value
+    protected String error = null; // First error hit, with the line it was on
+
+    // Largest powers of ten a double holds exactly, for the fast number path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    public TileMapReader(char[] text, int length) {
+        this.text = text;
+        this.length = length;
+    }
+
+    // Reads and decodes the whole file
+    public static TileMapReader FromFile(File f) throws IOException {
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+        return new TileMapReader(chars.array(), chars.limit());
+    }
+
+    // Records an error if there isn't one already, later ones are usually caused by the first
+    private void Error(String message) {
+        if (this.error == null) {
+            this.error = "Line " + this.lineNumber + ": " + message;
+        }
+    }
+
+    private String CurrentLine() {
+        return new String(this.text, this.lineStart, this.lineEnd - this.lineStart);
+    }
+
+    // Moves to the next line, returns false at the end of the file
+    private boolean NextRawLine() {
+        if (this.position >= this.length) return false;
+
+        int end = this.position;
+        while (end < this.length && this.text[end] != '\n') {
+            end++;
+        }
+
+        this.lineStart = this.position;
+        this.lineEnd = (end > this.lineStart && this.text[end - 1] == '\r') ? end - 1 : end;
+        this.position = end + 1;
+        this.lineNumber++;
+        return true;
+    }
+
+    // Moves to the next line that isn't blank or a `__SECTION__` header
+    private boolean NextLine() {
+        while (this.NextRawLine()) {
+            boolean blank = true;
+            for (int i = this.lineStart; i < this.lineEnd; i++) {
+                if (!Character.isWhitespace(this.text[i])) {
+                    blank = false;
+                    break;
+                }
+            }
+            if (blank) continue;
+
+            boolean header = this.lineEnd - this.lineStart >= 2 && this.text[this.lineStart] == '_' && this.text[this.lineStart + 1] == '_';
+            if (header) continue;
+
+            return true;
+        }
+        return false;
+    }
+
+    private boolean LineEquals(String s) {
+        return this.RangeEquals(this.lineStart, this.lineEnd, s);
+    }
+
+    private boolean RangeEquals(int start, int end, String s) {
+        if (end - start != s.length()) return false;
+
+        for (int i = 0; i < s.length(); i++) {
+            if (this.text[start + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int FindEquals() {
+        for (int i = this.lineStart; i < this.lineEnd; i++) {
+            if (this.text[i] == '=') return i;
+        }
+        return -1;
+    }
+
+    // Moves to the next statement and returns where its value starts, or -1 when it's not `expectedKey`.
+    // With allowEnd an END line finishes the block instead of being an error.
+    private int NextValue(String expectedKey, boolean allowEnd) {
+        if (this.gotEnd) return -1;
+
+        if (!this.NextLine()) {
+            this.Error("Unexpected EOF, expected `" + expectedKey + "`.");
+            return -1;
+        }
+
+        if (allowEnd && this.LineEquals("END")) {
+            this.gotEnd = true;
+            return -1;
+        }
+
+        int equals = this.FindEquals();
+        if (equals == -1) {
+            this.Error("Incomplete statement, expected `" + expectedKey + "=`: `" + this.CurrentLine() + "`");
+            return -1;
+        }
+
+        if (!this.RangeEquals(this.lineStart, equals, expectedKey)) {
+            this.Error("Expected `" + expectedKey + "` got: `" + new String(this.text, this.lineStart, equals - this.lineStart) + "`");
+            return -1;
+        }
+
+        return equals + 1;
+    }
+
+    // Value as a string, any further '=' are dropped like the old split based loader did
+    private String ValueString(int start) {
+        for (int i = start; i < this.lineEnd; i++) {
+            if (this.text[i] == '=') {
+                StringBuilder sb = new StringBuilder(this.lineEnd - start);
+                for (int j = start; j < this.lineEnd; j++) {
+                    if (this.text[j] != '=') sb.append(this.text[j]);
+                }
+                return sb.toString();
+            }
+        }
+        return new String(this.text, start, this.lineEnd - start);
+    }
+
+    // Parses an int in [start, end), or returns null
+    private Integer ParseInt(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (this.text[i] == '-' || this.text[i] == '+')) {
+            negative = this.text[i] == '-';
+            i++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            char c = this.text[i];
+            if (c == '=') continue;
+            if (c < '0' || c > '9') return null;
+
+            value = value * 10 + (c - '0');
+            digits++;
+            if (value > (long)Integer.MAX_VALUE + 1) return null;
+        }
+
+        if (digits == 0) return null;
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return null;
+        return (int)value;
+    }
+
+    // Reads `expectedKey=<integer>`
+    public Integer ReadInt(String expectedKey) {
+        int start = this.NextValue(expectedKey, false);
+        if (start == -1) return null;
+
+        Integer value = this.ParseInt(start, this.lineEnd);
+        if (value == null) {
+            if (start == this.lineEnd) {
+                this.Error("Incomplete statement, missing value for `" + expectedKey + "`.");
+            } else {
+                this.Error("Expected integer got: `" + this.ValueString(start) + "`");
+            }
+        }
+        return value;
+    }
+
+    // Reads `expectedKey=<text>`, returns null when the block ended instead
+    public String ReadString(String expectedKey) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return null;
+
+        return this.ValueString(start);
+    }
+
+    // Reads `expectedKey=true|false`, anything but `true` is false. Returns null when the block ended instead
+    public Boolean ReadBoolean(String expectedKey) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return null;
+
+        return this.RangeEquals(start, this.lineEnd, "true");
+    }
+
+    // Reads `expectedKey=<number>`, returns null when the block ended or it isn't a number
+    public Double ReadNumber(String expectedKey) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return null;
+
+        // Fast path for plain decimals like `-12.5`: up to 15 digits and a power of ten are both exact
+        // in a double, so one division gives the same correctly rounded result as Double.parseDouble
+        int i = start;
+        boolean negative = false;
+        if (i < this.lineEnd && (this.text[i] == '-' || this.text[i] == '+')) {
+            negative = this.text[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0, fractionDigits = 0;
+        boolean seenPoint = false, seenDigit = false, simple = true;
+        for (; i < this.lineEnd; i++) {
+            char c = this.text[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) digits++;
+                if (seenPoint) fractionDigits++;
+                seenDigit = true;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+
+        if (simple && seenDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        // Exponents, NaN and long mantissas
+        String str = this.ValueString(start);
+        try {
+            return Double.parseDouble(str);
+        } catch (NumberFormatException e) {
+            this.Error("Expected number got: `" + str + "`");
+            return null;
+        }
+    }
+
+    // Reads `expectedKey=a,b,c,` into out (trailing empty entries are dropped), returns false when the block ended instead
+    public boolean ReadStringList(String expectedKey, ArrayList<String> out) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return false;
+
+        // Drop the trailing commas, like String.split does
+        int end = this.lineEnd;
+        while (end > start && this.text[end - 1] == ',') {
+            end--;
+        }
+        if (end == start) return true;
+
+        int itemStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || this.text[i] == ',') {
+                out.add(new String(this.text, itemStart, i - itemStart));
+                itemStart = i + 1;
+            }
+        }
+        return true;
+    }
+
+    // Reads `expectedKey=1,2,3,`, entries that aren't integers are reported and skipped. Returns null when the block ended instead
+    public int[] ReadIntList(String expectedKey) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return null;
+
+        int[] values = new int[16];
+        int count = 0;
+
+        int itemStart = start;
+        for (int i = start; i <= this.lineEnd; i++) {
+            if (i == this.lineEnd || this.text[i] == ',') {
+                if (i > itemStart) {
+                    Integer value = this.ParseInt(itemStart, i);
+                    if (value == null) {
+                        System.err.println("[ERROR]: Line " + this.lineNumber + ": Expected index got: " + new String(this.text, itemStart, i - itemStart));
+                    } else {
+                        if (count == values.length) values = Arrays.copyOf(values, count * 2);
+                        values[count++] = value;
+                    }
+                }
+                itemStart = i + 1;
+            }
+        }
+
+        return Arrays.copyOf(values, count);
+    }
+
+    // Reads `expectedKey=<base64>`, the bytes of a BitSet.toByteArray. Returns null when the block ended or it isn't base64
+    public BitSet ReadBitSet(String expectedKey) {
+        int start = this.NextValue(expectedKey, true);
+        if (start == -1) return null;
+
+        try {
+            return BitSet.valueOf(Base64.getDecoder().decode(new String(this.text, start, this.lineEnd - start)));
+        } catch (IllegalArgumentException e) {
+            this.Error("Expected base64 got: `" + new String(this.text, start, this.lineEnd - start) + "`");
+            return null;
+        }
+    }
+
+    // Whether the next statement is `key=...`, without reading it. For keys that changed between versions
+    public boolean NextKeyIs(String key) {
+        int position = this.position, lineNumber = this.lineNumber, lineStart = this.lineStart, lineEnd = this.lineEnd;
+
+        boolean is = false;
+        if (!this.gotEnd && this.NextLine()) {
+            int equals = this.FindEquals();
+            is = equals != -1 && this.RangeEquals(this.lineStart, equals, key);
+        }
+
+        this.position = position;
+        this.lineNumber = lineNumber;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        return is;
+    }
+
+    // Skips to the END of the current block
+    public void GoToEnd() {
+        if (this.gotEnd) {
+            this.gotEnd = false;
+            return;
+        }
+
+        while (this.NextRawLine()) {
+            if (this.LineEquals("END")) return;
+        }
+        this.Error("Unexpected EOF, expecting END.");
+    }
+}
@@ -0,0 +1,274 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/*
+ * Copy of everything TileMap.Save writes, taken on the game thread so the map can be written out on another
+ * thread while the game keeps editing it.
+ *
+ * Taking one copies as little as it can: each layer's chunks are shared with the layer until it changes them
+ * (see TileMapLayer.ShareCells), the palette entries are never changed so only the list of them is copied, and a
+ * sheet's modified tiles are only copied again when the sheet changed. Cells' own tiles are the only tiles copied,
+ * there are few of them. Materialize turns that into the tile lists the writers read, on the saver thread, along
+ * with reading the chunks of a streamed map that weren't loaded.
+ */
+class TileMapSnapshot {
+    int width, height;
+    int highScore;
+    ArrayList<Sheet> sheets = new ArrayList<>();
+    ArrayList<Layer> layers = new ArrayList<>();
+
+    static class Sheet {
+        SpriteSheet source; // Sheet this was copied from, only compared by TileMapJournal, never read off the game thread
+        String name;
+        String imagePath; // Relative to the working directory
+        int tileSize;
+        boolean hasAlpha;
+        BitSet deletedTiles; // Indicies of the deleted tiles
+        int[] modifiedIndicies; // Sheet tile index of each modified tile
+        Tile[] modifiedTiles;
+        int version; // SpriteSheet.version the tiles were copied at, the arrays are shared with later snapshots until it changes
+
+        // Same layout as the old SpriteSheet.SaveToFile, except deleted tiles are a base64 bitset instead of a list
+        void Write(Writer w, int sheetIndex) throws IOException {
+            w.write("__SPRITE SHEET__\n");
+            w.write("name=" + this.name + "\n");
+            w.write("image_path=" + this.imagePath + "\n");
+            w.write("tile_size=" + this.tileSize + "\n");
+
+            // Write deleted tiles
+            w.write("deleted_tiles=" + Base64.getEncoder().encodeToString(this.deletedTiles.toByteArray()) + "\n");
+
+            // Save each modified tile
+            w.write("num_modified_tiles=" + this.modifiedTiles.length + "\n");
+            for (Tile t : this.modifiedTiles) {
+                t.SaveToFile(w, sheetIndex);
+            }
+
+            // Save alpha transparency setting
+            w.write("has_alpha=" + this.hasAlpha + "\n");
+            w.write("END\n");
+        }
+    }
+
+    static class Layer {
+        TileMapLayer source; // Layer this was copied from, only compared like Sheet.source
+        String name;
+        int width, height;
+        boolean isGroundLayer;
+        int[] indicies; // Index in the layer of each non-empty tile, null until Materialize
+        Tile[] tiles;
+        int[] sheetIndicies; // Index in the map's sheets of each tile's sheet, -1 for none
+
+        // What the layer held when the snapshot was taken, until Materialize
+        private int chunksX, chunksY;
+        private int[][] cells; // Shared with the layer, null for chunks that were streamed out
+        private Tile[][] own; // Copies of the cells' own tiles
+
+        // Same layout as the old TileMapLayer.SaveToFile
+        void Write(Writer w) throws IOException {
+            w.write("__LAYER__\n");
+            w.write("name=" + this.name + "\n");
+            w.write("width=" + this.width + "\n");
+            w.write("height=" + this.height + "\n");
+
+            w.write("num_tiles=" + this.tiles.length + "\n");
+            for (int i = 0; i < this.tiles.length; i++) {
+                this.tiles[i].SaveToFile(w, this.sheetIndicies[i]);
+            }
+
+            w.write("is_ground_layer=" + this.isGroundLayer + "\n");
+            w.write("END\n");
+        }
+    }
+
+    private Tile[] palette; // The map's palette entries by index
+    TileMapStreamer streamer; // Where the chunks that weren't loaded are read from, null when none are streamed
+    private int[] streamIndicies; // The streamer's palette index of each prototype in the file
+    private IdentityHashMap<SpriteSheet, Integer> sheetIndicies = new IdentityHashMap<>();
+
+    // Takes the snapshot, must be called on the thread that edits the map
+    public TileMapSnapshot(TileMap map) {
+        this.width = map.width;
+        this.height = map.height;
+        this.highScore = map.highScore;
+
+        for (SpriteSheet sheet : map.ownedSheets) {
+            Sheet s = new Sheet();
+            s.source = sheet;
+            s.name = sheet.name;
+            s.imagePath = sheet.GetRelativeImagePath();
+            s.tileSize = sheet.tileSize;
+            s.hasAlpha = sheet.hasAlpha;
+
+            if (sheet.saved == null || sheet.saved.version != sheet.version) {
+                sheet.saved = CopyTiles(sheet);
+            }
+            s.version = sheet.version;
+            s.deletedTiles = sheet.saved.deletedTiles;
+            s.modifiedIndicies = sheet.saved.modifiedIndicies;
+            s.modifiedTiles = sheet.saved.modifiedTiles;
+
+            this.sheetIndicies.put(sheet, this.sheets.size());
+            this.sheets.add(s);
+        }
+
+        this.palette = map.palette.Entries();
+        if (map.streamer != null) {
+            this.streamer = map.streamer;
+            this.streamIndicies = map.streamer.PaletteIndicies();
+        }
+
+        for (TileMapLayer layer : map.layers) {
+            Layer l = new Layer();
+            l.source = layer;
+            l.name = layer.name;
+            l.width = layer.width;
+            l.height = layer.height;
+            l.isGroundLayer = layer.isGroundLayer;
+
+            l.chunksX = layer.chunksX;
+            l.chunksY = layer.chunksY;
+            l.cells = layer.ShareCells();
+            l.own = new Tile[layer.tiles.length][];
+            for (int c = 0; c < l.own.length; c++) {
+                Tile[] own = layer.tiles[c];
+                l.own[c] = own.length == 0 ? TileMapLayer.NO_TILES : new Tile[own.length];
+                for (int i = 0; i < own.length; i++) {
+                    l.own[c][i] = own[i].Copy();
+                }
+            }
+
+            this.layers.add(l);
+        }
+    }
+
+    // Deleted and modified tiles of sheet, copied so the editor can keep changing the sheet's
+    private static Sheet CopyTiles(SpriteSheet sheet) {
+        Sheet s = new Sheet();
+        s.version = sheet.version;
+        s.deletedTiles = (BitSet)sheet.deletedTiles.clone();
+
+        int numModified = 0;
+        for (Tile t : sheet.tiles) {
+            if (t != null && t.isModified()) {
+                numModified++;
+            }
+        }
+
+        s.modifiedIndicies = new int[numModified];
+        s.modifiedTiles = new Tile[numModified];
+
+        int m = 0;
+        for (int index = 0; index < sheet.tiles.size(); index++) {
+            Tile t = sheet.tiles.get(index);
+            if (t != null && t.isModified()) {
+                s.modifiedIndicies[m] = index;
+                s.modifiedTiles[m++] = t.Copy();
+            }
+        }
+        return s;
+    }
+
+    // Fills in the layers' tile lists, reading the chunks that were streamed out from the map file. Called by
+    // whatever reads them first, on any thread
+    public synchronized void Materialize() {
+        for (Layer l : this.layers) {
+            if (l.tiles == null) {
+                this.Materialize(l);
+            }
+        }
+    }
+
+    private void Materialize(Layer l) {
+        l.indicies = new int[64];
+        l.tiles = new Tile[64];
+        l.sheetIndicies = new int[64];
+
+        // A row of chunks at a time, so the indicies come out in layer order like the writers expect
+        int n = 0;
+        for (int cy = 0; cy < l.chunksY; cy++) {
+            int y0 = cy * TileMapLayer.CHUNK_SIZE;
+            int rows = Math.min(TileMapLayer.CHUNK_SIZE, l.height - y0);
+
+            Tile[][] row = new Tile[l.chunksX][];
+            for (int cx = 0; cx < l.chunksX; cx++) {
+                int c = cy * l.chunksX + cx;
+                int[] chunk = l.cells[c];
+                if (chunk == null && this.streamer != null) {
+                    chunk = this.streamer.Read(l.source, c, this.streamIndicies);
+                }
+                row[cx] = TileMapLayer.ChunkView(chunk, l.own[c], this.palette);
+            }
+
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < l.width; x++) {
+                    Tile[] chunk = row[x / TileMapLayer.CHUNK_SIZE];
+                    if (chunk == null) continue;
+
+                    Tile t = chunk[y * TileMapLayer.CHUNK_SIZE + (x % TileMapLayer.CHUNK_SIZE)];
+                    if (t == null || t.IsNull()) continue;
+
+                    if (n == l.tiles.length) {
+                        l.indicies = Arrays.copyOf(l.indicies, n * 2);
+                        l.tiles = Arrays.copyOf(l.tiles, n * 2);
+                        l.sheetIndicies = Arrays.copyOf(l.sheetIndicies, n * 2);
+                    }
+
+                    // Palette entries don't have the cell's x and y, the copy gets them
+                    Tile copy = new Tile(x, y0 + y, null, -1);
+                    copy.Set(t);
+
+                    Integer sheetIndex = t.textureSheet != null ? this.sheetIndicies.get(t.textureSheet) : null;
+                    if (t.textureSheet != null && sheetIndex == null) {
+                        System.err.println("[ERROR]: Tile's sheet isn't owned by the map: " + t);
+                    }
+
+                    l.indicies[n] = (y0 + y) * l.width + x;
+                    l.tiles[n] = copy;
+                    l.sheetIndicies[n] = sheetIndex != null ? sheetIndex : -1;
+                    n++;
+                }
+            }
+        }
+
+        l.indicies = Arrays.copyOf(l.indicies, n);
+        l.tiles = Arrays.copyOf(l.tiles, n);
+        l.sheetIndicies = Arrays.copyOf(l.sheetIndicies, n);
+
+        // Nothing else needs what the layer held
+        l.cells = null;
+        l.own = null;
+    }
+
+    // Writes the snapshot in the text format
+    public void WriteText(Writer w) throws IOException {
+        this.Materialize();
+
+        // Write general map information
+        w.write("__MAP__\n");
+        w.write("width=" + this.width + "\n");
+        w.write("height=" + this.height + "\n");
+
+        // Save owned sprite sheets
+        w.write("num_owned_sheets=" + this.sheets.size() + "\n");
+        for (int i = 0; i < this.sheets.size(); i++) {
+            this.sheets.get(i).Write(w, i);
+        }
+
+        // Save layers
+        w.write("num_layers=" + this.layers.size() + "\n");
+        for (Layer l : this.layers) {
+            l.Write(w);
+        }
+
+        // Save high score
+        w.write("high_score=" + this.highScore + "\n");
+
+        // End of file marker
+        w.write("END\n");
+    }
+}
@@ -0,0 +1,442 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Keeps only part of a large binary map in memory (see TileMapBinary, TileMap.streamingThreshold).
+ *
+ * The map file stays open and each streamed layer remembers where its chunks are in it. Every frame Update
+ * asks for the chunks around the camera and around every humanoid: their runs are read on streamer threads
+ * and put in the layers on the game thread, a few chunks a frame. Chunks under a humanoid are loaded right
+ * away so nothing stands on (or walks through) ground that isn't there yet.
+ *
+ * Once more than maxLoadedChunks are loaded, the ones that have gone longest without being asked for are
+ * dropped. Edited chunks are never dropped, the file doesn't have the edits until the map is saved.
+ *
+ * Saving the map over its own file goes through Replace, which keeps the file the chunks are read from under
+ * another name (see STREAMING_EXTENSION). Nothing else holds the file open, so it can be replaced on Windows too.
+ */
+class TileMapStreamer {
+    static int maxLoadedChunks = 256; // Chunks of all layers kept loaded before far away ones are dropped
+    static int cameraRadius = 2; // Chunks around the camera's chunk to load
+    static int humanoidRadius = 1; // Chunks around each humanoid's chunk to load
+    static int installsPerFrame = 4; // Decoded chunks put in their layers per frame, the rest wait for the next one
+
+    // The map file as it was loaded, once a save replaced it (see Replace)
+    static final String STREAMING_EXTENSION = ".streaming";
+
+    private final TileMap map;
+    private File file; // Where the chunks are read from
+    private boolean fileIsCopy = false; // file is the STREAMING_EXTENSION name, deleted by Close
+    private FileChannel channel; // Read at the chunks' offsets by any thread, null once closed
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Reads hold it shared, Replace and Close exclusively
+    private final TilePalette palette;
+    private final int[] paletteIndicies; // Palette index of each prototype in the file
+
+    // Where each streamed layer's chunks are in the file, and what state they're in
+    private static class LayerChunks {
+        int[] offsets, lengths;
+        boolean[] requested; // Being read on a streamer thread
+        long[] lastWanted; // Frame the chunk was last asked for
+    }
+    private final IdentityHashMap<TileMapLayer, LayerChunks> layers = new IdentityHashMap<>();
+
+    // A chunk read by a streamer thread, waiting to be put in its layer
+    private static class Decoded {
+        TileMapLayer layer;
+        int chunk;
+        int[] cells;
+    }
+    private final ConcurrentLinkedQueue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+
+    private long frame = 0;
+    private int loadedChunks = 0;
+
+    // Counters for logging and benchmarks
+    int chunksLoaded = 0;
+    int chunksUnloaded = 0;
+
+    private static ExecutorService workers = null; // Shared by every streamed map
+
+    private static synchronized ExecutorService GetWorkers() {
+        if (workers == null) {
+            // Reading runs is cheap, one thread per core keeps up with a camera moving across the map
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "Chunk Streamer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return workers;
+    }
+
+    public TileMapStreamer(TileMap map, File file, TilePalette palette, int[] paletteIndicies) throws IOException {
+        this.map = map;
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.palette = palette;
+        this.paletteIndicies = paletteIndicies.clone(); // ForgetSheet clears entries
+    }
+
+    // Registers a streamed layer's chunk index, offsets are from the start of the file
+    public void AddLayer(TileMapLayer layer, int[] offsets, int[] lengths) {
+        LayerChunks lc = new LayerChunks();
+        lc.offsets = offsets;
+        lc.lengths = lengths;
+        lc.requested = new boolean[offsets.length];
+        lc.lastWanted = new long[offsets.length];
+        this.layers.put(layer, lc);
+    }
+
+    // Loads what the camera and humanoids need, installs chunks that finished reading and drops far away
+    // chunks when over budget. Called once a frame on the game thread, cameraWorld is the centre of the screen
+    public void Update(Vector2 cameraWorld, Iterable<Humanoid> humanoids) {
+        this.frame++;
+
+        for (int i = 0; i < installsPerFrame; i++) {
+            Decoded d = this.decoded.poll();
+            if (d == null) break;
+
+            LayerChunks lc = this.layers.get(d.layer);
+            lc.requested[d.chunk] = false;
+            this.Install(d.layer, d.chunk, d.cells);
+        }
+
+        for (TileMapLayer layer : this.map.layers) {
+            LayerChunks lc = this.layers.get(layer);
+            if (lc == null || !layer.streamed) continue;
+
+            this.Want(layer, lc, cameraWorld, cameraRadius, false);
+            for (Humanoid h : humanoids) {
+                Vector2 centre = h.position.add(new Vector2(h.size.x / 2.0, h.size.y / 2.0));
+                this.Want(layer, lc, centre, humanoidRadius, false);
+                this.Want(layer, lc, centre, 0, true);
+            }
+        }
+
+        if (this.loadedChunks > maxLoadedChunks) {
+            this.Unload();
+        }
+    }
+
+    // Marks the chunks within radius of a world position as wanted this frame, loading the ones that aren't.
+    // With now they're loaded before returning
+    private void Want(TileMapLayer layer, LayerChunks lc, Vector2 world, int radius, boolean now) {
+        double chunkWorldSize = TileMapLayer.CHUNK_SIZE * TileMap.RENDERSCALE;
+        int ccx = (int)Math.floor((world.x - this.map.renderOffset.x) / chunkWorldSize);
+        int ccy = (int)Math.floor((world.y - this.map.renderOffset.y) / chunkWorldSize);
+
+        for (int cy = Math.max(0, ccy - radius); cy <= Math.min(layer.chunksY - 1, ccy + radius); cy++) {
+            for (int cx = Math.max(0, ccx - radius); cx <= Math.min(layer.chunksX - 1, ccx + radius); cx++) {
+                int c = cy * layer.chunksX + cx;
+                lc.lastWanted[c] = this.frame;
+
+                if (layer.cells[c] != null) continue;
+                if (now) {
+                    this.LoadNow(layer, cx, cy);
+                } else if (!lc.requested[c]) {
+                    this.Request(layer, lc, c);
+                }
+            }
+        }
+    }
+
+    // Queues a chunk to be read on a streamer thread
+    private void Request(TileMapLayer layer, LayerChunks lc, int c) {
+        lc.requested[c] = true;
+
+        int numPrototypes = this.paletteIndicies.length;
+        GetWorkers().submit(() -> {
+            Decoded d = new Decoded();
+            d.layer = layer;
+            d.chunk = c;
+            d.cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+            try {
+                this.ReadCells(layer, lc, c, numPrototypes, d.cells);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[ERROR]: Couldn't stream in chunk " + c + " of layer `" + layer.name + "`: " + e.getMessage());
+                d.cells = null; // Left empty
+            }
+            this.decoded.add(d);
+        });
+    }
+
+    // Reads chunk c's runs from the file into cells, see TileMapBinary.ReadChunk. Any thread
+    private void ReadCells(TileMapLayer layer, LayerChunks lc, int c, int numPrototypes, int[] cells) throws IOException {
+        if (lc.lengths[c] == 0) {
+            Arrays.fill(cells, 0);
+            return;
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(lc.lengths[c]).order(ByteOrder.BIG_ENDIAN);
+        this.lock.readLock().lock();
+        try {
+            if (this.channel == null) throw new IOException("The map file was closed.");
+
+            while (bytes.hasRemaining()) {
+                if (this.channel.read(bytes, lc.offsets[c] + bytes.position()) < 0) {
+                    throw new EOFException("Chunk runs past the end of `" + this.file.getPath() + "`.");
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        bytes.flip();
+        TileMapBinary.ReadChunk(bytes, layer, c % layer.chunksX, c / layer.chunksX, numPrototypes, cells);
+    }
+
+    // Whether chunks are read from f
+    public boolean Reads(File f) {
+        this.lock.readLock().lock();
+        try {
+            return this.channel != null && this.file.getAbsoluteFile().toPath().normalize().equals(f.getAbsoluteFile().toPath().normalize());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // Puts temp in place of the map file chunks are read from, for saving the map over it (see
+    // TileMap.WriteSnapshot). The chunks that aren't loaded are still the ones in that file, so it's kept under the
+    // STREAMING_EXTENSION name (a hard link, or a copy where there are none) and read from there. It's closed
+    // while it's renamed, Windows can't replace a file that's open
+    public void Replace(File temp) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            File mapF = this.file;
+            File copy = new File(mapF.getPath() + STREAMING_EXTENSION);
+            if (this.channel == null) {
+                TileMap.MoveOver(temp, mapF); // Closed, nothing to keep
+                return;
+            }
+
+            this.channel.close();
+            this.channel = null;
+            try {
+                Files.deleteIfExists(copy.toPath());
+                try {
+                    Files.createLink(copy.toPath(), mapF.toPath());
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(mapF.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                try {
+                    TileMap.MoveOver(temp, mapF);
+                } catch (IOException e) {
+                    copy.delete(); // Still reading mapF
+                    throw e;
+                }
+
+                this.file = copy;
+                this.fileIsCopy = true;
+                copy.deleteOnExit(); // In case the map is never closed
+            } finally {
+                this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // Closes the file, for when the map is dropped or loaded again. Chunks that weren't read stay empty
+    public void Close() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.channel == null) return;
+
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                System.err.println("[ERROR]: Closing `" + this.file.getPath() + "`: " + e.getMessage());
+            }
+            this.channel = null;
+
+            if (this.fileIsCopy) {
+                this.file.delete();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // Puts the chunk's cells in the layer, unless it was loaded some other way in the meantime
+    private void Install(TileMapLayer layer, int c, int[] cells) {
+        if (!layer.streamed || layer.cells[c] != null) return; // Loaded already, or resized into a regular layer
+
+        layer.cells[c] = cells != null ? TileMapBinary.FillChunk(cells, this.paletteIndicies) : TileMapLayer.EMPTY_CELLS;
+        this.loadedChunks++;
+        this.chunksLoaded++;
+        layer.ChunkChanged(c, true);
+    }
+
+    // Loads a chunk on the calling (game) thread if it isn't already
+    public void LoadNow(TileMapLayer layer, int cx, int cy) {
+        LayerChunks lc = this.layers.get(layer);
+        if (lc == null) return;
+
+        int c = cy * layer.chunksX + cx;
+        if (layer.cells[c] != null) return;
+
+        int[] cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+        try {
+            this.ReadCells(layer, lc, c, this.paletteIndicies.length, cells);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ERROR]: Couldn't stream in chunk " + c + " of layer `" + layer.name + "`: " + e.getMessage());
+            cells = null;
+        }
+        this.Install(layer, c, cells);
+    }
+
+    // Palette index of each prototype in the file as of now, for TileMapSnapshot to Read with later
+    public int[] PaletteIndicies() {
+        return this.paletteIndicies.clone();
+    }
+
+    // Chunk c's cells as they are in the file, mapped to the palette with paletteIndicies (from PaletteIndicies).
+    // For saving chunks that aren't loaded, safe to call from the saver thread. Null when it's empty
+    public int[] Read(TileMapLayer layer, int c, int[] paletteIndicies) {
+        LayerChunks lc = this.layers.get(layer);
+        if (lc == null || lc.lengths[c] == 0) return null;
+
+        int[] cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+        try {
+            this.ReadCells(layer, lc, c, paletteIndicies.length, cells);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ERROR]: Couldn't read chunk " + c + " of layer `" + layer.name + "`: " + e.getMessage());
+            return null;
+        }
+
+        return TileMapBinary.FillChunk(cells, paletteIndicies);
+    }
+
+    // Loads every chunk that has a tile tagged with tag, so lookups by tag (spawn points) find them
+    public void LoadTagged(String tag) {
+        boolean any = false;
+        boolean[] tagged = new boolean[this.paletteIndicies.length + 1]; // By prototype index + 1, like the cells
+        for (int p = 0; p < this.paletteIndicies.length; p++) {
+            Tile entry = this.palette.Get(this.paletteIndicies[p]);
+            if (entry != null && entry.tags.contains(tag)) {
+                tagged[p + 1] = true;
+                any = true;
+            }
+        }
+        if (!any) return;
+
+        int[] cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+        for (TileMapLayer layer : this.map.layers) {
+            LayerChunks lc = this.layers.get(layer);
+            if (lc == null) continue;
+
+            for (int c = 0; c < lc.lengths.length; c++) {
+                if (layer.cells[c] != null || lc.lengths[c] == 0) continue;
+
+                try {
+                    this.ReadCells(layer, lc, c, this.paletteIndicies.length, cells);
+                } catch (IOException | RuntimeException e) {
+                    continue; // Reported when the chunk is streamed in
+                }
+
+                for (int value : cells) {
+                    if (tagged[value]) {
+                        this.LoadNow(layer, c % layer.chunksX, c / layer.chunksX);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // Chunks streamed in from now on don't use sheet, for TileMap.DeleteSheet
+    public void ForgetSheet(SpriteSheet sheet) {
+        for (int p = 0; p < this.paletteIndicies.length; p++) {
+            Tile entry = this.palette.Get(this.paletteIndicies[p]);
+            if (entry != null && entry.textureSheet == sheet) {
+                this.paletteIndicies[p] = 0;
+            }
+        }
+    }
+
+    // Drops the loaded chunks that have gone longest without being wanted until the budget is met
+    private void Unload() {
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (TileMapLayer layer : this.map.layers) {
+            LayerChunks lc = this.layers.get(layer);
+            if (lc == null || !layer.streamed) continue;
+
+            for (int c = 0; c < layer.cells.length; c++) {
+                if (layer.cells[c] != null && lc.lastWanted[c] != this.frame) {
+                    candidates.add(new Candidate(layer, c, lc.lastWanted[c]));
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.lastWanted, b.lastWanted)); // Oldest first
+
+        int[] cells = new int[TileMapLayer.CHUNK_SIZE * TileMapLayer.CHUNK_SIZE];
+        for (int i = 0; i < candidates.size() && this.loadedChunks > maxLoadedChunks; i++) {
+            TileMapLayer layer = candidates.get(i).layer;
+            int c = candidates.get(i).chunk;
+            if (this.MustStayLoaded(layer, c, cells)) continue;
+
+            layer.ChunkChanged(c, false);
+            for (Tile t : layer.tiles[c]) {
+                t.ownerLayer = null; // Editing it doesn't change the layer anymore
+            }
+            layer.cells[c] = null;
+            layer.tiles[c] = TileMapLayer.NO_TILES;
+            this.loadedChunks--;
+            this.chunksUnloaded++;
+        }
+    }
+
+    private static class Candidate {
+        TileMapLayer layer;
+        int chunk;
+        long lastWanted;
+
+        Candidate(TileMapLayer layer, int chunk, long lastWanted) {
+            this.layer = layer;
+            this.chunk = chunk;
+            this.lastWanted = lastWanted;
+        }
+    }
+
+    // Whether a loaded chunk was edited since it was read from the file
+    private boolean MustStayLoaded(TileMapLayer layer, int c, int[] cells) {
+        try {
+            this.ReadCells(layer, this.layers.get(layer), c, this.paletteIndicies.length, cells);
+        } catch (IOException | RuntimeException e) {
+            return true; // Can't be read again, keep it
+        }
+
+        for (int i = 0; i < cells.length; i++) {
+            Tile t = layer.CellTile(c, i);
+            Tile prototype = cells[i] == 0 ? null : this.palette.Get(this.paletteIndicies[cells[i] - 1]);
+
+            if (t == null) {
+                if (prototype != null) return true;
+                continue;
+            }
+
+            if (prototype == null) {
+                if (!t.IsNull()) return true;
+            } else if (t.textureSheet != prototype.textureSheet || !TileMapJournal.SameTile(t, prototype)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * The distinct tiles placed on a map's layers. Layers keep a palette index per cell rather than a Tile, every
+ * cell placed from the same sheet tile with the same properties shares one entry (see TileMapLayer).
+ *
+ * Entries are read by every cell that uses them, so nothing may edit one. Cells that need a tile of their own,
+ * to be edited, get one from TileMapLayer.GetTile. Index 0 is the empty cell.
+ */
+class TilePalette {
+    private final ArrayList<Tile> entries = new ArrayList<>();
+    private final HashMap<Key, Integer> indicies = new HashMap<>();
+
+    private static final Tile BLANK = new Tile(0, 0, null, -1);
+
+    // Looks an entry up by its saved properties and sheet
+    private static class Key {
+        final Tile tile;
+        final int hash;
+
+        Key(Tile tile) {
+            this.tile = tile;
+
+            int h = System.identityHashCode(tile.textureSheet);
+            h = h * 31 + tile.textureIndex;
+            h = h * 31 + tile.w * 7 + tile.h;
+            h = h * 31 + (tile.collidable ? 1 : 0) + (tile.animated ? 2 : 0);
+            h = h * 31 + Double.hashCode(tile.collidorPos.x + tile.collidorPos.y * 3 + tile.collidorSize.x * 5 + tile.collidorSize.y * 7);
+            h = h * 31 + tile.tags.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return this.tile.textureSheet == k.tile.textureSheet && TileMapJournal.SameTile(this.tile, k.tile);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    public TilePalette() {
+        this.entries.add(null);
+    }
+
+    // Index of the entry placed like t, adding a copy of t if there's none yet. 0 for a blank tile
+    public int IndexOf(Tile t) {
+        if (t == null || (t.textureSheet == null && t.IsNull() && TileMapJournal.SameTile(t, BLANK))) return 0;
+
+        Integer index = this.indicies.get(new Key(t));
+        if (index != null) return index;
+
+        // Own colliders, Set shares them with t (a sheet tile the editor can still change)
+        Tile entry = new Tile(0, 0, t.textureSheet, t.textureIndex);
+        entry.Set(t);
+        entry.collidorPos = new Vector2(t.collidorPos.x, t.collidorPos.y);
+        entry.collidorSize = new Vector2(t.collidorSize.x, t.collidorSize.y);
+
+        index = this.entries.size();
+        this.entries.add(entry);
+        this.indicies.put(new Key(entry), index);
+        return index;
+    }
+
+    // Entry at index, null for 0
+    public Tile Get(int index) {
+        return this.entries.get(index);
+    }
+
+    public int Size() {
+        return this.entries.size();
+    }
+
+    // Every entry by index, for TileMapSnapshot. Entries are never changed, so this is all a snapshot has to copy
+    public Tile[] Entries() {
+        return this.entries.toArray(new Tile[0]);
+    }
+
+    // Replaces every entry drawn from sheet with an empty one, so the cells using them are empty too. For
+    // TileMap.DeleteSheet, the old entries are left alone for the snapshots that have them
+    public void ForgetSheet(SpriteSheet sheet) {
+        for (int i = 1; i < this.entries.size(); i++) {
+            Tile entry = this.entries.get(i);
+            if (entry.textureSheet != sheet) continue;
+
+            this.indicies.remove(new Key(entry));
+            this.entries.set(i, new Tile(0, 0, null, -1));
+        }
+    }
+}
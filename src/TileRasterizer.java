@@ -0,0 +1,179 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.Arrays;
+
+// Backends TileMap.Draw can use to put tiles on screen.
+enum RenderBackend {
+    JAVA2D,     // One Graphics2D.drawImage call per tile
+    SOFTWARE,   // Tiles are blitted into an int[] framebuffer by TileRasterizer and presented with one drawImage
+    CHUNKED     // Static tiles come from chunk images baked on worker threads by TileChunkCache
+}
+
+/*
+ * Software tile renderer. Java2D has a fixed cost per drawImage call which dominates when thousands
+ * of 16px tiles are drawn, so instead tiles are copied straight out of the sprite sheets' pixel arrays
+ * into an int[] framebuffer at texel resolution (one framebuffer pixel per sheet pixel).
+ * The framebuffer is then presented with a single nearest neighbour scaled drawImage.
+ *
+ * Objects drawn between tile rows (see TileMap.Draw) need the tiles under them to already be on screen,
+ * so the map calls Flush before drawing them. Only the dirty part of the framebuffer is presented and cleared.
+ */
+class TileRasterizer {
+    protected TileMap map; // Map we are rendering
+
+    private BufferedImage framebuffer; // Image wrapping the pixels below
+    private int[] pixels; // Framebuffer pixels, ARGB, row stride = fbWidth
+    private int fbWidth, fbHeight; // Framebuffer size in texels
+
+    private int texelSize; // Sheet pixels per tile, tiles of other sizes get scaled
+    private double texelScale; // World units per texel
+    private int originX, originY; // Texel coordinate (relative to the map) of the framebuffer's top left
+
+    // Area of the framebuffer drawn to since the last flush
+    private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+    public TileRasterizer(TileMap map) {
+        this.map = map;
+    }
+
+    // Sets up the framebuffer to cover the area of the world visible through g
+    public void Begin(Graphics2D g) {
+        this.texelSize = this.map.ownedSheets.size() > 0 ? this.map.ownedSheets.get(0).tileSize : 16;
+        this.texelScale = TileMap.RENDERSCALE / this.texelSize;
+
+        Rectangle2D visible = this.map.GetVisibleWorldBounds(g);
+
+        this.originX = (int)Math.floor((visible.getX() - this.map.renderOffset.x) / this.texelScale);
+        this.originY = (int)Math.floor((visible.getY() - this.map.renderOffset.y) / this.texelScale);
+
+        int width = (int)Math.ceil(Math.max(visible.getWidth(), 0) / this.texelScale) + 2;
+        int height = (int)Math.ceil(Math.max(visible.getHeight(), 0) / this.texelScale) + 2;
+
+        // (Re)allocate on resize, otherwise the previous flush left the framebuffer cleared
+        if (this.framebuffer == null || width != this.fbWidth || height != this.fbHeight) {
+            this.fbWidth = width;
+            this.fbHeight = height;
+            this.framebuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            this.pixels = ((DataBufferInt)this.framebuffer.getRaster().getDataBuffer()).getData();
+        }
+
+        this.ResetDirty();
+    }
+
+    // Rasterizes a map tile at cell (x, y) into the framebuffer
+    public void DrawTile(Tile t, int x, int y) {
+        SpriteSheet sheet = t.textureSheet;
+        if (t.textureIndex == -1 || sheet == null) return;
+
+        // Destination rectangle in framebuffer texels
+        int dx = x * this.texelSize - this.originX;
+        int dy = y * this.texelSize - this.originY;
+        int dw = t.w * this.texelSize;
+        int dh = t.h * this.texelSize;
+
+        // Trivially off screen
+        if (dx >= this.fbWidth || dy >= this.fbHeight || dx + dw <= 0 || dy + dh <= 0) return;
+
+        t.UpdateAnimation();
+
+        int[] src = sheet.GetRasterPixels();
+        int srcWidth = sheet.GetCPUImage().getWidth();
+        int srcHeight = sheet.GetCPUImage().getHeight();
+
+        int sx = t.GetSourceX();
+        int sy = t.GetSourceY();
+        int sw = sheet.tileSize * t.w;
+        int sh = sheet.tileSize * t.h;
+
+        if (sx < 0 || sy < 0 || sx + sw > srcWidth || sy + sh > srcHeight) return; // Bad tile, nothing sensible to draw
+
+        // Clip destination to the framebuffer
+        int x0 = Math.max(dx, 0), y0 = Math.max(dy, 0);
+        int x1 = Math.min(dx + dw, this.fbWidth), y1 = Math.min(dy + dh, this.fbHeight);
+
+        if (sw == dw && sh == dh) {
+            TileRasterizer.Blit(src, srcWidth, sx + (x0 - dx), sy + (y0 - dy), this.pixels, this.fbWidth, x0, y0, x1 - x0, y1 - y0, sheet.hasAlpha);
+        } else {
+            TileRasterizer.BlitScaled(src, srcWidth, sx, sy, sw, sh, this.pixels, this.fbWidth, dx, dy, dw, dh, x0, y0, x1, y1, sheet.hasAlpha);
+        }
+
+        this.dirtyMinX = Math.min(this.dirtyMinX, x0);
+        this.dirtyMinY = Math.min(this.dirtyMinY, y0);
+        this.dirtyMaxX = Math.max(this.dirtyMaxX, x1);
+        this.dirtyMaxY = Math.max(this.dirtyMaxY, y1);
+    }
+
+    // 1:1 copy. Opaque sheets copy whole rows, alpha (BITMASK) sheets skip transparent pixels.
+    // Also used by TileChunkCache workers, so it only touches the arrays it is given.
+    public static void Blit(int[] src, int srcStride, int sx, int sy, int[] dst, int dstStride, int dx, int dy, int w, int h, boolean alpha) {
+        for (int row = 0; row < h; row++) {
+            int si = (sy + row) * srcStride + sx;
+            int di = (dy + row) * dstStride + dx;
+
+            if (!alpha) {
+                System.arraycopy(src, si, dst, di, w);
+            } else {
+                for (int end = si + w; si < end; si++, di++) {
+                    int p = src[si];
+                    if ((p >>> 24) != 0) {
+                        dst[di] = p;
+                    }
+                }
+            }
+        }
+    }
+
+    // Nearest neighbour copy for tiles whose sheet tile size isn't the framebuffer's texel size
+    public static void BlitScaled(int[] src, int srcStride, int sx, int sy, int sw, int sh, int[] dst, int dstStride,
+                                  int dx, int dy, int dw, int dh, int x0, int y0, int x1, int y1, boolean alpha) {
+        for (int y = y0; y < y1; y++) {
+            int srcRow = (sy + (y - dy) * sh / dh) * srcStride + sx;
+            int di = y * dstStride + x0;
+
+            for (int x = x0; x < x1; x++, di++) {
+                int p = src[srcRow + (x - dx) * sw / dw];
+                if (!alpha || (p >>> 24) != 0) {
+                    dst[di] = p;
+                }
+            }
+        }
+    }
+
+    // Presents everything rasterized since the last flush, then clears that area for the next batch
+    public void Flush(Graphics2D g) {
+        if (this.dirtyMinX >= this.dirtyMaxX || this.dirtyMinY >= this.dirtyMaxY) return;
+
+        double worldX = this.map.renderOffset.x + this.originX * this.texelScale;
+        double worldY = this.map.renderOffset.y + this.originY * this.texelScale;
+
+        Object prevInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        g.drawImage(
+            this.framebuffer,
+            (int)(worldX + this.dirtyMinX * this.texelScale), (int)(worldY + this.dirtyMinY * this.texelScale),
+            (int)(worldX + this.dirtyMaxX * this.texelScale), (int)(worldY + this.dirtyMaxY * this.texelScale),
+            this.dirtyMinX, this.dirtyMinY, this.dirtyMaxX, this.dirtyMaxY,
+            null
+        );
+
+        if (prevInterpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, prevInterpolation);
+        }
+
+        for (int y = this.dirtyMinY; y < this.dirtyMaxY; y++) {
+            int row = y * this.fbWidth;
+            Arrays.fill(this.pixels, row + this.dirtyMinX, row + this.dirtyMaxX, 0);
+        }
+
+        this.ResetDirty();
+    }
+
+    private void ResetDirty() {
+        this.dirtyMinX = Integer.MAX_VALUE;
+        this.dirtyMinY = Integer.MAX_VALUE;
+        this.dirtyMaxX = Integer.MIN_VALUE;
+        this.dirtyMaxY = Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Inverted index from tag to the tiles that have it, behind TileMap.GetSheetTileByTag and GetMapTilesByTag.
+ * Enemies, bullets, GFX and the HUD look tiles up by tag every time one is made, which used to scan every sheet
+ * tile and every layer cell with ArrayList.contains on each.
+ *
+ * Tags are interned to small ids once. For each id the index keeps the first sheet tile with it and the cells
+ * (layer, index in layer) that have it, sorted like the scans find them, so a lookup is an array read plus one
+ * ReadTile per match.
+ *
+ * The cells are kept up to date by the layers as they change (see CellChanged and ChunkChanged): a cell that's
+ * set, an own tile that's edited and a chunk streamed in or out only touch the buckets of their tags. Each layer's
+ * version is remembered along with it, a layer changed some other way (resized, loaded into, a sheet deleted)
+ * has a newer one and the cells are scanned again on the next lookup, like when layers are added or removed.
+ * The sheet tiles are scanned again when a sheet changed, which only the editor and reloads do.
+ */
+class TileTagIndex {
+    private static final HashMap<String, Integer> ids = new HashMap<>(); // Interned tags, shared by every map
+
+    protected TileMap map; // Map we are indexing
+
+    private Tile[] sheetTiles = new Tile[0]; // By tag id, first sheet tile with the tag
+    private int[][] cells = new int[0][]; // By tag id, (layer index, y * layer width + x) pairs, sorted
+    private int[] numCells = new int[0]; // By tag id, how many ints of cells are used
+
+    private ArrayList<TileMapLayer> builtLayers = null; // Layers the cells were scanned from, null to scan again
+    private int[] builtVersions = new int[0]; // By layer, version the cells are up to date with
+    private long builtSheetVersion = -1; // Sum of the sheet versions the sheet tiles were scanned at
+    private ArrayList<SpriteSheet> builtSheets = new ArrayList<>();
+
+    public TileTagIndex(TileMap map) {
+        this.map = map;
+    }
+
+    // Id of tag, made the first time it's seen
+    static synchronized int Id(String tag) {
+        Integer id = ids.get(tag);
+        if (id == null) {
+            id = ids.size();
+            ids.put(tag, id);
+        }
+        return id;
+    }
+
+    // Id of tag, or -1 if no tile ever had it
+    static synchronized int FindId(String tag) {
+        Integer id = ids.get(tag);
+        return id != null ? id : -1;
+    }
+
+    // First tile of the map's sheets with tag, in sheet order, or null
+    public Tile SheetTile(String tag) {
+        this.Update();
+
+        int id = FindId(tag);
+        return id >= 0 && id < this.sheetTiles.length ? this.sheetTiles[id] : null;
+    }
+
+    // Copies of the loaded cells' tiles with tag, on layerMask or every layer when it's null, in layer order.
+    // Editing them doesn't change the map
+    public ArrayList<Tile> MapTiles(String tag, TileMapLayer layerMask) {
+        this.Update();
+
+        ArrayList<Tile> tiles = new ArrayList<>();
+        int id = FindId(tag);
+        if (id < 0 || id >= this.cells.length) return tiles;
+
+        int[] found = this.cells[id];
+        for (int i = 0; i < this.numCells[id]; i += 2) {
+            TileMapLayer layer = this.map.layers.get(found[i]);
+            if (layerMask != null && layer != layerMask) continue;
+
+            // A copy, so a lookup doesn't give every matching cell a tile of its own
+            int index = found[i + 1];
+            tiles.add(layer.ReadTile(index % layer.width, index / layer.width));
+        }
+        return tiles;
+    }
+
+    // The cell at (x, y) of layer went from tags before to tags after, called by the layer right after it bumped
+    // its version
+    void CellChanged(TileMapLayer layer, int x, int y, ArrayList<String> before, ArrayList<String> after) {
+        int l = this.Synced(layer);
+        if (l < 0) return;
+
+        int index = y * layer.width + x;
+        for (String tag : before) {
+            if (!after.contains(tag)) this.Remove(Id(tag), l, index);
+        }
+        for (String tag : after) {
+            if (!before.contains(tag)) this.Insert(Id(tag), l, index);
+        }
+    }
+
+    // Layer's chunk c was streamed in (loaded) or is about to be streamed out, called by the layer right after it
+    // bumped its version
+    void ChunkChanged(TileMapLayer layer, int c, boolean loaded) {
+        int l = this.Synced(layer);
+        if (l < 0) return;
+
+        for (int cell = 0; cell < TileMapLayer.CHUNK_CELLS; cell++) {
+            Tile t = layer.CellTile(c, cell);
+            if (t == null || t.tags.isEmpty()) continue;
+
+            int x = (c % layer.chunksX) * TileMapLayer.CHUNK_SIZE + cell % TileMapLayer.CHUNK_SIZE;
+            int y = (c / layer.chunksX) * TileMapLayer.CHUNK_SIZE + cell / TileMapLayer.CHUNK_SIZE;
+            if (x >= layer.width || y >= layer.height) continue;
+
+            for (String tag : t.tags) {
+                if (loaded) {
+                    this.Insert(Id(tag), l, y * layer.width + x);
+                } else {
+                    this.Remove(Id(tag), l, y * layer.width + x);
+                }
+            }
+        }
+    }
+
+    // Index of layer if the cells are up to date with every change of it before the one it just made, which is
+    // counted as done. -1 when they'll be scanned again anyway
+    private int Synced(TileMapLayer layer) {
+        if (this.builtLayers == null) return -1;
+
+        int l = this.builtLayers.indexOf(layer);
+        if (l < 0 || this.builtVersions[l] != layer.version - 1) return -1;
+
+        this.builtVersions[l] = layer.version;
+        return l;
+    }
+
+    // Scans the cells again if layers were added, removed or changed without telling the index, and the sheet
+    // tiles if a sheet changed
+    private void Update() {
+        long sheetVersion = 0;
+        for (SpriteSheet sheet : this.map.ownedSheets) {
+            sheetVersion += sheet.version;
+        }
+        if (this.builtSheetVersion != sheetVersion || !this.builtSheets.equals(this.map.ownedSheets)) {
+            this.ScanSheets();
+            this.builtSheetVersion = sheetVersion;
+            this.builtSheets = new ArrayList<>(this.map.ownedSheets);
+        }
+
+        boolean current = this.builtLayers != null && this.builtLayers.equals(this.map.layers);
+        for (int l = 0; current && l < this.builtVersions.length; l++) {
+            current = this.builtVersions[l] == this.map.layers.get(l).version;
+        }
+        if (!current) {
+            this.ScanCells();
+        }
+    }
+
+    private void ScanSheets() {
+        Arrays.fill(this.sheetTiles, null);
+
+        for (SpriteSheet sheet : this.map.ownedSheets) {
+            if (sheet.tiles == null) continue; // Still loading
+
+            for (Tile t : sheet.tiles) {
+                if (t == null || t.IsNull() || t.tags.isEmpty()) continue;
+
+                for (String tag : t.tags) {
+                    int id = this.Reserve(Id(tag));
+                    if (this.sheetTiles[id] == null) this.sheetTiles[id] = t;
+                }
+            }
+        }
+    }
+
+    private void ScanCells() {
+        Arrays.fill(this.numCells, 0);
+
+        // Layer by layer and row by row, so the pairs come out sorted
+        for (int l = 0; l < this.map.layers.size(); l++) {
+            TileMapLayer layer = this.map.layers.get(l);
+            for (TileMapLayer.Cells cell = layer.LoadedCells(); cell.Next(); ) {
+                if (cell.tile.tags.isEmpty()) continue;
+
+                for (String tag : cell.tile.tags) {
+                    int id = this.Reserve(Id(tag));
+                    this.Grow(id);
+
+                    int n = this.numCells[id];
+                    this.cells[id][n] = l;
+                    this.cells[id][n + 1] = cell.y * layer.width + cell.x;
+                    this.numCells[id] = n + 2;
+                }
+            }
+        }
+
+        this.builtLayers = new ArrayList<>(this.map.layers);
+        this.builtVersions = new int[this.builtLayers.size()];
+        for (int l = 0; l < this.builtVersions.length; l++) {
+            this.builtVersions[l] = this.builtLayers.get(l).version;
+        }
+    }
+
+    // Puts (l, index) in id's cells where it sorts, unless it's there already
+    private void Insert(int id, int l, int index) {
+        id = this.Reserve(id);
+        int i = this.Find(id, l, index);
+        int n = this.numCells[id];
+        if (i < n && this.cells[id][i] == l && this.cells[id][i + 1] == index) return;
+
+        this.Grow(id);
+        int[] found = this.cells[id];
+        System.arraycopy(found, i, found, i + 2, n - i);
+        found[i] = l;
+        found[i + 1] = index;
+        this.numCells[id] = n + 2;
+    }
+
+    // Takes (l, index) out of id's cells
+    private void Remove(int id, int l, int index) {
+        if (id >= this.cells.length) return;
+
+        int i = this.Find(id, l, index);
+        int n = this.numCells[id];
+        if (i >= n || this.cells[id][i] != l || this.cells[id][i + 1] != index) return;
+
+        System.arraycopy(this.cells[id], i + 2, this.cells[id], i, n - i - 2);
+        this.numCells[id] = n - 2;
+    }
+
+    // Offset in id's cells of the first pair at or after (l, index)
+    private int Find(int id, int l, int index) {
+        int[] found = this.cells[id];
+        int lo = 0, hi = this.numCells[id] / 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int ml = found[mid * 2], mi = found[mid * 2 + 1];
+            if (ml < l || (ml == l && mi < index)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo * 2;
+    }
+
+    // Makes room for one more pair in id's cells
+    private void Grow(int id) {
+        int[] found = this.cells[id];
+        int n = this.numCells[id];
+        if (found == null || n == found.length) {
+            this.cells[id] = found == null ? new int[8] : Arrays.copyOf(found, n * 2);
+        }
+    }
+
+    // Grows the per id arrays to hold id, returns it
+    private int Reserve(int id) {
+        if (id >= this.sheetTiles.length) {
+            int size = Math.max(id + 1, this.sheetTiles.length * 2);
+            this.sheetTiles = Arrays.copyOf(this.sheetTiles, size);
+            this.cells = Arrays.copyOf(this.cells, size);
+            this.numCells = Arrays.copyOf(this.numCells, size);
+        }
+        return id;
+    }
+}